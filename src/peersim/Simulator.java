@@ -19,12 +19,15 @@
 package peersim;
 
 import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
 
 import peersim.cdsim.*;
 import peersim.config.*;
 import peersim.core.*;
 import peersim.edsim.*;
 import peersim.gossip.PegasosNode;
+import peersim.reports.GraphObserver;
 
 
 /**
@@ -83,6 +86,29 @@ public static final String PAR_EXPS = "simulation.experiments";
  */
 public static final String PAR_REDIRECT = "simulation.stdout";
 
+/**
+ * Name of the public static no-argument method that
+ * {@link #runInProcess} invokes on the classes of the configured protocols,
+ * initializers, controls and node, to clear their static state.
+ */
+public static final String RESET_METHOD = "resetStatic";
+
+/**
+ * The configuration prefixes whose classes are scanned for
+ * {@value #RESET_METHOD} by {@link #runInProcess}.
+ */
+private static final String[] RESET_PREFIXES = {
+	Node.PAR_PROT,
+	"init",
+	"control",
+};
+
+/**
+ * The configuration parameter of the node class, also scanned for
+ * {@value #RESET_METHOD} by {@link #runInProcess}.
+ */
+private static final String RESET_NODE = "network.node";
+
 // ==================== static fields ===================================
 // ======================================================================
 
@@ -158,6 +184,30 @@ public static void main(String[] args)
 		(PrintStream)Configuration.getInstance(PAR_REDIRECT,System.out);
 	if(newout!=System.out) System.setOut(newout);
 	
+	try {
+		runExperiments();
+	} catch (MissingParameterException e) {
+		System.err.println(e+"");
+		System.exit(1);
+	} catch (IllegalParameterException e) {
+		System.err.println(e+"");
+		System.exit(1);
+	}
+	
+	// undocumented testing capabilities
+	if(Configuration.contains("__t")) 
+		System.out.println(System.currentTimeMillis()-time);
+	if(Configuration.contains("__x")) Network.test();
+}
+
+// ----------------------------------------------------------------------
+
+/**
+* Runs the {@value #PAR_EXPS} experiments of the current configuration,
+* using the engine identified by {@link #getSimID}.
+*/
+private static void runExperiments()
+{
 	int exps = Configuration.getInt(PAR_EXPS,1);
 
 	final int SIMID = getSimID();
@@ -168,52 +218,118 @@ public static void main(String[] args)
 		return;
 	}
 	
-	try {
+	for(int k=0; k<exps; ++k)
+	{
+		if( k>0 )
+		{
+			long seed = CommonState.r.nextLong();
+			CommonState.initializeRandom(seed);
+		}
+		System.err.print("Simulator: starting experiment "+k);
+		System.err.println(" invoking "+simName[SIMID]);
+		System.err.println("Random seed: "+
+			CommonState.r.getLastSeed());
+		System.out.println("\n\n");
 		
-		for(int k=0; k<exps; ++k)
+		//--------------------------------------------------
+		
+		// XXX could be done through reflection, but
+		// this is easier to read.
+		switch(SIMID)
 		{
-			if( k>0 )
-			{
-				long seed = CommonState.r.nextLong();
-				CommonState.initializeRandom(seed);
-			}
-			System.err.print("Simulator: starting experiment "+k);
-			System.err.println(" invoking "+simName[SIMID]);
-			System.err.println("Random seed: "+
-				CommonState.r.getLastSeed());
-			System.out.println("\n\n");
-			
-			//--------------------------------------------------
-			
-			// XXX could be done through reflection, but
-			// this is easier to read.
-			switch(SIMID)
-			{
-			case CDSIM:
-				CDSimulator.nextExperiment();
-				break;
-			case EDSIM:
-				EDSimulator.nextExperiment();
-				break;
-			}
+		case CDSIM:
+			CDSimulator.nextExperiment();
+			break;
+		case EDSIM:
+			EDSimulator.nextExperiment();
+			break;
 		}
-	
-	} catch (MissingParameterException e) {
-		System.err.println(e+"");
-		System.exit(1);
-	} catch (IllegalParameterException e) {
-		System.err.println(e+"");
-		System.exit(1);
 	}
-	
+}
 
-	// undocumented testing capabilities
-	if(Configuration.contains("__t")) 
-		System.out.println(System.currentTimeMillis()-time);
-	if(Configuration.contains("__x")) Network.test();
-	
-	
+// ----------------------------------------------------------------------
+
+/**
+* Runs a complete simulation in the calling JVM, as {@link #main} would in a
+* new one, but without terminating the JVM. Any previous configuration is
+* discarded and the state that the simulator keeps in static fields
+* is restored first (see {@link #reset}). Classes loaded by a previous run,
+* and the data they cache, stay warm; this makes sweeps of short experiments
+* much cheaper than one JVM per experiment.
+* <p>
+* Application classes often keep static state as well. Before the
+* simulation starts, the public static method {@value #RESET_METHOD} with no
+* arguments is invoked on the classes of all the configured protocols,
+* initializers and controls, and on the node class, if they
+* declare or inherit one.
+* <p>
+* Unlike {@link #main}, configuration errors are not handled here but thrown
+* to the caller. The standard output is restored on return, in case it was
+* redirected with {@value #PAR_REDIRECT}.
+* @param args passed on to
+* {@link ParsedProperties#ParsedProperties(String[])}
+* @see peersim.rangesim.RangeSimulator
+*/
+public static void runInProcess(String[] args)
+{
+	final PrintStream out = System.out;
+	Configuration.reset();
+	Configuration.setConfig( new ParsedProperties(args) );
+	reset();
+	try {
+		PrintStream newout =
+			(PrintStream)Configuration.getInstance(PAR_REDIRECT,System.out);
+		if(newout!=System.out) System.setOut(newout);
+		runExperiments();
+	} finally {
+		System.out.flush();
+		System.setOut(out);
+	}
+}
+
+// ----------------------------------------------------------------------
+
+/**
+* Restores the static state of the simulator and of the configured classes
+* according to the configuration that has just been set.
+* Called by {@link #runInProcess}.
+*/
+private static void reset()
+{
+	simID = UNKNOWN;
+	CDState.reset();
+	FastConfig.reset();
+	CDScheduler.reset();
+	GeneralNode.resetStatic();
+	GraphObserver.reset();
 	
+	Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+	for(int i=0; i<RESET_PREFIXES.length; ++i)
+	{
+		String[] names = Configuration.getNames(RESET_PREFIXES[i]);
+		for(int j=0; j<names.length; ++j)
+			classes.add(Configuration.getClass(names[j]));
+	}
+	if( Configuration.contains(RESET_NODE) )
+		classes.add(Configuration.getClass(RESET_NODE));
+	for(Class<?> c : classes)
+	{
+		Method m;
+		try {
+			m = c.getMethod(RESET_METHOD);
+		} catch (NoSuchMethodException e) {
+			continue;
+		}
+		if( !Modifier.isStatic(m.getModifiers()) ) continue;
+		try {
+			m.invoke(null);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		} catch (InvocationTargetException e) {
+			throw new RuntimeException(c.getName()+"."+RESET_METHOD,
+				e.getCause());
+		}
+	}
 }
 
 }
@@ -56,6 +56,20 @@ static {}
 /** to avoid construction */
 private CDState() {}
 
+//-----------------------------------------------------------------
+
+/**
+ * Resets the cycle state and, through {@link CommonState#reset}, the
+ * common state. This is only meant for running several simulations
+ * in the same JVM, see {@link peersim.Simulator#runInProcess}.
+ */
+public static void reset()
+{
+	CommonState.reset();
+	ctime = -1;
+	cycle = -1;
+}
+
 // ======================= methods =================================
 // =================================================================
 
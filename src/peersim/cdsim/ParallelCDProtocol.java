@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.cdsim;
+
+import peersim.core.Node;
+
+/**
+* A cycle driven protocol whose cycle can be split into a node-local phase and
+* a communication phase. {@link ParallelNextCycle} runs the local phase of all
+* the nodes concurrently, and then the communication phase of all the nodes
+* sequentially, in the usual order.
+* {@link #nextCycle} is expected to call {@link #localCycle} followed by
+* {@link #gossipCycle}, so the protocol can still be run by
+* {@link FullNextCycle}. The two controls do not interleave the phases of
+* different nodes in the same way, so they do not give the same results; see
+* {@link ParallelNextCycle}.
+*/
+public interface ParallelCDProtocol extends CDProtocol
+{
+
+/**
+ * Performs the part of the cycle that only reads and writes the state of
+ * the given node. It may be called concurrently for different nodes, so it
+ * must not access other nodes, static state, the shared random generator
+ * {@link peersim.core.CommonState#r} or the current node and protocol in
+ * {@link CDState}.
+ * 
+ * @param node
+ *          the node on which this component is run
+ * @param protocolID
+ *          the id of this protocol in the protocol array
+ */
+public void localCycle(Node node, int protocolID);
+
+/**
+ * Performs the rest of the cycle, typically the communication with other
+ * nodes. It is called from the simulation thread, after the local phase of
+ * every node is over, with {@link CDState} set as in {@link #nextCycle}.
+ * 
+ * @param node
+ *          the node on which this component is run
+ * @param protocolID
+ *          the id of this protocol in the protocol array
+ */
+public void gossipCycle(Node node, int protocolID);
+
+}
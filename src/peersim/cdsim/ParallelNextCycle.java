@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+		
+package peersim.cdsim;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import peersim.config.*;
+import peersim.core.*;
+
+/**
+* Control to run a cycle of the cycle driven simulation in two phases.
+* First the {@link ParallelCDProtocol#localCycle} of every up node is run on a
+* fork-join pool. Then every node is visited in the same order as
+* {@link FullNextCycle}, calling {@link ParallelCDProtocol#gossipCycle} for
+* the parallel protocols and {@link CDProtocol#nextCycle} for the others.
+* <p>
+* This is a different schedule from {@link FullNextCycle}, not a faster
+* implementation of it. There the whole cycle of a node runs before the next
+* node is visited, so a node visited later trains on what earlier nodes
+* pushed to it in the same cycle. Here every local phase runs before any
+* communication, so what is pushed during a cycle is only used by the local
+* phase of the next cycle, and what a node sends back comes from the state
+* after its local phase. Runs of the same configuration therefore give
+* different results under the two controls.
+* What does hold is that only the second phase touches shared state and the
+* random generator, so the simulation is reproducible from the random seed
+* whatever the number of threads. Protocols that need the sequential order
+* should keep using {@link FullNextCycle}.
+* <p>
+* To use it, set simulation.nodefaultcycle and configure
+* this class as a control, e.g.
+* <pre>
+* simulation.nodefaultcycle
+* control.cycle peersim.cdsim.ParallelNextCycle
+* control.cycle.threads 8
+* </pre>
+* With parameter "getpair" a node can be picked more than once in a cycle.
+* Its communication phase is then run every time it is picked, but its local
+* phase only once per cycle, whereas {@link FullNextCycle} would run the whole
+* cycle every time.
+*/
+public class ParallelNextCycle extends FullNextCycle {
+
+
+// ============== fields ===============================================
+// =====================================================================
+
+
+/**
+* The number of worker threads of the local phase. Defaults to the number of
+* available processors.
+* @config
+*/
+private static final String PAR_THREADS = "threads";
+
+// --------------------------------------------------------------------
+
+/**
+* The pools of the local phase, by number of threads. They are shared by all
+* the instances and the experiments of the JVM, so that running many
+* simulations in the same process does not leave a pool behind for each.
+*/
+private static final HashMap<Integer,ForkJoinPool> pools =
+	new HashMap<Integer,ForkJoinPool>();
+
+protected final ForkJoinPool pool;
+
+// =============== initialization ======================================
+// =====================================================================
+
+
+/**
+* Reads config parameters and {@link Scheduler}s.
+*/
+public ParallelNextCycle(String prefix) {
+	
+	super(prefix);
+	int threads = Configuration.getInt(prefix+"."+PAR_THREADS,
+			Runtime.getRuntime().availableProcessors());
+	pool = getPool(threads);
+}
+
+// --------------------------------------------------------------------
+
+/**
+* Returns the shared pool with the given number of threads, creating it
+* if needed.
+*/
+private static ForkJoinPool getPool(int threads) {
+	
+	synchronized(pools)
+	{
+		ForkJoinPool p = pools.get(threads);
+		if( p == null )
+		{
+			p = new ForkJoinPool(threads);
+			pools.put(threads, p);
+		}
+		return p;
+	}
+}
+
+// --------------------------------------------------------------------
+
+/**
+* Shuts the shared pools down. Called by {@link peersim.Simulator#runInProcess}
+* before the next simulation, when no local phase is running any more.
+*/
+public static void resetStatic() {
+	
+	synchronized(pools)
+	{
+		for(ForkJoinPool p : pools.values())
+			p.shutdown();
+		pools.clear();
+	}
+}
+
+// =============== methods =============================================
+// =====================================================================
+
+public boolean execute() {
+
+	final int cycle=CDState.getCycle();
+	
+	// the visiting order is drawn first, exactly as in FullNextCycle
+	final int size = Network.size();
+	final Node[] order = new Node[size];
+	if( shuffle ) rperm.reset( size );
+	for(int j=0; j<size; ++j)
+	{
+		if( getpair_rand )
+			order[j] = Network.get(CDState.r.nextInt(size));
+		else if( shuffle )
+			order[j] = Network.get(rperm.next());
+		else
+			order[j] = Network.get(j);
+	}
+	
+	// local phase, in parallel over the distinct up nodes
+	final List<Node> local = new ArrayList<Node>(size);
+	final IdentityHashMap<Node,Node> seen = new IdentityHashMap<Node,Node>();
+	for(int j=0; j<size; ++j)
+	{
+		if( order[j].isUp() && seen.put(order[j], order[j]) == null )
+			local.add(order[j]);
+	}
+	pool.invoke(new LocalPhase(local, 0, local.size(), cycle));
+	
+	// communication phase, sequential
+	for(int j=0; j<size; ++j)
+	{
+		Node node = order[j];
+		if( !node.isUp() ) continue; 
+		CDState.setNode(node);
+		CDState.setCycleT(j);
+		final int len = node.protocolSize();
+		for(int k=0; k<len; ++k)
+		{
+			// Check if the protocol should be executed, given the
+			// associated scheduler.
+			if (!protSchedules[k].active(cycle))
+				continue;
+				
+			CDState.setPid(k);
+			Protocol protocol = node.getProtocol(k);
+			if( protocol instanceof ParallelCDProtocol )
+			{
+				((ParallelCDProtocol)protocol).gossipCycle(node, k);
+				if( !node.isUp() ) break;
+			}
+			else if( protocol instanceof CDProtocol )
+			{
+				((CDProtocol)protocol).nextCycle(node, k);
+				if( !node.isUp() ) break;
+			}
+		}
+	}
+
+	return false;
+}
+
+// --------------------------------------------------------------------
+
+/**
+* Runs the local phase of the {@link ParallelCDProtocol}s of a range of nodes,
+* splitting the range in halves down to single nodes.
+*/
+private class LocalPhase extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+	
+	private final List<Node> nodes;
+	
+	private final int from;
+	
+	private final int to;
+	
+	private final int cycle;
+	
+	LocalPhase(List<Node> nodes, int from, int to, int cycle)
+	{
+		this.nodes = nodes;
+		this.from = from;
+		this.to = to;
+		this.cycle = cycle;
+	}
+
+	protected void compute()
+	{
+		if( to - from > 1 )
+		{
+			int mid = (from + to) >>> 1;
+			invokeAll(new LocalPhase(nodes, from, mid, cycle),
+				new LocalPhase(nodes, mid, to, cycle));
+			return;
+		}
+		if( to == from ) return;
+		Node node = nodes.get(from);
+		final int len = node.protocolSize();
+		for(int k=0; k<len; ++k)
+		{
+			if (!protSchedules[k].active(cycle))
+				continue;
+			Protocol protocol = node.getProtocol(k);
+			if( protocol instanceof ParallelCDProtocol )
+				((ParallelCDProtocol)protocol).localCycle(node, k);
+		}
+	}
+}
+
+}
@@ -42,19 +42,33 @@ class ClassFinder
 //--------------------------------------------------------------------------
 	
 	
-/** Local map containing the associations */
-private static Map<String,String> map = new TreeMap<String,String>();	
+/**
+ * This Java system property names the file of the persistent class index
+ * (see {@link ClassIndex}). The value "none" disables the index. Defaults to
+ * a file in the temporary directory of the JVM.
+ */
+public static final String PROP_INDEX = "peersim.classindex";
+
+/** Local map containing the associations; built by the first lookup */
+private static Map<String,String> map = null;
 
 /** The number of directories that have been touched by the search.
 This does not include directories in jar files. */
 private static int visitedDirs = 0;
 
-private static final int maxDirs;
+private static final int maxDirs = 10000;
 
-static {
+/**
+ * Builds the map on first use. Non-qualified names are only needed for
+ * classes that cannot be loaded directly, so configurations that use
+ * fully qualified names never pay for the classpath scan.
+ */
+private static synchronized Map<String,String> getMap() {
 
-	maxDirs = 10000;
+	if (map != null)
+		return map;
 
+	map = new TreeMap<String,String>();
 	try {
 		findClasses(map);
 	} catch (IOException e) {
@@ -70,6 +84,7 @@ static {
 		"class lookup might fail and you might have\nConfiguration: "+
 		"to fully qualify class names in the configuration.");
 	}
+	return map;
 }
 	
 	
@@ -107,7 +122,10 @@ public static String getShortName(String className) {
  */
 public static String getQualifiedName(String name)
 {
-	return map.get(name);
+	// the keys are non-qualified names, no need to scan for this
+	if (name.indexOf('.') >= 0)
+		return null;
+	return getMap().get(name);
 }
 
 //--------------------------------------------------------------------------
@@ -121,7 +139,8 @@ public static String getQualifiedName(String name)
  * 
  * Only classes reachable from the classpath defined by the 
  * "java.class.path" property are considered. 
- * Jar files and directories are both parsed.
+ * Jar files and directories are both parsed, unless their content is
+ * found in the class index with the same stamp (see {@link #stamp}).
  * If multiple classes with the same name but different 
  * fully-qualified names are present, they are inserted
  * in the map as associations (name, comma-separated list of
@@ -138,22 +157,96 @@ throws IOException
 	String filesep = System.getProperty( "file.separator");
 	StringTokenizer path = new StringTokenizer( classPath, separator );
 
+	ClassIndex index = null;
+	String indexFile = System.getProperty(PROP_INDEX,
+		new File(System.getProperty("java.io.tmpdir"),
+		"peersim-" + System.getProperty("user.name") + ".classindex")
+		.getPath());
+	if (!indexFile.equals("none"))
+		index = new ClassIndex(new File(indexFile));
+
 	while( path.hasMoreTokens() ) {
 		
 		String pathElement = path.nextToken();
 		File pathFile = new File( pathElement );
+		if( !pathFile.exists() ) continue;
+		
+		String entry = pathFile.getAbsolutePath();
+		String stamp = null;
+		List<String> classes = null;
+		if (index != null) {
+			stamp = stamp(pathFile);
+			classes = index.get(entry, stamp);
+		}
 		
-		if( pathFile.isDirectory() ) {
-			if (!pathElement.endsWith(filesep)) {
-				pathElement = pathElement + filesep;
-				pathFile = new File( pathElement);
+		if (classes == null) {
+			classes = new ArrayList<String>();
+			if( pathFile.isDirectory() ) {
+				if (!pathElement.endsWith(filesep)) {
+					pathElement = pathElement + filesep;
+					pathFile = new File( pathElement);
+				}
+				// Search directories
+				findClassInPathDir( classes, pathElement, pathFile );
+			} else {
+				findClassInJar( classes, pathFile);
 			}
-			findClassInPathDir( map, pathElement, pathFile );
-			// Search directories
-		} else if ( pathFile.exists() ) {
-			findClassInJar( map, pathFile);
+			// a truncated scan must not be reused
+			if (index != null && visitedDirs < maxDirs)
+				index.put(entry, stamp, classes);
 		}
+
+		for (String className : classes) {
+			String shortName = getShortName( className );
+			if (map.containsKey(shortName)) {
+				map.put(shortName, map.get(shortName)+","+className);
+			} else {
+				map.put(shortName, className);
+			}
+		}
+	}
+
+	if (index != null)
+		index.save();
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Returns a string that changes whenever the classes in the given classpath
+ * entry may have changed. For a jar file, this is its size and modification
+ * time. For a directory, it is the latest modification time of the directory
+ * and its subdirectories, which changes whenever a file is added, removed or
+ * renamed anywhere below it; this only lists directories, without looking at
+ * the class files.
+ */
+private static String stamp(File pathFile)
+{
+	if (pathFile.isDirectory())
+		return "d " + latestModified(pathFile, 0);
+	return "f " + pathFile.length() + " " + pathFile.lastModified();
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Returns the latest modification time of the given directory and its
+ * subdirectories, assuming that entries ending with ".class" are files.
+ */
+private static long latestModified(File dir, int depth)
+{
+	long latest = dir.lastModified();
+	String[] list = dir.list();
+	if (list == null || depth >= maxDirs)
+		return latest;
+	for (int i = 0; i < list.length; i++) {
+		if (list[i].endsWith(".class"))
+			continue;
+		File file = new File(dir, list[i]);
+		if (file.isDirectory())
+			latest = Math.max(latest, latestModified(file, depth+1));
 	}
+	return latest;
 }
 
 //--------------------------------------------------------------------------
@@ -161,31 +254,28 @@ throws IOException
 /**
  * Parses jar file.
  * 
- * @param map the map where to insert associations
+ * @param classes the list where to add the class names
  * @param pathFile the file name of the associated jar file
  * @throws IOException
  */
-private static void findClassInJar(Map<String,String> map, File pathFile)
+private static void findClassInJar(List<String> classes, File pathFile)
 throws IOException
 {
 	ZipFile zipFile = new ZipFile( pathFile );
-	Enumeration entries = zipFile.entries();
-	while( entries.hasMoreElements() ) {
-		
-		String entry = entries.nextElement().toString();
-		if( entry.endsWith( ".class" ) ) {
-			// File names in ZIP archives (so, also in JARs)
-			// are separated by forward slashes '/', independently
-			// of the architecture.
-			String className = classname( entry, "/" ); 
-			String shortName = getShortName( className );
-			if (map.containsKey(shortName)) {
-				map.put(shortName,
-					map.get(shortName)+","+className);
-			} else {
-				map.put(shortName, className);
+	try {
+		Enumeration entries = zipFile.entries();
+		while( entries.hasMoreElements() ) {
+			
+			String entry = entries.nextElement().toString();
+			if( entry.endsWith( ".class" ) ) {
+				// File names in ZIP archives (so, also in JARs)
+				// are separated by forward slashes '/', independently
+				// of the architecture.
+				classes.add(classname( entry, "/" ));
 			}
 		}
+	} finally {
+		zipFile.close();
 	}
 }
 
@@ -194,12 +284,12 @@ throws IOException
 /**
  * Recursively parses directories.
  * 
- * @param map the map where to insert associations
+ * @param classes the list where to add the class names
  * @param pathElement the path string used for recursion
  * @param pathFile the file (directory) to be analyzed
  * @throws IOException
  */
-private static void findClassInPathDir( Map<String,String> map,
+private static void findClassInPathDir( List<String> classes,
 	String pathElement, File pathFile )
 throws IOException
 {
@@ -212,17 +302,11 @@ throws IOException
 	for( int i = 0; i < list.length; i++ ) {
 		File file = new File( pathFile, list[i] );
 		if( file.isDirectory() ) {
-			findClassInPathDir( map, pathElement, file );
+			findClassInPathDir( classes, pathElement, file );
 		}
 		else if ( file.exists() && (file.length() != 0) && list[i].endsWith( ".class" ) ) {
 			String classFile = file.toString().substring( pathElement.length());
-			String className = classname( classFile, filesep );
-			String shortName = getShortName( className );
-			if (map.containsKey(shortName)) {
-				map.put(shortName, map.get(shortName)+","+className);
-			} else {
-				map.put(shortName, className);
-			}
+			classes.add(classname( classFile, filesep ));
 		}
 	}
 }
@@ -248,10 +332,10 @@ private static String classname(String classFile, String filesep)
  */
 public static void main( String[] argv )
 {
-	Iterator i = map.keySet().iterator();
+	Iterator i = getMap().keySet().iterator();
 	while (i.hasNext()) {
 		String key = (String) i.next();
-		String name = map.get(key);
+		String name = getMap().get(key);
 		System.out.println(key + " --> " + name);
 	}
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.config;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A persistent cache of the classes found by {@link ClassFinder} in each
+ * classpath entry. Every entry is stored with a stamp describing its state
+ * when it was scanned (see {@link ClassFinder}); the classes of an entry are
+ * only reused if its stamp has not changed since.
+ * <p>
+ * The index is a text file, shared by all the classpaths that use it:
+ * <pre>
+ * # peersim class index 1
+ * E &lt;entry path&gt;
+ * S &lt;stamp&gt;
+ * &lt;fully qualified class name&gt;
+ * ...
+ * </pre>
+ * The file is rewritten as a whole when some entry changes, through a
+ * temporary file, so that concurrent simulations never read it half written.
+ * A file that cannot be read is ignored, and one that cannot be written is
+ * simply not updated.
+ */
+class ClassIndex
+{
+
+//--------------------------------------------------------------------------
+//Fields
+//--------------------------------------------------------------------------
+
+/** First line of the file, identifying the format */
+private static final String HEADER = "# peersim class index 1";
+
+/** The file of the index */
+private final File file;
+
+/** The stamp of each entry */
+private final Map<String,String> stamps = new LinkedHashMap<String,String>();
+
+/** The classes of each entry */
+private final Map<String,List<String>> classes =
+	new LinkedHashMap<String,List<String>>();
+
+/** True if some entry has been updated since the file was read */
+private boolean modified = false;
+
+//--------------------------------------------------------------------------
+//Initialization
+//--------------------------------------------------------------------------
+
+/**
+ * Reads the index from the given file, if it exists.
+ */
+ClassIndex(File file)
+{
+	this.file = file;
+	if (!file.isFile())
+		return;
+	try {
+		read();
+	} catch (IOException e) {
+		stamps.clear();
+		classes.clear();
+	}
+}
+
+//--------------------------------------------------------------------------
+//Methods
+//--------------------------------------------------------------------------
+
+/**
+ * Returns the classes of the given classpath entry, or null if the entry is
+ * not indexed or was indexed with a different stamp.
+ */
+List<String> get(String entry, String stamp)
+{
+	if (!stamp.equals(stamps.get(entry)))
+		return null;
+	return classes.get(entry);
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Stores the classes of the given classpath entry.
+ */
+void put(String entry, String stamp, List<String> list)
+{
+	stamps.put(entry, stamp);
+	classes.put(entry, list);
+	modified = true;
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Writes the index back to its file, if some entry has been updated.
+ */
+void save()
+{
+	if (!modified)
+		return;
+	File dir = file.getAbsoluteFile().getParentFile();
+	File tmp = null;
+	try {
+		if (dir != null)
+			dir.mkdirs();
+		tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		PrintWriter out = new PrintWriter(new BufferedWriter(
+			new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8")));
+		out.println(HEADER);
+		for (Map.Entry<String,String> e : stamps.entrySet()) {
+			out.println("E " + e.getKey());
+			out.println("S " + e.getValue());
+			for (String name : classes.get(e.getKey()))
+				out.println(name);
+		}
+		out.close();
+		if (out.checkError() || (!tmp.renameTo(file) &&
+			!(file.delete() && tmp.renameTo(file))))
+			tmp.delete();
+		else
+			modified = false;
+	} catch (IOException e) {
+		if (tmp != null)
+			tmp.delete();
+	}
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Parses the file of the index.
+ */
+private void read() throws IOException
+{
+	BufferedReader in = new BufferedReader(
+		new InputStreamReader(new FileInputStream(file), "UTF-8"));
+	try {
+		if (!HEADER.equals(in.readLine()))
+			return;
+		List<String> current = null;
+		String entry = null;
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (line.startsWith("E ")) {
+				entry = line.substring(2);
+				current = new ArrayList<String>();
+				classes.put(entry, current);
+			} else if (line.startsWith("S ") && entry != null) {
+				stamps.put(entry, line.substring(2));
+			} else if (current != null && line.length() > 0) {
+				current.add(line);
+			}
+		}
+	} finally {
+		in.close();
+	}
+}
+
+}
@@ -339,6 +339,19 @@ public static void setConfig(Properties p, boolean check)
 
 // -------------------------------------------------------------------
 
+/**
+ * Discards the configuration, so that {@link #setConfig(Properties)} can be
+ * called again. This is only meant for running several simulations in the
+ * same JVM (see {@link peersim.Simulator#runInProcess}); every class that
+ * caches configuration data in static fields must be reset as well.
+ */
+public static void reset()
+{
+	config = null;
+}
+
+// -------------------------------------------------------------------
+
 /**
  * @return true if and only if name is a specified (existing) property.
  */
@@ -53,13 +53,13 @@ private static final String PAR_TRANSPORT = "transport";
  * This array stores the protocol ids of the {@link peersim.core.Linkable}
  * protocols that are linked to the protocol given by the array index.
  */
-protected static final int[][] links;
+protected static int[][] links;
 
 /**
  * This array stores the protocol id of the {@link peersim.transport.Transport}
  * protocol that is linked to the protocol given by the array index.
  */
-protected static final int[] transports;
+protected static int[] transports;
 
 
 // ======================= initialization ===================================
@@ -80,6 +80,19 @@ protected static final int[] transports;
  * <code>Configuration</code> class.
  */
 static {
+	reset();
+}
+
+// ---------------------------------------------------------------------
+
+/**
+ * Reads the linkable and transport information from the current
+ * configuration. It is called by the static initializer; calling it again is
+ * only needed when a new configuration is set in the same JVM, see
+ * {@link peersim.Simulator#runInProcess}.
+ */
+public static void reset()
+{
 	String[] names = Configuration.getNames(Configuration.PAR_PROT);
 	links = new int[names.length][];
 	transports = new int[names.length];
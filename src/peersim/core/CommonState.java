@@ -101,6 +101,19 @@ private static Node node;
 */
 public static ExtendedRandom r = null;
 
+/**
+ * The state of the current thread, when it is a worker of a parallel engine.
+ * Only used while {@link #threaded} is true.
+ */
+private static final ThreadLocal<ThreadState> threadState =
+	new ThreadLocal<ThreadState>();
+
+/**
+ * True while a parallel engine runs. It is only changed while no worker
+ * thread is running.
+ */
+private static boolean threaded = false;
+
 
 // ======================== initialization =========================
 // =================================================================
@@ -138,6 +151,26 @@ static {
 /** Does nothing. To avoid construction but allow extension. */
 protected CommonState() {}
 
+//-----------------------------------------------------------------
+
+/**
+ * Restores the state of a freshly loaded class: time 0, no end time,
+ * unknown phase, and a new random generator initialized according to the
+ * current configuration. This is only meant for running several simulations
+ * in the same JVM, see {@link peersim.Simulator#runInProcess}.
+ */
+public static void reset()
+{
+	time = 0;
+	endtime = -1;
+	toshift = -1;
+	phase = PHASE_UNKNOWN;
+	pid = 0;
+	node = null;
+	r = null;
+	initializeRandom(Configuration.getLong(PAR_SEED,System.currentTimeMillis()));
+}
+
 // ======================= methods =================================
 // =================================================================
 
@@ -150,6 +183,10 @@ protected CommonState() {}
  */
 public static long getTime()
 {
+	if (threaded) {
+		ThreadState s = threadState.get();
+		if (s != null) return s.time;
+	}
 	return time;
 }
 
@@ -167,7 +204,7 @@ public static long getTime()
  */
 public static int getIntTime()
 {
-	return (int)(time>>toshift);
+	return (int)(getTime()>>toshift);
 }
 
 //-----------------------------------------------------------------
@@ -177,6 +214,13 @@ public static int getIntTime()
  */
 public static void setTime(long t)
 {
+	if (threaded) {
+		ThreadState s = threadState.get();
+		if (s != null) {
+			s.time = t;
+			return;
+		}
+	}
 	time = t;
 }
 
@@ -239,6 +283,10 @@ public static void setPhase(int p)
 */
 public static int getPid()
 {
+	if (threaded) {
+		ThreadState s = threadState.get();
+		if (s != null) return s.pid;
+	}
 	return pid;
 }
 
@@ -247,6 +295,13 @@ public static int getPid()
 /** Sets the current protocol identifier.*/
 public static void setPid(int p)
 {
+	if (threaded) {
+		ThreadState s = threadState.get();
+		if (s != null) {
+			s.pid = p;
+			return;
+		}
+	}
 	pid = p;
 }
 
@@ -258,6 +313,10 @@ public static void setPid(int p)
  */
 public static Node getNode()
 {
+	if (threaded) {
+		ThreadState s = threadState.get();
+		if (s != null) return s.node;
+	}
 	return node;
 }
 
@@ -266,6 +325,13 @@ public static Node getNode()
 /** Sets the current node */
 public static void setNode(Node n)
 {
+	if (threaded) {
+		ThreadState s = threadState.get();
+		if (s != null) {
+			s.node = n;
+			return;
+		}
+	}
 	node = n;
 }
 
@@ -281,6 +347,137 @@ public static void initializeRandom(long seed)
 
 //-----------------------------------------------------------------
 
+/**
+ * Starts the threaded mode, used by parallel engines. In this mode the
+ * time, the node and the pid are kept per thread for the threads that
+ * have {@link #attach}ed a state, and {@link #r} is replaced by a
+ * generator that delegates to the generator of that state. The other
+ * threads keep using the global state and the original generator.
+ * It must be called while no worker thread is running.
+ */
+public static void beginThreaded()
+{
+	if (threaded) return;
+	r = new ThreadedRandom(r);
+	threaded = true;
+}
+
+//-----------------------------------------------------------------
+
+/**
+ * Ends the threaded mode, restoring the original generator.
+ * It must be called when no worker thread is running any more.
+ */
+public static void endThreaded()
+{
+	if (!threaded) return;
+	threaded = false;
+	r = ((ThreadedRandom) r).base;
+}
+
+//-----------------------------------------------------------------
+
+/**
+ * Attaches the given state to the calling thread, for the threaded mode.
+ */
+public static void attach(ThreadState s)
+{
+	threadState.set(s);
+}
+
+//-----------------------------------------------------------------
+
+/**
+ * Detaches the state of the calling thread.
+ */
+public static void detach()
+{
+	threadState.remove();
+}
+
+//-----------------------------------------------------------------
+
+/**
+ * Returns the state attached to the calling thread in threaded mode,
+ * or null.
+ */
+public static ThreadState getThreadState()
+{
+	return (threaded ? threadState.get() : null);
+}
+
+//-----------------------------------------------------------------
+
+/**
+ * The time, node, pid and random generator of a worker thread of a
+ * parallel engine. Engines can extend it to keep their own information.
+ */
+public static class ThreadState
+{
+	private long time;
+	private Node node;
+	private int pid;
+	private final ExtendedRandom random;
+
+	/**
+	 * @param time the initial time
+	 * @param random the generator used through {@link CommonState#r}
+	 */
+	public ThreadState(long time, ExtendedRandom random)
+	{
+		this.time = time;
+		this.random = random;
+	}
+}
+
+//-----------------------------------------------------------------
+
+/**
+ * The value of {@link #r} in threaded mode. All methods delegate to the
+ * generator of the state attached to the calling thread, or to the
+ * original generator if there is none, so the sequence of numbers seen by
+ * each thread is the one of its own generator.
+ */
+private static final class ThreadedRandom extends ExtendedRandom
+{
+	private static final long serialVersionUID = 1L;
+
+	private final ExtendedRandom base;
+
+	ThreadedRandom(ExtendedRandom base)
+	{
+		super(0);
+		this.base = base;
+	}
+
+	private ExtendedRandom current()
+	{
+		ThreadState s = threadState.get();
+		return (s != null ? s.random : base);
+	}
+
+	protected int next(int bits) { return current().nextInt() >>> (32-bits); }
+	public int nextInt() { return current().nextInt(); }
+	public int nextInt(int n) { return current().nextInt(n); }
+	public long nextLong() { return current().nextLong(); }
+	public long nextLong(long n) { return current().nextLong(n); }
+	public double nextDouble() { return current().nextDouble(); }
+	public float nextFloat() { return current().nextFloat(); }
+	public boolean nextBoolean() { return current().nextBoolean(); }
+	public double nextGaussian() { return current().nextGaussian(); }
+	public void nextBytes(byte[] bytes) { current().nextBytes(bytes); }
+	public int nextPoisson(double mean) { return current().nextPoisson(mean); }
+	public long getLastSeed() { return current().getLastSeed(); }
+	public void setSeed(long seed)
+	{
+		// called by the constructor of Random, before base is set
+		if (base == null) super.setSeed(seed);
+		else current().setSeed(seed);
+	}
+}
+
+//-----------------------------------------------------------------
+
 /*
 public static void main(String pars[]) {
 	
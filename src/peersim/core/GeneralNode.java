@@ -106,6 +106,18 @@ private long nextID() {
 	return counterID++;
 }
 
+// -----------------------------------------------------------------
+
+/**
+* Restarts the ID sequence, so that the nodes of the next simulation run in
+* the same JVM get the same IDs as in a fresh one.
+* See {@link peersim.Simulator#runInProcess}.
+*/
+public static void resetStatic() {
+
+	counterID = -1;
+}
+
 // =============== public methods ==================================
 // =================================================================
 
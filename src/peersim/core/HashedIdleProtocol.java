@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.core;
+
+import peersim.config.Configuration;
+
+/**
+ * An {@link IdleProtocol} with constant time {@link #contains} and
+ * {@link #addNeighbor}, for overlays with a high degree.
+ * The neighbors are kept in the same array and order as in
+ * {@link IdleProtocol}. Above a given degree they are also indexed by an
+ * open addressing hash table of ints, hashed on the node ID, that holds their
+ * position in the array. Below that degree the plain array is scanned, which
+ * is faster and saves the memory of the table.
+ */
+public class HashedIdleProtocol extends IdleProtocol
+{
+
+// --------------------------------------------------------------------------
+// Parameters
+// --------------------------------------------------------------------------
+
+/**
+ * Default degree above which the neighbors are hashed.
+ */
+private static final int DEFAULT_THRESHOLD = 16;
+
+/**
+ * The degree above which the neighbors are hashed. Defaults to
+ * {@value #DEFAULT_THRESHOLD}. If 0, they are always hashed.
+ * @config
+ */
+private static final String PAR_THRESHOLD = "threshold";
+
+// --------------------------------------------------------------------------
+// Fields
+// --------------------------------------------------------------------------
+
+/** The degree above which the neighbors are hashed */
+private final int threshold;
+
+/**
+ * The hash table: 1 + the position of the neighbor in the array, or 0 for an
+ * empty slot. Its length is a power of two, at least twice the degree.
+ * Null below the threshold.
+ */
+private int[] slots;
+
+// --------------------------------------------------------------------------
+// Initialization
+// --------------------------------------------------------------------------
+
+public HashedIdleProtocol(String s)
+{
+	super(s);
+	threshold = Configuration.getInt(s + "." + PAR_THRESHOLD,
+			DEFAULT_THRESHOLD);
+	slots = null;
+}
+
+//--------------------------------------------------------------------------
+
+public Object clone()
+{
+	HashedIdleProtocol hp = (HashedIdleProtocol) super.clone();
+	if (slots != null)
+		hp.slots = slots.clone();
+	return hp;
+}
+
+// --------------------------------------------------------------------------
+// Methods
+// --------------------------------------------------------------------------
+
+public boolean contains(Node n)
+{
+	if (slots == null)
+		return super.contains(n);
+	return find(n) >= 0;
+}
+
+// --------------------------------------------------------------------------
+
+/** Adds given node if it is not already in the network. There is no limit
+* to the number of nodes that can be added. */
+public boolean addNeighbor(Node n)
+{
+	if (slots == null) {
+		if (len < threshold)
+			return super.addNeighbor(n);
+		rehash();
+	}
+	if (find(n) >= 0)
+		return false;
+	if (len == neighbors.length) {
+		Node[] temp = new Node[3 * neighbors.length / 2 + 1];
+		System.arraycopy(neighbors, 0, temp, 0, len);
+		neighbors = temp;
+	}
+	neighbors[len] = n;
+	len++;
+	if (2 * len > slots.length)
+		rehash();
+	else
+		insert(len - 1);
+	return true;
+}
+
+// --------------------------------------------------------------------------
+
+public void onKill()
+{
+	super.onKill();
+	slots = null;
+}
+
+// --------------------------------------------------------------------------
+
+/**
+ * Returns the position of the given node in the neighbor array, or -1 if
+ * it is not a neighbor. The table must exist.
+ */
+private int find(Node n)
+{
+	final int mask = slots.length - 1;
+	for (int h = hash(n.getID()) & mask; slots[h] != 0; h = (h + 1) & mask) {
+		if (neighbors[slots[h] - 1] == n)
+			return slots[h] - 1;
+	}
+	return -1;
+}
+
+// --------------------------------------------------------------------------
+
+/**
+ * Adds the neighbor at the given position of the array to the table.
+ */
+private void insert(int i)
+{
+	final int mask = slots.length - 1;
+	int h = hash(neighbors[i].getID()) & mask;
+	while (slots[h] != 0)
+		h = (h + 1) & mask;
+	slots[h] = i + 1;
+}
+
+// --------------------------------------------------------------------------
+
+/**
+ * Rebuilds the table with room for twice the current degree.
+ */
+private void rehash()
+{
+	int cap = 4;
+	while (cap < 4 * len)
+		cap <<= 1;
+	slots = new int[cap];
+	for (int i = 0; i < len; i++)
+		insert(i);
+}
+
+// --------------------------------------------------------------------------
+
+/**
+ * Mixes the bits of the node ID, as IDs are often consecutive.
+ */
+private static int hash(long id)
+{
+	int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+	return h ^ (h >>> 16);
+}
+
+}
@@ -18,6 +18,7 @@
 		
 package peersim.core;
 
+import peersim.graph.CSRGraph;
 import peersim.graph.Graph;
 import java.util.Collection;
 import java.util.ArrayList;
@@ -199,6 +200,38 @@ public int degree(int i) {
 	return numNeighbours;
 }
 
+// ---------------------------------------------------------------
+
+/**
+* Returns a snapshot of the current graph, with the same neighbours as
+* {@link #getNeighbours}, but that is not affected by later changes of the
+* overlay or of the fail state of nodes.
+*/
+public CSRGraph freeze() {
+
+	final int size = Network.size();
+	int[] offsets = new int[size+1];
+	Object[] nodes = new Object[size];
+	for(int i=0; i<size; ++i)
+	{
+		nodes[i] = Network.node[i];
+		offsets[i+1] = offsets[i]+degree(i);
+	}
+	int[] targets = new int[offsets[size]];
+	int p = 0;
+	for(int i=0; i<size; ++i)
+	{
+		if( !Network.node[i].isUp() ) continue;
+		Linkable lble=(Linkable)Network.node[i].getProtocol(protocolID);
+		for(int j=0; j<lble.degree(); ++j)
+		{
+			final Node n = lble.getNeighbor(j);
+			if(n.isUp()) targets[p++] = n.getIndex();
+		}
+	}
+	return new CSRGraph(offsets, targets, nodes, true);
+}
+
 
 // ========================= other methods =======================
 // ===============================================================
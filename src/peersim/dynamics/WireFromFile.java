@@ -20,10 +20,8 @@ package peersim.dynamics;
 
 
 import java.io.IOException;
-import java.io.FileReader;
-import java.io.LineNumberReader;
-import java.util.StringTokenizer;
 import peersim.graph.Graph;
+import peersim.graph.GraphIO;
 import peersim.core.*;
 import peersim.config.Configuration;
 
@@ -37,6 +35,9 @@ import peersim.config.Configuration;
 * All node IDs larger than the actual network size will be discarded, but
 * it does not trigger an error. Lines starting with a "#" character and
 * empty lines are ignored.
+* The file can also be in the binary format written by
+* {@link GraphIO#writeBinaryNeighborList}, which is recognized
+* automatically and is much faster to read.
 */
 public class WireFromFile extends WireGraph {
 
@@ -90,42 +91,41 @@ public WireFromFile(String prefix) {
 * (IDs start from 0) followed by a list of neighbors, separated by whitespace.
 * All node IDs larger than the actual network size will be discarded, but
 * it does not trigger an error. Lines starting with a "#" character and
-* empty lines are ignored.
+* empty lines are ignored. Binary files are read with
+* {@link GraphIO#readBinaryNeighborList}, text files with
+* {@link GraphIO#readNeighborList}.
 */
-public void wire(Graph g) {
+public void wire(final Graph g) {
 try
 {
-	FileReader fr = new FileReader(file);
-	LineNumberReader lnr = new LineNumberReader(fr);
-	String line;
-	boolean wasOutOfRange=false;
-	while((line=lnr.readLine()) != null)
-	{
-		if( line.startsWith("#") ) continue;
-		StringTokenizer st = new StringTokenizer(line);
-		if(!st.hasMoreTokens()) continue;
-		
-		final int from = Integer.parseInt(st.nextToken());
-		if( from < 0 || from >= Network.size() )
-		{
-			wasOutOfRange = true;
-			continue;
+	final boolean[] wasOutOfRange = new boolean[1];
+	GraphIO.NeighborListHandler h = new GraphIO.NeighborListHandler() {
+		public void neighbors(int from, int[] to, int count) {
+			
+			if( from < 0 || from >= Network.size() )
+			{
+				wasOutOfRange[0] = true;
+				return;
+			}
+			
+			for(int i=0; i<k && i<count; ++i)
+			{
+				if( to[i] < 0 || to[i] >= Network.size() )
+					wasOutOfRange[0] = true;
+				else
+					g.setEdge(from,to[i]);
+			}
 		}
-		
-		for(int i=0; i<k && st.hasMoreTokens(); ++i)
-		{
-			final int to = Integer.parseInt(st.nextToken());
-			if( to < 0 || to >= Network.size() )
-				wasOutOfRange = true;
-			else
-				g.setEdge(from,to);
-		}
-	}
-
-	if( wasOutOfRange )
+	};
+	
+	if( GraphIO.isBinaryNeighborList(file) )
+		GraphIO.readBinaryNeighborList(file, h);
+	else
+		GraphIO.readNeighborList(file, h);
+
+	if( wasOutOfRange[0] )
 		System.err.println("WireFromFile warning: in "+file+" "+
 			"some nodes were out of range and so ignored.");
-	lnr.close();
 }
 catch( IOException e )
 {
@@ -76,9 +76,9 @@ private static final String PAR_RNDSTART = "randstart";
 * Contains the scheduler objects for all {@link CDProtocol}s defined in the
 * configuration. The length of the array is the number of protocols defined,
 * but those entries that belong to protocols that are not {@link CDProtocol}s
-* are null.
+* are null. It is loaded by the first instance.
 */
-public static final Scheduler[] sch;
+public static Scheduler[] sch;
 
 private final NextCycleEvent[] nce;
 
@@ -91,9 +91,10 @@ private final boolean randstart;
 
 
 /**
-* Loads protocol schedulers for all protocols.
+* Loads protocol schedulers for all protocols of {@link Network#prototype}.
+* Called by the first instance, when the prototype is already available.
 */
-static {
+private static void load() {
 
 	String[] names = Configuration.getNames(Node.PAR_PROT);
 	sch = new Scheduler[names.length];
@@ -113,6 +114,8 @@ static {
 */
 public CDScheduler(String n) {
 
+	if( sch == null ) load();
+
 	String[] prots=Configuration.getString(n+"."+PAR_PROTOCOL).split("\\s");
 	pid = new int[prots.length];
 	nce = new NextCycleEvent[prots.length];
@@ -139,6 +142,22 @@ public CDScheduler(String n) {
 // ========================== methods ==================================
 // =====================================================================
 
+
+/**
+* Discards the protocol schedulers, so that they are loaded again from the
+* current configuration by the next instance. This is only meant for running
+* several simulations in the same JVM, see
+* {@link peersim.Simulator#runInProcess}.
+*/
+public static void reset() {
+
+	sch = null;
+}
+
+// --------------------------------------------------------------------
+
+// =====================================================================
+
 /**
  * Schedules the protocol at all nodes
  * for the first execution adding it to the priority queue of the event driven
@@ -0,0 +1,525 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.edsim;
+
+import java.util.*;
+
+import peersim.core.Node;
+import peersim.core.CommonState;
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+
+/**
+ *  A calendar queue (R. Brown, CACM 31(10), 1988) that can replace
+ *  {@link Heap} as the event queue of {@link EDSimulator}, through
+ *  parameter <tt>simulation.eventqueue</tt>:
+ *  <pre>
+ *  simulation.eventqueue CalendarQueue
+ *  </pre>
+ *  Events are ordered by the same key as in {@link Heap}, that is, time
+ *  shifted left by <tt>pbits</tt> bits and combined with the priority.
+ *  The key range is divided in buckets of equal width, used cyclically like
+ *  the days of a calendar year; each bucket is a sorted list. The number of
+ *  buckets follows the number of events and the width follows their
+ *  density, so that adding and removing an event takes constant expected
+ *  time, instead of the logarithmic time of the heap.
+ *  <p>
+ *  Events with the same key are returned in the order they were added, so
+ *  a simulation is deterministic for a given seed. This order may be
+ *  different from the one of {@link Heap}, for which it is arbitrary.
+ *  <p>
+ *  Like in {@link Heap}, the events are stored in parallel arrays, and
+ *  the lists link array slots, so no object is allocated per event.
+ *  <p>
+ *  The {@link #main} method compares the two queues on the classic
+ *  "hold" benchmark.
+ */
+public class CalendarQueue implements KeyedPriorityQ {
+
+//--------------------------------------------------------------------------
+// Constants
+//--------------------------------------------------------------------------
+
+/**
+ * This parameter specifies how many
+ * bits are used to order events that occur at the same time. Defaults
+ * to 8. A value smaller than 8 causes an IllegalParameterException.
+ * Higher values allow for a better discrimination, but reduce
+ * the maximal time steps that can be simulated.
+ * @config
+ */
+private static final String PAR_PBITS = "pbits";
+
+/**
+ * Specifies the initial capacity of the queue. Defaults to 65536.
+ * @config
+ */
+private static final String PAR_SIZE = "size";
+
+/** The minimal number of buckets */
+private static final int MIN_BUCKETS = 16;
+
+/** The number of events sampled to estimate the bucket width */
+private static final int SAMPLE = 25;
+
+//--------------------------------------------------------------------------
+// Fields
+//--------------------------------------------------------------------------
+
+/** Event component of the slots */
+private Object[] events;
+
+/** Key component of the slots */
+private long[] keys;
+
+/** Node component of the slots */
+private Node[] nodes;
+
+/** Pid component of the slots */
+private byte[] pids;
+
+/** Next slot in the same bucket, or in the free list; -1 ends a list */
+private int[] next;
+
+/** First free slot, -1 if none */
+private int free = -1;
+
+/** Number of slots ever used */
+private int used = 0;
+
+/** Number of elements */
+private int size;
+
+/** First slot of each bucket, -1 if empty */
+private int[] heads;
+
+/** Last slot of each bucket, -1 if empty */
+private int[] tails;
+
+/** The number of buckets minus one; the number of buckets is a power of 2 */
+private int mask;
+
+/** The range of keys covered by a bucket */
+private long width;
+
+/** The bucket of the last event removed */
+private int current;
+
+/** The first key of {@link #current} in the current year; no event in the
+queue has a smaller key */
+private long currentStart;
+
+/** The last key of {@link #current} in the current year */
+private long currentEnd;
+
+/** Singleton event object used to return (event, time, node, pid) tuples */
+private final Event ev = new Event();
+
+/** The number of bits reserved to order event with the same timestamp */
+private final int pbits;
+
+/** The mask to test whether the time value fits into the range we can
+represent */
+private final long overflowMask;
+
+//--------------------------------------------------------------------------
+// Contructor
+//--------------------------------------------------------------------------
+
+/**
+ * Initializes a new calendar queue using defaults.
+ */
+public CalendarQueue() {
+	this(""); // "" is not a valid prefix for a component
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Initializes a new calendar queue using the configuration.
+ */
+public CalendarQueue(String prefix) {
+
+	int size = Configuration.getInt(prefix+"."+PAR_SIZE,65536);
+	pbits = Configuration.getInt(prefix+"."+PAR_PBITS,8);
+	if (pbits < 8 || pbits >= 31) {
+		throw new IllegalParameterException(prefix+"."+PAR_PBITS,
+		"This parameter should be >= 8 or < 31");
+	}
+	overflowMask = ~maxTime();
+	events = new Object[size];
+	keys = new long[size];
+	nodes = new Node[size];
+	pids = new byte[size];
+	next = new int[size];
+	width = 1L << pbits;
+	buckets(MIN_BUCKETS);
+	moveTo(0);
+}
+
+//--------------------------------------------------------------------------
+// Methods
+//--------------------------------------------------------------------------
+
+/**
+ * Returns the current number of events in the system.
+ */
+public int size()
+{
+	return size;
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Add a new event, to be scheduled at the specified time.
+ *
+ * @param time the time at which this event should be scheduled
+ * @param event the object describing the event
+ * @param node the node at which the event has to be delivered
+ * @param pid the protocol that handles the event
+ */
+public void add(long time, Object event, Node node, byte pid)
+{
+	add(time,event,node,pid,CommonState.r.nextInt(1 << pbits));
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Add a new event, to be scheduled at the specified time.
+ *
+ * @param time the time at which this event should be scheduled
+ * @param event the object describing the event
+ * @param node the node at which the event has to be delivered
+ * @param pid the protocol that handles the event
+ */
+public void add(long time, Object event, Node node, byte pid, long priority)
+{
+	if( (time&overflowMask) != 0 ) throw new
+		IllegalArgumentException("Time overflow: time="+time);
+
+	long key = (time << pbits) | priority;
+
+	int slot = free;
+	if (slot >= 0) {
+		free = next[slot];
+	} else {
+		if (used == events.length) doubleCapacity();
+		slot = used++;
+	}
+	events[slot] = event;
+	keys[slot] = key;
+	nodes[slot] = node;
+	pids[slot] = pid;
+	link(slot);
+
+	// An event before the current bucket (for example at the current time
+	// but with a lower priority) moves the calendar back
+	if (key < currentStart) moveTo(key);
+	size++;
+	if (size > 2*(mask+1)) resize(2*(mask+1));
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Removes the first event in the queue and returns it.
+ * Note that, to avoid garbage collection, a singleton instance of
+ * the Event class is used. This means that data contained in the
+ * returned event are overwritten when a new invocation of this
+ * method is performed.
+ * @return first event or null if size is zero
+ */
+public Event removeFirst() {
+
+	if(size==0) return null;
+
+	int slot = first();
+	heads[current] = next[slot];
+	if (heads[current] < 0) tails[current] = -1;
+	ev.time = keys[slot] >> pbits;
+	ev.event = events[slot];
+	ev.node = nodes[slot];
+	ev.pid = pids[slot];
+	events[slot] = null;
+	nodes[slot] = null;
+	next[slot] = free;
+	free = slot;
+	size--;
+	if (size < (mask+1)/2 && mask+1 > MIN_BUCKETS) resize((mask+1)/2);
+	return ev;
+}
+
+//--------------------------------------------------------------------------
+
+public long firstKey() { return (size == 0 ? Long.MAX_VALUE : keys[first()]); }
+
+//--------------------------------------------------------------------------
+
+public long maxTime() { return Long.MAX_VALUE >> pbits; }
+
+//--------------------------------------------------------------------------
+
+public long maxPriority() { return (1L << pbits)-1; }
+
+//--------------------------------------------------------------------------
+
+/**
+ *  Prints the size and the calendar parameters.
+ */
+public String toString()
+{
+	return "[Size: " + size + " Buckets: " + (mask+1) +
+		" Width: " + width + "]";
+}
+
+
+//--------------------------------------------------------------------------
+// Private methods
+//--------------------------------------------------------------------------
+
+/**
+ * Returns the slot of the first event, making its bucket the current one.
+ * The queue must not be empty.
+ */
+private int first()
+{
+	// look for the first event of the current year, from the
+	// current bucket on
+	int slot = -1;
+	for (int i = 0; i <= mask; i++) {
+		int h = heads[current];
+		if (h >= 0 && keys[h] <= currentEnd) {
+			slot = h;
+			break;
+		}
+		current = (current+1) & mask;
+		currentStart = saturatedAdd(currentStart, width);
+		currentEnd = saturatedAdd(currentEnd, width);
+	}
+	if (slot < 0) {
+		// no events in this year: jump directly to the first one
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i <= mask; i++) {
+			int h = heads[i];
+			if (h >= 0 && keys[h] <= min) min = keys[h];
+		}
+		moveTo(min);
+		slot = heads[current];
+	}
+	return slot;
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Inserts the slot in its bucket, after all the slots with a key not larger
+ * than its own.
+ */
+private void link(int slot)
+{
+	long key = keys[slot];
+	int b = (int)(key / width) & mask;
+	int t = tails[b];
+	next[slot] = -1;
+	if (t < 0) {
+		heads[b] = slot;
+		tails[b] = slot;
+	} else if (keys[t] <= key) {
+		next[t] = slot;
+		tails[b] = slot;
+	} else {
+		// the tail is larger, so the loop stops before the end
+		int prev = -1;
+		int cur = heads[b];
+		while (keys[cur] <= key) {
+			prev = cur;
+			cur = next[cur];
+		}
+		next[slot] = cur;
+		if (prev < 0) heads[b] = slot;
+		else next[prev] = slot;
+	}
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Makes the bucket of the given key the current one.
+ */
+private void moveTo(long key)
+{
+	current = (int)(key / width) & mask;
+	currentStart = (key / width) * width;
+	currentEnd = saturatedAdd(currentStart, width-1);
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Allocates the given number of empty buckets.
+ */
+private void buckets(int n)
+{
+	heads = new int[n];
+	tails = new int[n];
+	Arrays.fill(heads, -1);
+	Arrays.fill(tails, -1);
+	mask = n-1;
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Redistributes the events in the given number of buckets, with a width
+ * estimated from the events that are due first. The relative order of
+ * events with the same key is preserved.
+ */
+private void resize(int n)
+{
+	int[] oldHeads = heads;
+	long w = newWidth();
+	if (w > 0) width = w;
+	buckets(n);
+	for (int i = 0; i < oldHeads.length; i++) {
+		int s = oldHeads[i];
+		while (s >= 0) {
+			int nx = next[s];
+			link(s);
+			s = nx;
+		}
+	}
+	moveTo(currentStart);
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Estimates the bucket width as in Brown's paper: three times the average
+ * separation of the first {@value #SAMPLE} events, ignoring separations
+ * larger than twice the average. Returns 0 if there are too few events.
+ */
+private long newWidth()
+{
+	int n = Math.min(size, SAMPLE);
+	if (n < 2) return 0;
+	// the n smallest keys, sorted, by insertion
+	long[] sample = new long[n];
+	int k = 0;
+	for (int i = 0; i <= mask; i++) {
+		for (int s = heads[i]; s >= 0; s = next[s]) {
+			long key = keys[s];
+			if (k == n && key >= sample[n-1]) continue;
+			int j = (k < n ? k++ : n-1);
+			while (j > 0 && sample[j-1] > key) {
+				sample[j] = sample[j-1];
+				j--;
+			}
+			sample[j] = key;
+		}
+	}
+	double avg = (double)(sample[n-1]-sample[0]) / (n-1);
+	double sum = 0;
+	int count = 0;
+	for (int i = 1; i < n; i++) {
+		long d = sample[i]-sample[i-1];
+		if (d <= 2*avg) {
+			sum += d;
+			count++;
+		}
+	}
+	if (count > 0) avg = sum / count;
+	return Math.max(1, (long)(3*avg));
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ * Returns a+b, or Long.MAX_VALUE if the sum overflows.
+ */
+private static long saturatedAdd(long a, long b)
+{
+	return (a > Long.MAX_VALUE-b ? Long.MAX_VALUE : a+b);
+}
+
+//--------------------------------------------------------------------------
+
+/**
+ *
+ */
+private void doubleCapacity() {
+	int oldsize = events.length;
+	int newsize = oldsize*2;
+	events = Arrays.copyOf(events, newsize);
+	keys = Arrays.copyOf(keys, newsize);
+	nodes = Arrays.copyOf(nodes, newsize);
+	pids = Arrays.copyOf(pids, newsize);
+	next = Arrays.copyOf(next, newsize);
+}
+
+//--------------------------------------------------------------------------
+// Testing
+//--------------------------------------------------------------------------
+
+/**
+ * Compares this queue with {@link Heap} on the "hold" benchmark: the queue
+ * is filled with the given number of events, then each operation removes
+ * the first event and adds a new one at a random delay after it, as a
+ * simulation with a stable number of pending events does. Both queues are
+ * fed the same delays and must return the same sequence of times.
+ * <p>
+ * Usage: <code>CalendarQueue [events [operations [maxdelay]]]</code>,
+ * by default 1000000, 10000000 and 1000.
+ */
+public static void main(String[] args) {
+
+	int n = (args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+	int ops = (args.length > 1 ? Integer.parseInt(args[1]) : 10000000);
+	int maxdelay = (args.length > 2 ? Integer.parseInt(args[2]) : 1000);
+	Configuration.setConfig(new Properties());
+
+	long[] results = new long[2];
+	for (int rep = 0; rep < 3; rep++) {
+		PriorityQ[] queues = { new Heap(), new CalendarQueue() };
+		for (int q = 0; q < queues.length; q++) {
+			Random r = new Random(rep);
+			PriorityQ pq = queues[q];
+			long t1 = System.nanoTime();
+			for (int i = 0; i < n; i++)
+				pq.add(r.nextInt(maxdelay), null, null, (byte)0,
+					r.nextInt(256));
+			long check = 0;
+			for (int i = 0; i < ops; i++) {
+				long time = pq.removeFirst().time;
+				check = 31*check + time;
+				pq.add(time + r.nextInt(maxdelay), null, null, (byte)0,
+					r.nextInt(256));
+			}
+			long t2 = System.nanoTime();
+			results[q] = check;
+			System.out.println(queues[q].getClass().getSimpleName() +
+				": " + n + " events, " + (t2-t1)/(n+ops) + " ns/op");
+		}
+		if (results[0] != results[1])
+			System.out.println("Different sequences of events!");
+	}
+}
+
+} // END CalendarQueue
@@ -110,10 +110,29 @@ private static final String PAR_LOGTIME = "simulation.logtime";
 /** 
  * This parameter specifies the event queue to be used. It must be an
  * implementation of interface {@link PriorityQ}. If it is not defined,
- * the internal implementation is used.
+ * the internal implementation is used ({@link Heap}). With many pending
+ * events, {@link CalendarQueue} is usually faster.
  * @config 
  */	
-private static final String PAR_PQ = "simulation.eventqueue";
+static final String PAR_PQ = "simulation.eventqueue";
+
+/**
+ * If present, the simulation is run by the parallel engine with this number
+ * of worker threads, each simulating a partition of the nodes.
+ * With one worker the results are the same as without this parameter;
+ * with more, the protocols must only interact by sending events.
+ * See {@link ParallelEngine} for details.
+ * @config
+ */
+public static final String PAR_WORKERS = "simulation.workers";
+
+/**
+ * The minimal delay of the events sent between nodes, used by the parallel
+ * engine to synchronize the workers. If absent, it is the minimal latency of
+ * the {@link peersim.transport.MinLatencyTransport}s of the nodes.
+ * @config
+ */
+public static final String PAR_LOOKAHEAD = "simulation.lookahead";
 
 /**
  * This is the prefix for initializers.
@@ -157,6 +176,9 @@ private static Scheduler[] ctrlSchedules = null;
 /** Ordered list of events (heap) */
 private static PriorityQ heap = null;
 
+/** The parallel engine, if {@value #PAR_WORKERS} is set */
+private static ParallelEngine engine = null;
+
 private static long nextlog = 0;
 
 // =============== initialization ======================================
@@ -202,7 +224,9 @@ private static void scheduleControls()
 		Arrays.asList(names));
 
 	// Schedule controls execution
-	if (controls.length > heap.maxPriority()+1)
+	long maxPriority = (engine != null ? engine.maxPriority() :
+		heap.maxPriority());
+	if (controls.length > maxPriority+1)
 		throw new IllegalArgumentException(
 		"Too many control objects");
 	for (int i=0; i < controls.length; i++) {
@@ -230,7 +254,8 @@ static void addControlEvent(long time, int order, ControlEvent event)
 // we don't check whether time is negative or in the past: we trust
 // the caller, which must be from this package
 	if (time >= endtime) return;
-	heap.add(time, event, null, (byte)0, order);
+	if (engine != null) engine.addControl(time, order, event);
+	else heap.add(time, event, null, (byte)0, order);
 }
 
 //---------------------------------------------------------------------
@@ -262,6 +287,24 @@ private static boolean executeNext() {
 	}
 	
 	long time = ev.time;
+	log(time);
+	if (time >= endtime)
+	{
+		System.err.println("EDSimulator: reached end time, quitting,"+
+		" leaving "+heap.size()+" unprocessed events in the queue");
+		return true;
+	}
+	
+	return deliver(ev);
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Logs the time if a multiple of {@value #PAR_LOGTIME} has been reached.
+ */
+static void log(long time)
+{
 	if (time >= nextlog)
 	{
 		System.err.println("Current time: " + time);
@@ -270,13 +313,18 @@ private static boolean executeNext() {
 		if( endtime-nextlog >= logtime ) nextlog+=logtime;
 		else nextlog=endtime;
 	}
-	if (time >= endtime)
-	{
-		System.err.println("EDSimulator: reached end time, quitting,"+
-		" leaving "+heap.size()+" unprocessed events in the queue");
-		return true;
-	}
-	
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Executes the given event: runs the control, or delivers the event to
+ * the destination protocol.
+ * @return true if the execution should be stopped.
+ */
+static boolean deliver(PriorityQ.Event ev)
+{
+	long time = ev.time;
 	CommonState.setTime(time);
 	int pid = ev.pid;
 	if (ev.node == null)
@@ -350,15 +398,30 @@ public static void nextExperiment()
 	ctrlSchedules = null;
 	nextlog = 0;
 	Network.reset();
+	if( Configuration.contains(PAR_WORKERS) )
+		engine = new ParallelEngine(Configuration.getInt(PAR_WORKERS),
+			endtime);
 	System.err.println("EDSimulator: running initializers");
 	runInitializers();
 	scheduleControls();
 
 	// Perform the actual simulation; executeNext() will tell when to
 	// stop.
-	boolean exit = false;
-	while (!exit) {
-		exit = executeNext();
+	if( engine != null )
+	{
+		try {
+			engine.run();
+		} finally {
+			engine.shutdown();
+			engine = null;
+		}
+	}
+	else
+	{
+		boolean exit = false;
+		while (!exit) {
+			exit = executeNext();
+		}
 	}
 
 	// analysis after the simulation
@@ -400,7 +463,10 @@ public static void add(long delay, Object event, Node node, int pid)
 	
 	long time = CommonState.getTime();
 	if( endtime - time > delay ) // check like this to deal with overflow 
-		heap.add(time+delay, event, node, (byte) pid);
+	{
+		if( engine != null ) engine.add(time+delay, event, node, (byte) pid);
+		else heap.add(time+delay, event, node, (byte) pid);
+	}
 }
 
 }
@@ -30,7 +30,7 @@ import peersim.config.IllegalParameterException;
  *  @author Alberto Montresor
  *  @version $Revision: 1.10 $
  */
-public class Heap implements PriorityQ {
+public class Heap implements KeyedPriorityQ {
 
 //--------------------------------------------------------------------------
 // Constants
@@ -212,6 +212,10 @@ public Event removeFirst() {
 
 //--------------------------------------------------------------------------
 
+public long firstKey() { return (size == 0 ? Long.MAX_VALUE : times[0]); }
+
+//--------------------------------------------------------------------------
+
 public long maxTime() { return Long.MAX_VALUE >> pbits; }
 
 //--------------------------------------------------------------------------
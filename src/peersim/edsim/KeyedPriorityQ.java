@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.edsim;
+
+/**
+ * An event queue that can tell the position of its first event without
+ * removing it. Events are ordered by a key that combines time and
+ * priority: <tt>time*(maxPriority()+1)+priority</tt>.
+ * This is needed by {@link ParallelEngine}, which runs a
+ * queue only up to a given key.
+ */
+public interface KeyedPriorityQ extends PriorityQ {
+
+/**
+ * Returns the key of the first event, or Long.MAX_VALUE if the queue is
+ * empty.
+ */
+public long firstKey();
+
+}
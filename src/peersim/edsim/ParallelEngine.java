@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.edsim;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import peersim.config.*;
+import peersim.core.*;
+import peersim.transport.MinLatencyTransport;
+import peersim.util.ExtendedRandom;
+
+/**
+ * The conservative parallel engine used by {@link EDSimulator} when
+ * {@value EDSimulator#PAR_WORKERS} is set.
+ * <p>
+ * The nodes are partitioned among the workers by their ID, and every
+ * partition has its own event queue, random generator and
+ * {@link CommonState} time, node and pid. The simulation advances in
+ * windows as long as the lookahead, the minimal delay of a message between
+ * two nodes of different partitions: within a window the partitions cannot
+ * affect each other, so they are run in parallel. Messages between
+ * partitions are buffered, and added to the queue of their destination at
+ * the end of the window, in a fixed order. Controls are run by the main
+ * thread between windows, when no worker is running.
+ * <p>
+ * The lookahead is given by {@value EDSimulator#PAR_LOOKAHEAD} or, if
+ * absent, it is the smallest {@link MinLatencyTransport#getMinLatency} of the
+ * transports of the nodes. A message between partitions with a shorter
+ * delay stops the simulation with an exception.
+ * <p>
+ * The results only depend on the seed and on the number of workers. With
+ * more than one worker each partition draws from its own generator, so the
+ * results are only statistically equivalent to the sequential ones. With
+ * a single worker, controls share its queue and its generator is the global
+ * one, so the order of events and the results are exactly those of the
+ * sequential engine.
+ * <p>
+ * Protocols must only interact with other nodes by sending events (for
+ * example through a {@link peersim.transport.Transport}): accessing the
+ * state of a node of another partition is a race.
+ */
+class ParallelEngine
+{
+
+//---------------------------------------------------------------------
+//Fields
+//---------------------------------------------------------------------
+
+/** The partitions */
+private final Partition[] parts;
+
+/** The queue of the controls, if there is more than one partition */
+private final KeyedPriorityQ controls;
+
+/** The minimal delay of messages between partitions */
+private final long lookahead;
+
+/** The end time of the simulation */
+private final long endtime;
+
+/** Number of keys per time unit: the key of time t and priority p is
+t*pspan+p */
+private final long pspan;
+
+/** Runs the partitions; null if there is only one */
+private final ExecutorService pool;
+
+// =============== initialization ======================================
+// =====================================================================
+
+/**
+ * Creates the partitions, with queues created from parameter
+ * {@value EDSimulator#PAR_PQ}, or {@link Heap}s.
+ */
+ParallelEngine(int workers, long endtime)
+{
+	if (workers < 1)
+		throw new IllegalParameterException(EDSimulator.PAR_WORKERS,
+			"The number of workers must be positive");
+	this.endtime = endtime;
+	ExtendedRandom base = CommonState.r;
+	parts = new Partition[workers];
+	for (int i = 0; i < workers; i++) {
+		ExtendedRandom r = base;
+		if (workers > 1) {
+			long seed = base.nextLong();
+			r = (ExtendedRandom) Configuration.getInstance(
+				CommonState.PAR_RANDOM, new ExtendedRandom(seed));
+			r.setSeed(seed);
+		}
+		parts[i] = new Partition(newQueue(), r, workers == 1);
+	}
+	controls = (workers > 1 ? newQueue() : null);
+	pspan = parts[0].queue.maxPriority()+1;
+
+	if (workers == 1) {
+		lookahead = Long.MAX_VALUE;
+		pool = null;
+	} else {
+		lookahead = Configuration.contains(EDSimulator.PAR_LOOKAHEAD) ?
+			Configuration.getLong(EDSimulator.PAR_LOOKAHEAD) :
+			minLatency();
+		if (lookahead < 1)
+			throw new IllegalParameterException(EDSimulator.PAR_LOOKAHEAD,
+			"The lookahead must be at least 1; set it, or use transports"+
+			" with a positive minimal latency");
+		pool = Executors.newFixedThreadPool(workers);
+	}
+	System.err.println("EDSimulator: " + workers + " workers" +
+		(workers > 1 ? ", lookahead " + lookahead : ""));
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Creates an event queue.
+ */
+private static KeyedPriorityQ newQueue()
+{
+	PriorityQ q = Configuration.contains(EDSimulator.PAR_PQ) ?
+		(PriorityQ) Configuration.getInstance(EDSimulator.PAR_PQ) :
+		new Heap();
+	if (!(q instanceof KeyedPriorityQ))
+		throw new IllegalParameterException(EDSimulator.PAR_PQ,
+			"The parallel engine needs a KeyedPriorityQ");
+	return (KeyedPriorityQ) q;
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Returns the smallest minimal latency of the transport protocols of the
+ * prototype node, or 0 if there is none.
+ */
+private static long minLatency()
+{
+	long min = Long.MAX_VALUE;
+	for (int i = 0; i < Network.prototype.protocolSize(); i++) {
+		Protocol p = Network.prototype.getProtocol(i);
+		if (p instanceof MinLatencyTransport)
+			min = Math.min(min, ((MinLatencyTransport) p).getMinLatency());
+	}
+	return (min == Long.MAX_VALUE ? 0 : min);
+}
+
+//---------------------------------------------------------------------
+//Methods
+//---------------------------------------------------------------------
+
+/**
+ * Schedules an event at the given time. Called by a worker, the event goes
+ * to its own queue or, if the destination is in another partition, to its
+ * outbox; called by the main thread, it goes directly to the queue of the
+ * destination.
+ */
+void add(long time, Object event, Node node, byte pid)
+{
+	Partition dest = parts[(int) (node.getID() % parts.length)];
+	CommonState.ThreadState state = CommonState.getThreadState();
+	if (state == null || state == dest) {
+		dest.queue.add(time, event, node, pid);
+		return;
+	}
+	Partition src = (Partition) state;
+	if (time < src.windowEnd)
+		throw new IllegalStateException("Event "+event+" sent to node "+
+			node.getID()+" at time "+time+", before the end of the "+
+			"current window ("+src.windowEnd+"): its delay is shorter "+
+			"than the lookahead "+lookahead+"; check "+
+			EDSimulator.PAR_LOOKAHEAD);
+	// the priority is drawn as the queue would do it
+	src.outbox.add(new Message(time, CommonState.r.nextInt((int) pspan),
+		event, node, pid, dest));
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Schedules a control event. With one partition, it shares its queue.
+ */
+void addControl(long time, long order, ControlEvent event)
+{
+	KeyedPriorityQ q = (controls != null ? controls : parts[0].queue);
+	q.add(time, event, null, (byte) 0, order);
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Returns the maximal priority of the queues.
+ */
+long maxPriority()
+{
+	return pspan-1;
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Runs the simulation until the end time, until all queues are empty, or
+ * until a control stops it. The global time is set to the time of the last
+ * event.
+ */
+void run()
+{
+	CommonState.beginThreaded();
+	try {
+		long last = CommonState.getTime();
+		while (true) {
+			long first = Long.MAX_VALUE;
+			for (Partition p : parts)
+				first = Math.min(first, p.queue.firstKey());
+			long ctrl = (controls != null ? controls.firstKey() :
+				Long.MAX_VALUE);
+			long next = Math.min(first, ctrl);
+			if (next == Long.MAX_VALUE) {
+				System.err.println("EDSimulator: queue is empty, "+
+					"quitting at time "+last);
+				break;
+			}
+			long start = next / pspan;
+			if (start >= endtime) {
+				System.err.println("EDSimulator: reached end time, "+
+					"quitting");
+				break;
+			}
+			if (parts.length > 1) EDSimulator.log(start);
+
+			if (ctrl <= first) {
+				// the next event is a control: run it in the main thread
+				PriorityQ.Event ev = controls.removeFirst();
+				last = ev.time;
+				CommonState.setTime(ev.time);
+				if (((ControlEvent) ev.event).execute()) break;
+				continue;
+			}
+
+			// run a window: the partitions process their events before
+			// the lookahead, the next control and the end time
+			long end = Math.min(endtime, saturatedAdd(start, lookahead));
+			long bound = Math.min(ctrl, end * pspan);
+			boolean stop = runWindow(end, bound);
+			for (Partition p : parts)
+				last = Math.max(last, p.last);
+			CommonState.setTime(last);
+			if (stop) break;
+		}
+	} finally {
+		CommonState.endThreaded();
+	}
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Runs all partitions up to the given key and delivers the messages sent
+ * between partitions.
+ * @return true if a control stopped the simulation
+ */
+private boolean runWindow(long end, long bound)
+{
+	for (Partition p : parts) {
+		p.windowEnd = end;
+		p.bound = bound;
+	}
+	boolean stop = false;
+	if (pool == null) {
+		stop = parts[0].call();
+	} else {
+		List<Future<Boolean>> results;
+		try {
+			results = pool.invokeAll(Arrays.asList(parts));
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		for (Future<Boolean> f : results) {
+			try {
+				stop |= f.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				Throwable t = e.getCause();
+				if (t instanceof RuntimeException) throw (RuntimeException) t;
+				if (t instanceof Error) throw (Error) t;
+				throw new RuntimeException(t);
+			}
+		}
+	}
+	// deliver in partition order, so that the result is deterministic
+	for (Partition p : parts) {
+		for (Message m : p.outbox)
+			m.dest.queue.add(m.time, m.event, m.node, m.pid, m.priority);
+		p.outbox.clear();
+	}
+	return stop;
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Shuts down the worker threads.
+ */
+void shutdown()
+{
+	if (pool != null) pool.shutdown();
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Returns a+b, or Long.MAX_VALUE if the sum overflows.
+ */
+private static long saturatedAdd(long a, long b)
+{
+	return (a > Long.MAX_VALUE-b ? Long.MAX_VALUE : a+b);
+}
+
+//---------------------------------------------------------------------
+//Inner classes
+//---------------------------------------------------------------------
+
+/**
+ * A partition of the nodes, with its own event queue. It is also the
+ * {@link CommonState} state of the worker thread that runs it.
+ */
+private static final class Partition extends CommonState.ThreadState
+	implements Callable<Boolean>
+{
+	final KeyedPriorityQ queue;
+	/** True if the progress is logged by this partition */
+	final boolean log;
+	/** Messages to other partitions sent in the current window */
+	final ArrayList<Message> outbox = new ArrayList<Message>();
+	/** The end of the current window */
+	long windowEnd;
+	/** Only the events with a smaller key are run in the current window */
+	long bound;
+	/** Time of the last event run */
+	long last;
+
+	Partition(KeyedPriorityQ queue, ExtendedRandom r, boolean log)
+	{
+		super(CommonState.getTime(), r);
+		this.queue = queue;
+		this.log = log;
+	}
+
+	/**
+	 * Runs the events of the current window.
+	 * @return true if a control stopped the simulation
+	 */
+	public Boolean call()
+	{
+		CommonState.attach(this);
+		try {
+			while (queue.firstKey() < bound) {
+				PriorityQ.Event ev = queue.removeFirst();
+				last = ev.time;
+				if (log) EDSimulator.log(ev.time);
+				if (EDSimulator.deliver(ev)) return true;
+			}
+			return false;
+		} finally {
+			CommonState.detach();
+		}
+	}
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * An event sent to another partition, waiting for the end of the window.
+ */
+private static final class Message
+{
+	final long time;
+	final long priority;
+	final Object event;
+	final Node node;
+	final byte pid;
+	final Partition dest;
+
+	Message(long time, long priority, Object event, Node node, byte pid,
+		Partition dest)
+	{
+		this.time = time;
+		this.priority = priority;
+		this.event = event;
+		this.node = node;
+		this.pid = pid;
+		this.dest = dest;
+	}
+}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+/**
+ * Class AbstractCodec
+ * Base class of the {@link CompressionCodec}s. It computes the Euclidean norm
+ * once per vector, hands it to {@link #encode}, and keeps the size and error
+ * statistics.
+ */
+public abstract class AbstractCodec implements CompressionCodec
+{
+	/** Size of the norm or scale sent along with every message, in bytes */
+	protected static final int HEADER_BYTES = 4;
+
+	private long messages = 0;
+	private long compressedBytes = 0;
+	private long denseBytes = 0;
+	private double totalError = 0.0;
+
+	/**
+	 * Compresses the vector, given its Euclidean norm.
+	 * @return the vector reconstructed by the receiver
+	 */
+	protected abstract double[] encode(double[] vec, double norm);
+
+	/**
+	 * Returns the size in bytes of the message that {@link #encode} produced
+	 * for a vector of the given dimension.
+	 */
+	protected abstract long encodedBytes(int dim);
+
+	public double[] compress(double[] vec)
+	{
+		double norm = 0.0;
+		for (int i = 0; i < vec.length; i++)
+			norm += vec[i] * vec[i];
+		norm = Math.sqrt(norm);
+		double[] out = encode(vec, norm);
+		double err = 0.0;
+		for (int i = 0; i < vec.length; i++)
+		{
+			double d = vec[i] - out[i];
+			err += d * d;
+		}
+		messages++;
+		compressedBytes += encodedBytes(vec.length);
+		denseBytes += SparseDelta.denseSizeInBytes(vec.length);
+		totalError += (norm > 0) ? Math.sqrt(err) / norm : 0.0;
+		return out;
+	}
+
+	public long getMessages()
+	{
+		return messages;
+	}
+
+	public long getCompressedBytes()
+	{
+		return compressedBytes;
+	}
+
+	public long getDenseBytes()
+	{
+		return denseBytes;
+	}
+
+	public double getTotalError()
+	{
+		return totalError;
+	}
+
+	public Object clone()
+	{
+		AbstractCodec c = null;
+		try { c = (AbstractCodec)super.clone(); }
+		catch( CloneNotSupportedException e ) {} // never happens
+		c.messages = 0;
+		c.compressedBytes = 0;
+		c.denseBytes = 0;
+		c.totalError = 0.0;
+		return c;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+package peersim.gossip;
+
+import peersim.core.*;
+
+/**
+ * Class CommunicationObserver
+ * Implements {@link Control} interface. Reports the communication volume of the
+ * weight exchange, summed over all the {@link PegasosNode}s and
+ * {@link PegasosNodeCompression}s: the number of
+ * messages and bytes sent since the previous run of the observer, the total
+ * bytes sent so far and the total bytes a dense exchange would have sent.
+ * Each line is printed as
+ * <pre>name: cycle messages round_bytes total_bytes dense_total_bytes</pre>
+ */
+public class CommunicationObserver implements Control {
+
+//--------------------------------------------------------------------------
+// Fields
+//--------------------------------------------------------------------------
+
+/** The name of this object in the configuration file */
+private final String name;
+
+/** Totals at the previous run, to compute the per round figures */
+private long lastBytes = 0;
+private long lastMessages = 0;
+
+
+//--------------------------------------------------------------------------
+// Constructor
+//--------------------------------------------------------------------------
+
+/**
+ * Creates a new observer.
+ */
+public CommunicationObserver(String name) {
+	this.name = name;
+}
+
+
+//--------------------------------------------------------------------------
+// Methods
+//--------------------------------------------------------------------------
+
+// Comment inherited from interface
+public boolean execute() {
+	long bytes = 0;
+	long denseBytes = 0;
+	long messages = 0;
+	for (int i = 0; i < Network.size(); i++)
+	{
+		Node node = Network.get(i);
+		DeltaExchange exchange = null;
+		if (node instanceof PegasosNode)
+			exchange = ((PegasosNode)node).exchange;
+		else if (node instanceof PegasosNodeCompression)
+			exchange = ((PegasosNodeCompression)node).exchange;
+		if (exchange == null) continue;
+		bytes += exchange.bytesSent;
+		denseBytes += exchange.denseBytesSent;
+		messages += exchange.messagesSent;
+	}
+	System.out.println(name + ": " + CommonState.getTime() + " " + (messages - lastMessages)
+			+ " " + (bytes - lastBytes) + " " + bytes + " " + denseBytes);
+	lastBytes = bytes;
+	lastMessages = messages;
+	return false;
+}
+
+//--------------------------------------------------------------------------
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+/**
+ * Interface CompressionCodec
+ * A lossy codec applied to a weight vector before it is handed over to a peer
+ * in {@link GadgetComprProtocol}. Every protocol instance owns its own codec
+ * (the prototype is cloned with the protocol), so codecs may keep per node
+ * state such as an error feedback residual.
+ * <p>
+ * The codec is selected in the configuration with
+ * <pre>protocol.&lt;name&gt;.codec &lt;class&gt;</pre>
+ * and its own parameters are read under that same prefix. Besides the
+ * compressed vector, a codec keeps running totals of what it has sent, which
+ * {@link CompressionObserver} turns into per round figures.
+ */
+public interface CompressionCodec extends Cloneable
+{
+	/**
+	 * Compresses the given vector and returns the vector the receiver
+	 * reconstructs from the compressed message. The argument is not modified.
+	 */
+	public double[] compress(double[] vec);
+
+	/** Returns the number of vectors compressed so far. */
+	public long getMessages();
+
+	/** Returns the total size in bytes of the compressed messages so far. */
+	public long getCompressedBytes();
+
+	/** Returns the total size in bytes the same vectors take uncompressed. */
+	public long getDenseBytes();
+
+	/**
+	 * Returns the sum, over all the vectors compressed so far, of the relative
+	 * compression error <code>||v - C(v)|| / ||v||</code>.
+	 */
+	public double getTotalError();
+
+	/** Returns a copy of this codec with its own state. */
+	public Object clone();
+}
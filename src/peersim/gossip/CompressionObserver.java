@@ -0,0 +1,109 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+import peersim.config.Configuration;
+import peersim.core.*;
+
+/**
+ * Class CompressionObserver
+ * Implements {@link Control} interface. Reports the effect of the weight
+ * compression of {@link GadgetComprProtocol}, summed over all the nodes: the
+ * number of compressed vectors and their size in bytes since the previous run
+ * of the observer, the mean relative compression error of those vectors, the
+ * total compressed bytes so far and the total bytes the uncompressed vectors
+ * would have taken. Each line is printed as
+ * <pre>name: cycle messages round_bytes round_error total_bytes dense_total_bytes</pre>
+ */
+public class CompressionObserver implements Control {
+
+//--------------------------------------------------------------------------
+// Parameters
+//--------------------------------------------------------------------------
+
+/**
+ * The protocol to observe.
+ * @config
+ */
+private static final String PAR_PROT = "protocol";
+
+//--------------------------------------------------------------------------
+// Fields
+//--------------------------------------------------------------------------
+
+/** The name of this object in the configuration file */
+private final String name;
+
+/** Protocol identifier */
+private final int pid;
+
+/** Totals at the previous run, to compute the per round figures */
+private long lastBytes = 0;
+private long lastMessages = 0;
+private double lastError = 0.0;
+
+
+//--------------------------------------------------------------------------
+// Constructor
+//--------------------------------------------------------------------------
+
+/**
+ * Creates a new observer reading the protocol id from the configuration.
+ */
+public CompressionObserver(String name) {
+	this.name = name;
+	pid = Configuration.getPid(name + "." + PAR_PROT);
+}
+
+
+//--------------------------------------------------------------------------
+// Methods
+//--------------------------------------------------------------------------
+
+// Comment inherited from interface
+public boolean execute() {
+	long bytes = 0;
+	long denseBytes = 0;
+	long messages = 0;
+	double error = 0.0;
+	for (int i = 0; i < Network.size(); i++)
+	{
+		Protocol p = Network.get(i).getProtocol(pid);
+		if (!(p instanceof GadgetComprProtocol)) continue;
+		CompressionCodec codec = ((GadgetComprProtocol)p).getCodec();
+		bytes += codec.getCompressedBytes();
+		denseBytes += codec.getDenseBytes();
+		messages += codec.getMessages();
+		error += codec.getTotalError();
+	}
+	long roundMessages = messages - lastMessages;
+	double roundError = (roundMessages > 0) ? (error - lastError) / roundMessages : 0.0;
+	System.out.println(name + ": " + CommonState.getTime() + " " + roundMessages
+			+ " " + (bytes - lastBytes) + " " + roundError + " " + bytes + " " + denseBytes);
+	lastBytes = bytes;
+	lastMessages = messages;
+	lastError = error;
+	return false;
+}
+
+//--------------------------------------------------------------------------
+
+}
@@ -0,0 +1,121 @@
+package peersim.gossip;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class DeltaExchange
+ * Per-node state of the delta encoded pushsum exchange. For every peer the node
+ * remembers the last vector it sent to it and the last vector it received from
+ * it, so only changed coordinates need to travel: the receiver applies a
+ * {@link SparseDelta} to its copy of the sender's vector. The first message to
+ * a peer is encoded against the zero vector, i.e. it carries the non-zeros.
+ * Deltas between two nodes must be decoded in the order they were encoded, so
+ * the exchange is meant for the synchronous pushsum of the cycle driven
+ * protocols, not for a transport that may reorder messages.
+ * <p>
+ * The two copies cost <code>2 * 8 * d</code> bytes for every peer the node has
+ * exchanged with, where <code>d</code> is the length of the vector, i.e.
+ * O(degree * d) memory per node. Nothing is evicted: with a static overlay of
+ * small degree this stays a few vectors per node, but with a dynamic overlay
+ * the maps grow with the number of distinct peers met.
+ * <p>
+ * The node also owns the array its averaged weights are written into, so
+ * gossiping does not allocate a new vector every time and two nodes never share
+ * the same array.
+ */
+public class DeltaExchange
+{
+	/** Last vector sent to each peer, keyed by peer ID */
+	private final Map<Long, double[]> sent = new HashMap<Long, double[]>();
+	/** Copy of the last vector received from each peer, keyed by peer ID */
+	private final Map<Long, double[]> received = new HashMap<Long, double[]>();
+	/** Array holding the averaged weights of this node */
+	private double[] own = null;
+	/** Scratch buffers for encoding */
+	private int[] idxBuf = new int[0];
+	private double[] valBuf = new double[0];
+
+	/** Total bytes sent by this node */
+	public long bytesSent = 0;
+	/** Total bytes a dense exchange would have sent */
+	public long denseBytesSent = 0;
+	/** Total number of messages sent by this node */
+	public long messagesSent = 0;
+
+	/**
+	 * Encodes the coordinates of the vector that differ from what was last sent
+	 * to the given peer, and records the vector as sent.
+	 */
+	public SparseDelta encode(long peerID, double[] vector)
+	{
+		double[] last = sent.get(peerID);
+		if (last == null || last.length != vector.length)
+		{
+			last = new double[vector.length];
+			sent.put(peerID, last);
+		}
+		if (idxBuf.length < vector.length)
+		{
+			idxBuf = new int[vector.length];
+			valBuf = new double[vector.length];
+		}
+		int n = 0;
+		for (int i = 0; i < vector.length; i++)
+		{
+			// compare the bits, so that -0.0 and NaN are transmitted faithfully
+			if (Double.doubleToLongBits(vector[i]) != Double.doubleToLongBits(last[i]))
+			{
+				idxBuf[n] = i;
+				valBuf[n] = vector[i];
+				n++;
+				last[i] = vector[i];
+			}
+		}
+		int[] indices = new int[n];
+		double[] values = new double[n];
+		System.arraycopy(idxBuf, 0, indices, 0, n);
+		System.arraycopy(valBuf, 0, values, 0, n);
+		SparseDelta delta = new SparseDelta(indices, values);
+		// when most coordinates changed the sender would rather send the dense vector
+		long dense = SparseDelta.denseSizeInBytes(vector.length);
+		bytesSent += Math.min(delta.sizeInBytes(), dense);
+		denseBytesSent += dense;
+		messagesSent++;
+		return delta;
+	}
+
+	/**
+	 * Applies a message received from the given peer to the local copy of its
+	 * vector and returns that copy. The copy must not be modified by the caller.
+	 */
+	public double[] decode(long peerID, SparseDelta delta, int dimension)
+	{
+		double[] copy = received.get(peerID);
+		if (copy == null || copy.length != dimension)
+		{
+			copy = new double[dimension];
+			received.put(peerID, copy);
+		}
+		for (int k = 0; k < delta.indices.length; k++)
+		{
+			copy[delta.indices[k]] = delta.values[k];
+		}
+		return copy;
+	}
+
+	/**
+	 * Writes the average of the two vectors into the array owned by this node
+	 * and returns it. mine may be that array itself.
+	 */
+	public double[] average(double[] mine, double[] other)
+	{
+		if (own == null || own.length != mine.length)
+			own = new double[mine.length];
+		for (int i = 0; i < mine.length; i++)
+		{
+			own[i] = (mine[i] + other[i])/2.0;
+		}
+		return own;
+	}
+}
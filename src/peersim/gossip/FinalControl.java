@@ -77,9 +77,17 @@ public FinalControl(String name) {
 //--------------------------------------------------------------------------
 
 // Comment inherited from interface
-// Do nothing, just for test
+// Writes the final weight snapshot of every node and waits until the
+// metrics of the run are on disk
 public boolean execute() {
 	System.out.println("Running final control");
+	for (int n = 0; n < Network.size(); n++)
+	{
+		Node node = Network.get(n);
+		if (node instanceof PegasosNode && ((PegasosNode)node).wtvector != null)
+			((PegasosNode)node).writeGlobalWeights();
+	}
+	MetricsSink.closeAll();
 
 //	final int len = Network.size();
 //	for (int i = 0; i <  len; i++) 
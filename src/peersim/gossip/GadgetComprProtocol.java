@@ -52,6 +52,13 @@ public class GadgetComprProtocol implements CDProtocol
 	 * @config
 	 */
 	private static final String PAR_ITERATION = "iter";
+	/**
+	 * Class of the {@link CompressionCodec} applied to the averaged weights,
+	 * defaults to {@link StochasticCodec}. The codec reads its own parameters
+	 * under this prefix.
+	 * @config
+	 */
+	private static final String PAR_CODEC = "codec";
 	
 	public static boolean flag = false;
 	
@@ -89,8 +96,25 @@ public class GadgetComprProtocol implements CDProtocol
 	private int max_iter;
 	private int exam_per_iter;
 	private double[] weights;
+	/** Compression codec of this node */
+	protected CompressionCodec codec;
 	
 
+	/**
+	 * Restores the static state shared by all the instances (iteration counter,
+	 * convergence flags, optimal weights), so that the next simulation run in
+	 * the same JVM starts from scratch. See {@link peersim.Simulator#runInProcess}.
+	 */
+	public static void resetStatic()
+	{
+		flag = false;
+		t = 0;
+		optimizationDone = false;
+		optimalB = null;
+		end = 0;
+		pushsumobserverflag = false;
+	}
+
 	/**
 	 * Default constructor for configurable objects.
 	 */
@@ -101,6 +125,10 @@ public class GadgetComprProtocol implements CDProtocol
 		//T = 0;
 		lid = FastConfig.getLinkable(CommonState.getPid());
 		protocol = Configuration.getString(prefix + "." + "prot", "pushsum1");
+		if (Configuration.contains(prefix + "." + PAR_CODEC))
+			codec = (CompressionCodec)Configuration.getInstance(prefix + "." + PAR_CODEC);
+		else
+			codec = new StochasticCodec(prefix + "." + PAR_CODEC);
 		//protocolASG = Configuration.getString(prefix + "." + "prot1", "pushSV");
 		
 	}
@@ -136,6 +164,7 @@ public class GadgetComprProtocol implements CDProtocol
 		GadgetComprProtocol gp = null;
 		try { gp = (GadgetComprProtocol)super.clone(); }
 		catch( CloneNotSupportedException e ) {} // never happens
+		gp.codec = (CompressionCodec)codec.clone();
 		return gp;
 	}
 	
@@ -234,22 +263,18 @@ public class GadgetComprProtocol implements CDProtocol
 		return wght;
 	}
 	
+	/**
+	 * Compresses the weight vector with the codec of this node.
+	 */
 	public double[] wtCompression(double[] wtVectr)
 	{
-		double[] comp = new double[wtVectr.length];
-		//double nm=0.0;
-		//Set the number of bits
-		int numBits=3;
-		double u = 0;
-		for(int p=0;p<wtVectr.length;p++)
-		{
-		//Choose a random number
-		u=Math.random();	
-		comp[p]=findWtNorm(wtVectr) * signArr(wtVectr[p]) * 
-				Math.pow(2, -(numBits-1)) * (Math.pow(2, -(numBits-1)) * 
-						Math.ceil(Math.abs(wtVectr[p])/findWtNorm(wtVectr)) + u);
-		}
-		return comp;
+		return codec.compress(wtVectr);
+	}
+	
+	/** Returns the compression codec of this node. */
+	public CompressionCodec getCodec()
+	{
+		return codec;
 	}
 	
 	private void pushsum1(Node node, PegasosNodeCompression pn, int pid) 
@@ -259,15 +284,26 @@ public class GadgetComprProtocol implements CDProtocol
 	    // Function to average two weight vectors
 	    System.out.println(pn.wtvector.length + " " + peer.wtvector.length);
 	    
+	    // Each side only sends the coordinates that changed since its last exchange
+	    // with the other one, and rebuilds the other's vector from its local copy
+	    SparseDelta toPeer = pn.exchange.encode(peer.getID(), pn.wtvector);
+	    SparseDelta toPn = peer.exchange.encode(pn.getID(), peer.wtvector);
+	    double[] pnView = peer.exchange.decode(pn.getID(), toPeer, pn.wtvector.length);
+	    double[] peerView = pn.exchange.decode(peer.getID(), toPn, peer.wtvector.length);
+	    
 	    double[] newWeights;
+	    double[] peerWeights;
 	    	
     	newWeights = new double[pn.wtvector.length];
+    	peerWeights = new double[peer.wtvector.length];
     	for(int i=0; i<pn.wtvector.length;i++) 
     	{
-    		newWeights[i] = (pn.wtvector[i] + peer.wtvector[i])/2.0;
+    		newWeights[i] = (pn.wtvector[i] + peerView[i])/2.0;
+    		peerWeights[i] = (peer.wtvector[i] + pnView[i])/2.0;
     	}
     	//Perform the compression
-    	peer.wtvector = wtCompression(newWeights);
+    	GadgetComprProtocol peerProt = (GadgetComprProtocol)peer.getProtocol(pid);
+    	peer.wtvector = peerProt.wtCompression(peerWeights);
     	pn.wtvector = wtCompression(newWeights);
 		// Save weight vectors in both pn and peer into their respective files.
 		//String pn_modelfilename = pn.getResourcePath() + "/" + "m_" + pn.getID() + ".dat";
@@ -344,6 +380,9 @@ public class GadgetComprProtocol implements CDProtocol
 			pn.pegasosClassifier.m_t = iter+1;
 			//Train with momentum accelerated stochastic gradient
 			pn.pegasosClassifier.train(pn.trainData);
+			// The classifier keeps its scale implicitly, fold it back into its
+			// array in case pn.wtvector still refers to it
+			pn.pegasosClassifier.getWeights();
 			//pn.pegasosClassifier.trainMom(pn.trainData);
 			//pn.pegasosClassifier.trainNAG(pn.trainData);
 			//.trainMom(pn.trainData);
@@ -0,0 +1,286 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+import peersim.config.Configuration;
+import peersim.config.FastConfig;
+import peersim.core.*;
+import peersim.edsim.EDProtocol;
+import peersim.edsim.EDSimulator;
+import peersim.transport.Transport;
+
+/**
+ * Class GadgetEDProtocol
+ * Implements an event driven {@link EDProtocol} version of GADGET, to be run by
+ * {@link EDSimulator}. There is no global cycle: every node runs its own loop
+ * of local training steps, and a step takes the simulated time given by the
+ * compute-time model of the node. After each step the node pushes a copy of
+ * its weights to a random neighbour through the configured {@link Transport};
+ * the neighbour answers with its own weights and both average. Fast nodes
+ * therefore keep training and gossiping at their own pace instead of waiting
+ * for the slowest node of the cycle.
+ * <p>
+ * The compute time of a step is <code>computetime * f * (1 + jitter * u)</code>
+ * where <code>f</code> is the slowdown of the node, drawn once uniformly in
+ * [1, slowdown], and <code>u</code> is uniform in [-1, 1] for every step.
+ * The first step of every node is scheduled by {@link GadgetEDScheduler}.
+ * <p>
+ * Statistics are appended to <code>run&lt;n&gt;/node_ed_&lt;id&gt;.csv</code>
+ * with the same columns as {@link GadgetProtocol}, followed by the simulated
+ * time of the step.
+ */
+public class GadgetEDProtocol implements EDProtocol
+{
+	/**
+	 * Number of local training steps of every node, defaults to 100.
+	 * @config
+	 */
+	private static final String PAR_ITERATION = "iter";
+	/**
+	 * Simulated time of one training step of the fastest node, defaults to 100.
+	 * @config
+	 */
+	private static final String PAR_COMPUTE = "computetime";
+	/**
+	 * Largest slowdown factor of a node, defaults to 1 (all nodes equally fast).
+	 * @config
+	 */
+	private static final String PAR_SLOWDOWN = "slowdown";
+	/**
+	 * Relative variation of the time of a single step, defaults to 0.
+	 * @config
+	 */
+	private static final String PAR_JITTER = "jitter";
+	/**
+	 * The test accuracy is computed every this many steps, defaults to 5.
+	 * @config
+	 */
+	private static final String PAR_EVAL = "eval";
+
+	/** The event that starts a local training step */
+	public static final Object TRAIN = new Object();
+
+	/** Linkable identifier */
+	protected final int lid;
+	/** Transport identifier */
+	protected final int tid;
+	/** Number of local steps */
+	protected final int T;
+	protected final long computeTime;
+	protected final double maxSlowdown;
+	protected final double jitter;
+	protected final int evalEvery;
+
+	/** Slowdown factor of this node */
+	private double slowdown = 1.0;
+	/** Number of steps done by this node */
+	private int steps = 0;
+
+	/**
+	 * Default constructor for configurable objects.
+	 */
+	public GadgetEDProtocol(String prefix)
+	{
+		int pid = CommonState.getPid();
+		lid = FastConfig.getLinkable(pid);
+		tid = FastConfig.getTransport(pid);
+		T = Configuration.getInt(prefix + "." + PAR_ITERATION, 100);
+		computeTime = Configuration.getLong(prefix + "." + PAR_COMPUTE, 100);
+		maxSlowdown = Configuration.getDouble(prefix + "." + PAR_SLOWDOWN, 1.0);
+		jitter = Configuration.getDouble(prefix + "." + PAR_JITTER, 0.0);
+		evalEvery = Configuration.getInt(prefix + "." + PAR_EVAL, 5);
+	}
+
+	/**
+	 * Clone an existing instance. The clone is considered 
+	 * new, so it has done no step yet.
+	 */
+	public Object clone()
+	{
+		GadgetEDProtocol gp = null;
+		try { gp = (GadgetEDProtocol)super.clone(); }
+		catch( CloneNotSupportedException e ) {} // never happens
+		gp.steps = 0;
+		return gp;
+	}
+
+	/**
+	 * Draws the slowdown factor of this node. Called by
+	 * {@link GadgetEDScheduler} before the first step is scheduled.
+	 */
+	public void initSpeed()
+	{
+		slowdown = 1.0 + (maxSlowdown - 1.0) * CommonState.r.nextDouble();
+	}
+
+	/** Returns the slowdown factor of this node. */
+	public double getSlowdown()
+	{
+		return slowdown;
+	}
+
+	/** Returns the number of local steps done by this node. */
+	public int getSteps()
+	{
+		return steps;
+	}
+
+	/** Returns the simulated duration of the next training step. */
+	protected long nextComputeTime()
+	{
+		double u = 2.0 * CommonState.r.nextDouble() - 1.0;
+		return Math.max(1, Math.round(computeTime * slowdown * (1.0 + jitter * u)));
+	}
+
+	// Comment inherited from interface
+	public void processEvent(Node node, int pid, Object event)
+	{
+		PegasosNode pn = (PegasosNode)node;
+		if (event == TRAIN)
+		{
+			localStep(pn, pid);
+			if (steps < T)
+				EDSimulator.add(nextComputeTime(), TRAIN, node, pid);
+			else
+				pn.writeGlobalWeights();
+		}
+		else if (event instanceof WeightMessage)
+		{
+			WeightMessage msg = (WeightMessage)event;
+			if (!msg.reply && msg.sender.isUp())
+			{
+				// Answer with the weights as they were before averaging
+				double[] mine = pn.asgSVM.getWeights().clone();
+				((Transport)node.getProtocol(tid)).send(node, msg.sender,
+						new WeightMessage(node, mine, true), pid);
+			}
+			average(pn, msg.weights);
+		}
+	}
+
+	/**
+	 * Runs one training step on the local data, evaluates the model every
+	 * few steps and pushes the weights to a random neighbour.
+	 */
+	protected void localStep(PegasosNode pn, int pid)
+	{
+		long stASGTime = System.nanoTime();
+		try
+		{
+			if(pn.getBatchSize()>0)
+			{
+				pn.asgSVM.trainMiniBatch(pn.updatedTrainData);
+			}
+			else
+			{
+				pn.asgSVM.m_t=steps+1;
+				pn.asgSVM.train(pn.updatedTrainData);
+			}
+			pn.wtvector=pn.asgSVM.getWeights();
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			return;
+		}
+		finally
+		{
+			steps++;
+		}
+		pn.asgTrainTime += System.nanoTime() - stASGTime;
+		if(pn.asgSVM.num_converge_iters==GadgetProtocol.CONVERGENCE_COUNT) 
+		{
+			pn.converged=1;
+		}
+
+		if (steps % evalEvery == 0)
+		{
+			try
+			{
+				if (pn.testStore != null)
+					pn.accuracy = pn.testStore.accuracy(pn.asgSVM, pn.getEvalThreads());
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+		}
+		writeStats(pn);
+		if (pn.isSnapshotIteration(steps))
+			pn.writeGlobalWeights();
+
+		Node peer = selectNeighbor(pn);
+		if (peer != null && peer.isUp())
+		{
+			((Transport)pn.getProtocol(tid)).send(pn, peer,
+					new WeightMessage(pn, pn.wtvector.clone(), false), pid);
+		}
+	}
+
+	/**
+	 * Averages the weights of the node with the received ones, in place.
+	 */
+	protected void average(PegasosNode pn, double[] other)
+	{
+		double[] w = pn.asgSVM.getWeights();
+		int n = Math.min(w.length, other.length);
+		for (int i = 0; i < n; i++)
+		{
+			w[i] = (w[i] + other[i]) / 2.0;
+		}
+		pn.asgSVM.setWeights(w);
+		pn.wtvector = w;
+	}
+
+	/**
+	 * Appends the statistics of the last step to the file of the node.
+	 */
+	protected void writeStats(PegasosNode pn)
+	{
+		double trainTimeInDouble = pn.asgTrainTime/1e9;
+		double readInitTimeInDouble = (double)pn.readInitTime/1e9;
+		String csv_filename = "node_ed_" + pn.getID() + ".csv";
+		String opString = pn.getID() + "," + steps + "," + pn.asgSVM.m_obj_value + ","+pn.asgSVM.m_loss_value;
+		opString +=  ","+pn.asgSVM.wt_norm + ","+pn.asgSVM.m_obj_value_diff;
+		opString += "," + pn.converged + "," + pn.asgSVM.num_converge_iters + "," + pn.accuracy + ","+ (1.0 - pn.accuracy); 
+		opString += ","+ trainTimeInDouble + "," + readInitTimeInDouble + "," + CommonState.getTime() + "\n"; 
+		if (steps == 1)
+		{
+			pn.getMetricsSink().create(csv_filename, "node,iter,obj_value,loss_value,wt_norm,obj_value_difference,converged,"
+					+ "num_converge_iters,accuracy,zero_one_error,train_time,read_init_time,time\n");
+		}
+		pn.getMetricsSink().append(csv_filename, opString);
+	}
+
+	/**
+	 * Selects a random neighbor from those stored in the {@link Linkable} protocol
+	 * used by this protocol.
+	 */
+	protected Node selectNeighbor(Node node)
+	{
+		Linkable linkable = (Linkable) node.getProtocol(lid);
+		if (linkable.degree() > 0) 
+			return linkable.getNeighbor(
+					CommonState.r.nextInt(linkable.degree()));
+		else
+			return null;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+import peersim.config.Configuration;
+import peersim.core.*;
+import peersim.dynamics.NodeInitializer;
+import peersim.edsim.EDSimulator;
+
+/**
+ * Class GadgetEDScheduler
+ * Starts {@link GadgetEDProtocol} on every node: draws the slowdown factor of
+ * the node and schedules its first training step. It can be used both as an
+ * initializer and as a {@link NodeInitializer} for nodes added later.
+ * <p>
+ * If {@value #PAR_RNDSTART} is set, the first step of each node is scheduled at
+ * a random time in [0, computetime), otherwise all nodes start at once.
+ */
+public class GadgetEDScheduler implements Control, NodeInitializer {
+
+//--------------------------------------------------------------------------
+// Parameters
+//--------------------------------------------------------------------------
+
+/**
+ * The {@link GadgetEDProtocol} to start.
+ * @config
+ */
+private static final String PAR_PROT = "protocol";
+
+/**
+ * If set, the first steps of the nodes are spread over one compute time.
+ * @config
+ */
+private static final String PAR_RNDSTART = "randstart";
+
+//--------------------------------------------------------------------------
+// Fields
+//--------------------------------------------------------------------------
+
+/** Protocol identifier */
+private final int pid;
+
+private final boolean randstart;
+
+
+//--------------------------------------------------------------------------
+// Constructor
+//--------------------------------------------------------------------------
+
+public GadgetEDScheduler(String prefix) {
+	pid = Configuration.getPid(prefix + "." + PAR_PROT);
+	randstart = Configuration.contains(prefix + "." + PAR_RNDSTART);
+}
+
+
+//--------------------------------------------------------------------------
+// Methods
+//--------------------------------------------------------------------------
+
+// Comment inherited from interface
+public boolean execute() {
+	for (int i = 0; i < Network.size(); i++)
+	{
+		initialize(Network.get(i));
+	}
+	return false;
+}
+
+// Comment inherited from interface
+public void initialize(Node n) {
+	GadgetEDProtocol prot = (GadgetEDProtocol)n.getProtocol(pid);
+	prot.initSpeed();
+	long delay = randstart ? CommonState.r.nextLong(prot.computeTime) : 0;
+	EDSimulator.add(delay, GadgetEDProtocol.TRAIN, n, pid);
+}
+
+//--------------------------------------------------------------------------
+
+}
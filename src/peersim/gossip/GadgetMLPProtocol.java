@@ -92,6 +92,21 @@ public class GadgetMLPProtocol implements CDProtocol
 	private double[] weights;
 	
 
+	/**
+	 * Restores the static state shared by all the instances (iteration counter,
+	 * convergence flags, optimal weights), so that the next simulation run in
+	 * the same JVM starts from scratch. See {@link peersim.Simulator#runInProcess}.
+	 */
+	public static void resetStatic()
+	{
+		flag = false;
+		t = 0;
+		optimizationDone = false;
+		optimalB = null;
+		end = 0;
+		pushsumobserverflag = false;
+	}
+
 	/**
 	 * Default constructor for configurable objects.
 	 */
@@ -67,7 +67,7 @@ import java.io.BufferedReader;
  */
 
 
-public class GadgetProtocol implements CDProtocol {
+public class GadgetProtocol implements ParallelCDProtocol {
 	/**
 	 * New config option to get the learning parameter lambda for GADGET
 	 * @config
@@ -116,6 +116,30 @@ public class GadgetProtocol implements CDProtocol {
 	private int exam_per_iter;
 	private double[] weights;
 	
+	/** Set by {@link #localCycle} when training failed, so the gossip is skipped */
+	private boolean trainFailed = false;
+	/**
+	 * Console output of the last {@link #localCycle}, printed by
+	 * {@link #gossipCycle} so that it comes out in the visiting order of the
+	 * nodes even when the local phases run in parallel.
+	 */
+	private StringBuilder localOutput = new StringBuilder();
+	
+
+	/**
+	 * Restores the static state shared by all the instances (iteration counter,
+	 * convergence flags, optimal weights), so that the next simulation run in
+	 * the same JVM starts from scratch. See {@link peersim.Simulator#runInProcess}.
+	 */
+	public static void resetStatic()
+	{
+		flag = false;
+		t = 0;
+		optimizationDone = false;
+		optimalB = null;
+		end = 0;
+		pushsumobserverflag = false;
+	}
 
 	/**
 	 * Default constructor for configurable objects.
@@ -162,6 +186,7 @@ public class GadgetProtocol implements CDProtocol {
 		GadgetProtocol gp = null;
 		try { gp = (GadgetProtocol)super.clone(); }
 		catch( CloneNotSupportedException e ) {} // never happens
+		gp.localOutput = new StringBuilder();
 		return gp;
 	}
 	
@@ -172,41 +197,47 @@ public class GadgetProtocol implements CDProtocol {
 	    
 		File testFolder = new File(testPath);
 	    File[] listOfFiles = testFolder.listFiles();
-	    //int numtestfiles = listOfFiles.length;
 		
 		// We have to use the nio library to get the number of files in the directory
 		//String[] listOfFiles = new File(testPath).list();
 		
 	    int numtestfiles = listOfFiles.length;
 	    
-	    //System.out.println("Num test files: " + numtestfiles);
-        double[] spegasosPred=new double[numtestfiles];
-		 double[] actual=new double[numtestfiles];
-		 double acc=0; 
-		 
+	    // Every file holds one test example, gather them into one dataset
+	    // and score them in a single batch
 		 DataSource testSource;
-		 Instances testingSet;
+		 Instances testingSet = null;
 		 for (int i = 0; i < numtestfiles; i++)
 		 {
 			 String testFilePath = listOfFiles[i].toString();
 			 
 				testSource = new DataSource(testFilePath);
-				testingSet = testSource.getDataSet();
-			 spegasosPred[i]=cModel.classifyInstance(testingSet.instance(0));
-			 actual[i] = testingSet.instance(0).classValue();
-			 if(spegasosPred[i]==actual[i])
-			 {
-				 acc=acc+1;
-			 }
-        //System.out.println("Acc: " + acc);
+				Instances single = testSource.getDataSet();
+				if (testingSet == null)
+				{
+					testingSet = new Instances(single, numtestfiles);
+				}
+				testingSet.add(single.instance(0));
         }
-		 double testAccuracy = acc/(double)numtestfiles;
+		 double testAccuracy = (testingSet == null) ? Double.NaN : getAccuracy2(cModel, testingSet);
 		 System.out.println("Test Accuracy: " + testAccuracy);
 		 return testAccuracy;
 }
 	
-	public double getAccuracy2(Classifier cModel, Instances testingSet) throws Exception {
+	/**
+	 * Returns the accuracy of the model on the given dataset. A linear
+	 * SPegasosGadget is scored in one batch over a CSR copy of the data,
+	 * see {@link PartitionStore#score(double[])}; other models are evaluated
+	 * one instance at a time.
+	 */
+	public static double getAccuracy2(Classifier cModel, Instances testingSet) throws Exception {
 		// Evaluate
+		 if (testingSet.numInstances() > 0 && PartitionStore.isLinear(cModel)
+				 && testingSet.classIndex() >= 0 && testingSet.classAttribute().isNominal()
+				 && testingSet.numClasses() <= Byte.MAX_VALUE)
+		 {
+			 return PartitionStore.fromInstances(testingSet).accuracy(cModel);
+		 }
         double[] spegasosPred=new double[testingSet.numInstances()];
 		 double[] actual=new double[testingSet.numInstances()];
 		 double acc=0; 
@@ -240,14 +271,16 @@ public class GadgetProtocol implements CDProtocol {
 	    // Function to average two weight vectors
 	    System.out.println(pn.wtvector.length + " " + peer.wtvector.length);
 	    
-	    double[] newWeights;
-	    	
-    	newWeights = new double[pn.wtvector.length];
-    	for(int i=0; i<pn.wtvector.length;i++) {
-    		newWeights[i] = (pn.wtvector[i] + peer.wtvector[i])/2.0;
-    	}
-    	peer.wtvector = newWeights;
-    	pn.wtvector = newWeights;
+	    // Each side only sends the coordinates that changed since its last exchange
+	    // with the other one, and rebuilds the other's vector from its local copy
+	    SparseDelta toPeer = pn.exchange.encode(peer.getID(), pn.wtvector);
+	    SparseDelta toPn = peer.exchange.encode(pn.getID(), peer.wtvector);
+	    double[] pnView = peer.exchange.decode(pn.getID(), toPeer, pn.wtvector.length);
+	    double[] peerView = pn.exchange.decode(peer.getID(), toPn, peer.wtvector.length);
+	    
+	    // Both nodes end up with the same average, each in its own array
+	    pn.wtvector = pn.exchange.average(pn.wtvector, peerView);
+	    peer.wtvector = peer.exchange.average(peer.wtvector, pnView);
 		// Save weight vectors in both pn and peer into their respective files.
 		//String pn_modelfilename = pn.getResourcePath() + "/" + "m_" + pn.getID() + ".dat";
 		//String peer_modelfilename = peer.getResourcePath() + "/" + "m_" + peer.getID() + ".dat";
@@ -263,61 +296,15 @@ public class GadgetProtocol implements CDProtocol {
 		PegasosNode peer = (PegasosNode)selectNeighbor(pn, pid);
 	    //System.out.println("ASG SVM Algorithm: Node "+node.getID()+" is gossiping with Node "+peer.getID()+"....");
 	    // Function to send selected Set
+	    // Each support vector is added to the peer's training data only if it is not
+	    // already there; membership is answered by the index of the peer.
 	    for(int h=0;h<pn.supportVecs.numInstances();h++)
 		{
-			boolean notInSet=true;
-			for(int f=0;f<peer.updatedTrainData.numInstances();f++)
-			{	
-//			  if(pn.supportVecs.instance(h).equals(peer.updatedTrainData.instance(f)))
-//			  {
-//				  notInSet=false;
-//			  }
-			  boolean instEqual=true;	
-			  for(int y=0;y<pn.numFeat;y++)
-			  {
-				  if(pn.supportVecs.instance(h).attribute(y)!=peer.updatedTrainData.instance(f).attribute(y))
-				  {
-				   instEqual=false; 
-				  }
-			  }
-			  if(instEqual==true)
-			  {
-				  notInSet=false;
-			  }			  
-			}
-			//If this support vector is not in the set, then add it to the training data
-			if(notInSet==true)
-			{
-			 peer.updatedTrainData.add(pn.supportVecs.instance(h));	
-			}
+			peer.updatedTrainIndex.add(pn.supportVecs.instance(h), pn.numFeat);
 		}
 	    for(int h1=0;h1<peer.supportVecs.numInstances();h1++)
 		{
-			boolean notInSetPeer=true;
-			for(int f1=0;f1<pn.updatedTrainData.numInstances();f1++)
-			{	
-//			  if(peer.supportVecs.instance(h1).equals(pn.updatedTrainData.instance(f1)))
-//			  {
-//				  notInSetPeer=false;
-//			  }
-				  boolean instEqualASG=true;	
-				  for(int y=0;y<pn.numFeat;y++)
-				  {
-					  if(peer.supportVecs.instance(h1).attribute(y)!=pn.updatedTrainData.instance(f1).attribute(y))
-					  {
-					   instEqualASG=false; 
-					  }
-				  }
-				  if(instEqualASG==true)
-				  {
-					  notInSetPeer=false;
-				  }			  		  	
-			}
-			//If this support vector is not in the set, then add it to the training data
-			if(notInSetPeer==true)
-			{
-			 pn.updatedTrainData.add(peer.supportVecs.instance(h1));	
-			}
+			pn.updatedTrainIndex.add(peer.supportVecs.instance(h1), pn.numFeat);
 		}
 }
 	
@@ -342,6 +329,18 @@ public class GadgetProtocol implements CDProtocol {
 	 * once only, i.e. keep simulation.cycles 1
 	 */
 	public void nextCycle(Node node, int pid) 
+	{
+		localCycle(node, pid);
+		gossipCycle(node, pid);
+	}
+
+	/**
+	 * Local part of the cycle: trains the ASG SVM on the node's own data, selects
+	 * the support vectors to send and evaluates the test accuracy. It only touches
+	 * the given node, so {@link ParallelNextCycle} can run it for all the nodes
+	 * at once.
+	 */
+	public void localCycle(Node node, int pid) 
 	{	
 		// Gets the current cycle of Gadget
 		//int iter = CDState.getCycle();	
@@ -493,18 +492,27 @@ public class GadgetProtocol implements CDProtocol {
 		//Reset several parameters of the Pegasos node
 		//including the flag for convergence, the weight vector and so on.
 		pn.converged=0;
-		end=0;
+		trainFailed=false;
 		long stASGTime = System.nanoTime();
 		//pn.weight=0;
 		try
 		{
 			//Train the ASG SVM Classifier
 			
-			pn.asgTrainTime=0.0; 
-			pn.asgSVM.m_t=itrASG+1;
 			//pn.wtvector=null;
 			//Train the model
-			pn.asgSVM.train(pn.updatedTrainData);
+			if(pn.getBatchSize()>0)
+			{
+				// Mini-batch mode keeps its own step counter across cycles
+				pn.asgSVM.trainMiniBatch(pn.updatedTrainData);
+			}
+			else
+			{
+				pn.asgSVM.m_t=itrASG+1;
+				pn.asgSVM.train(pn.updatedTrainData);
+			}
+			// The classifier keeps its scale implicitly, materialise the weights
+			pn.wtvector=pn.asgSVM.getWeights();
 			pn.selectedSetXY=new Instances(pn.trainData,pn.trainData.numInstances());
 			pn.supportVecs=new Instances(pn.trainData,pn.trainData.numInstances());
 			//Now update the support vectors
@@ -527,7 +535,7 @@ public class GadgetProtocol implements CDProtocol {
 					lblOtherInst.add(pn.updatedTrainData.instance(y));
 				}				
 			}
-			System.out.println("Number of instances with label +1 "+lblOne);
+			localOutput.append("Number of instances with label +1 ").append(lblOne).append('\n');
 			
 			Double[] Fx = new Double[lblOne];
 			for(int h=0;h<lblOne; h++)
@@ -560,37 +568,16 @@ public class GadgetProtocol implements CDProtocol {
 		    	pn.selectedSetXY.add(lblOtherInst.instance(indexFy[r]));
 		    }
 		    pn.supportVecs=pn.selectedSetXY;
-		    System.out.println("Number of support vectors "+pn.supportVecs.numInstances());
-		    
-			// Check if the algorithm has converged
-			if(pn.asgSVM.num_converge_iters==CONVERGENCE_COUNT) 
-			{
-				pn.converged=1;
-				end++;
-			}
-			//System.out.println("Obj. value: " + pn.asgSVM.m_obj_value);
-			
-			//Try creating the selected set
-			pushSV(node, pn, pid);
-			
-			// Get norm
-			double normASG = 0;
-			for (int k = 0; k < pn.wtvector.length - 1; k++) 
-			{
-				if (k != pn.updatedTrainData.classIndex()) 
-				{
-					normASG += (pn.wtvector[k] * pn.wtvector[k]);
-				}
-			}
+		    localOutput.append("Number of support vectors ").append(pn.supportVecs.numInstances()).append('\n');
 			//System.out.println("Difference: " + pn.asgSVM.m_obj_value_diff);			   			    			   
 		} 
 	    catch (Exception e) 
 		{
 	   	 e.printStackTrace();
+	   	 trainFailed=true;
 		}
 	
-		long trainTimeASGIter = System.nanoTime() - stASGTime;
-		pn.asgTrainTime += trainTimeASGIter;
+		pn.asgTrainTime = System.nanoTime() - stASGTime;
 		// Get the accuracy of the test set. We don't include the accuracy calculation within
 		// the training time.
 		//pushsum1(node, pn, pid);
@@ -598,13 +585,9 @@ public class GadgetProtocol implements CDProtocol {
 		{
 		try
 		{
-			String testFilePath=pn.getResourcePath() + "/" + "tst_" + pn.getID()+"/" + "tst_" +pn.getID()+".arff";
-			 FileReader rTest = new FileReader(testFilePath);
-			 Instances dataTest = new Instances (rTest);
-			 // Make the last attribute be the class
-			 int classIndex = dataTest.numAttributes()-1;
-			 dataTest.setClassIndex(classIndex); 
-			 pn.accuracy = getAccuracy2(pn.asgSVM,dataTest);
+			// The test partition is loaded once per node, see PartitionStore
+			if (pn.testStore != null)
+				pn.accuracy = pn.testStore.accuracy(pn.asgSVM, pn.getEvalThreads());
 			 //System.out.println("Accuracy from ASG SVM : " + pn.accuracy);
 		} 
 		catch (Exception e1)
@@ -614,6 +597,35 @@ public class GadgetProtocol implements CDProtocol {
 		}
 		
 		}
+	}
+
+	/**
+	 * Communication part of the cycle: checks the convergence, exchanges the
+	 * support vectors with a random neighbour and writes the statistics of the
+	 * node. Must run after {@link #localCycle} on the simulation thread.
+	 */
+	public void gossipCycle(Node node, int pid) 
+	{
+		int itrASG=CDState.getCycle();
+		PegasosNode pn = (PegasosNode)node;
+		System.out.print(localOutput);
+		localOutput.setLength(0);
+		end=0;
+		if(!trainFailed)
+		{
+			long stASGTime = System.nanoTime();
+			// Check if the algorithm has converged
+			if(pn.asgSVM.num_converge_iters==CONVERGENCE_COUNT) 
+			{
+				pn.converged=1;
+				end++;
+			}
+			//System.out.println("Obj. value: " + pn.asgSVM.m_obj_value);
+			
+			//Try creating the selected set
+			pushSV(node, pn, pid);
+			pn.asgTrainTime += System.nanoTime() - stASGTime;
+		}
 		
 		if(pn.converged == 1)
 		{
@@ -623,25 +635,16 @@ public class GadgetProtocol implements CDProtocol {
 		//We will just ignore the read time for now
 		double readInitTimeInDouble = (double)pn.readInitTime/1e9;
 		
-		String csv_filename = resourcepath + "/run" + pn.numRun + "/node_asg_" + pn.getID()  + ".csv";
 		//System.out.println("Storing in " + csv_filename);
 		String opString = pn.getID() + "," + itrASG + "," + pn.asgSVM.m_obj_value + ","+pn.asgSVM.m_loss_value;
 		opString +=  ","+pn.asgSVM.wt_norm + ","+pn.asgSVM.m_obj_value_diff;
 		opString += "," + pn.converged + "," + pn.asgSVM.num_converge_iters + "," + pn.accuracy + ","+ (1.0 - pn.accuracy); 
 		opString += ","+ trainTimeInDouble + "," + readInitTimeInDouble + "\n"; 
 		
-		// Write to file
-		try
-		{
-			BufferedWriter bw = new BufferedWriter(new FileWriter(csv_filename, true));
-			bw.write(opString);
-			bw.close();
-		}
-		catch(Exception e)
-		{
-		 e.printStackTrace();		
-		}	
-		pn.writeGlobalWeights();
+		// Queue the line, the run's sink writes it in the background
+		pn.getMetricsSink().append("node_asg_" + pn.getID() + ".csv", opString);
+		if (pn.isSnapshotIteration(itrASG))
+			pn.writeGlobalWeights();
 	}
 
 	/**
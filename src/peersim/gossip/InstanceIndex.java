@@ -0,0 +1,136 @@
+package peersim.gossip;
+
+import java.util.HashSet;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Class InstanceIndex
+ * Answers "is this support vector already in the training data" without
+ * scanning every row. By default a row is already there when the dataset is
+ * not empty and the row shares the attribute objects of its header, which is
+ * what the original pushSV loop compared; since every node loads its own
+ * header, a support vector of a peer is never a duplicate. With byValue, the
+ * index hashes the rows and two rows are the same when all their non-class
+ * attribute values are equal.
+ * The index does not observe the dataset; rows must be added through
+ * {@link #add(Instance, int)} to keep both in sync.
+ */
+public class InstanceIndex
+{
+	/** The indexed dataset */
+	private final Instances data;
+	/** Keys of all the rows currently in {@link #data}, null unless byValue */
+	private final HashSet<Key> keys;
+
+	/**
+	 * Builds the index over all the rows already present in the dataset.
+	 * @param byValue whether rows are compared by their values instead of
+	 * their header
+	 */
+	public InstanceIndex(Instances data, boolean byValue)
+	{
+		this.data = data;
+		if (!byValue)
+		{
+			this.keys = null;
+			return;
+		}
+		this.keys = new HashSet<Key>(2 * data.numInstances() + 16);
+		for (int i = 0; i < data.numInstances(); i++)
+		{
+			keys.add(new Key(data.instance(i), data.classIndex()));
+		}
+	}
+
+	/**
+	 * Returns true if the instance is already in the dataset.
+	 * @param numFeat number of leading attributes whose header is compared,
+	 * when the rows are not compared by value
+	 */
+	public boolean contains(Instance inst, int numFeat)
+	{
+		if (keys != null)
+			return keys.contains(new Key(inst, data.classIndex()));
+		// All the rows of the dataset have its header
+		if (data.numInstances() == 0)
+			return false;
+		if (inst.dataset() == data)
+			return true;
+		for (int y = 0; y < numFeat; y++)
+		{
+			if (inst.attribute(y) != data.attribute(y))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Appends the instance to the dataset unless it is already there.
+	 * @param numFeat see {@link #contains(Instance, int)}
+	 * @return true if the instance was added
+	 */
+	public boolean add(Instance inst, int numFeat)
+	{
+		if (contains(inst, numFeat))
+			return false;
+		data.add(inst);
+		// Instances.add stores a copy, index that one
+		if (keys != null)
+			keys.add(new Key(data.instance(data.numInstances() - 1), data.classIndex()));
+		return true;
+	}
+
+	/**
+	 * Hash key wrapping an instance. The hash is computed once from the non-zero
+	 * values so that dense and sparse representations of the same row collide.
+	 */
+	private static final class Key
+	{
+		private final Instance inst;
+		private final int classIndex;
+		private final int hash;
+
+		Key(Instance inst, int classIndex)
+		{
+			this.inst = inst;
+			this.classIndex = classIndex;
+			long h = 1;
+			for (int p = 0; p < inst.numValues(); p++)
+			{
+				int idx = inst.index(p);
+				double v = inst.valueSparse(p);
+				if (idx == classIndex || v == 0.0)
+					continue;
+				long bits = Double.doubleToLongBits(v);
+				h = 31 * h + idx;
+				h = 31 * h + (bits ^ (bits >>> 32));
+			}
+			this.hash = (int)(h ^ (h >>> 32));
+		}
+
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key)o;
+			if (other.hash != hash)
+				return false;
+			int n = Math.min(inst.numAttributes(), other.inst.numAttributes());
+			for (int y = 0; y < n; y++)
+			{
+				if (y == classIndex)
+					continue;
+				if (Double.doubleToLongBits(inst.value(y)) != Double.doubleToLongBits(other.inst.value(y)))
+					return false;
+			}
+			return inst.numAttributes() == other.inst.numAttributes();
+		}
+	}
+}
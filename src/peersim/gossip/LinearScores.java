@@ -0,0 +1,130 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+/**
+ * Class LinearScores
+ * The result of scoring a linear model on a {@link PartitionStore}: accuracy,
+ * mean hinge loss and confusion matrix, all computed in the same pass. The
+ * prediction of a row is class 1 if <code>w.x &gt; 0</code> and class 0
+ * otherwise, as in SPegasosGadget, and the hinge loss uses -1 for class 0 and
+ * +1 for any other class. Rows with a missing class count as errors in the
+ * accuracy but are left out of the loss and the confusion matrix.
+ */
+public class LinearScores
+{
+	/** Number of rows scored */
+	private int numRows = 0;
+	/** Number of rows with a class */
+	private int numLabelled = 0;
+	private int correct = 0;
+	private double hingeSum = 0.0;
+	/** Counts by actual class (rows) and predicted class (columns) */
+	private final int[][] confusion;
+
+	/**
+	 * Creates empty scores for the given number of class values.
+	 */
+	public LinearScores(int numClasses)
+	{
+		int n = Math.max(2, numClasses);
+		confusion = new int[n][n];
+	}
+
+	/**
+	 * Adds one row with the given class index (-1 if missing) and dot product.
+	 */
+	public void add(int label, double wx)
+	{
+		int pred = (wx > 0) ? 1 : 0;
+		numRows++;
+		if (label < 0)
+			return;
+		numLabelled++;
+		if (pred == label)
+			correct++;
+		double y = (label == 0) ? -1 : 1;
+		hingeSum += Math.max(0.0, 1.0 - y * wx);
+		confusion[label][pred]++;
+	}
+
+	/**
+	 * Adds the counts of the other scores to these.
+	 */
+	public void merge(LinearScores other)
+	{
+		numRows += other.numRows;
+		numLabelled += other.numLabelled;
+		correct += other.correct;
+		hingeSum += other.hingeSum;
+		for (int i = 0; i < confusion.length; i++)
+			for (int j = 0; j < confusion[i].length; j++)
+				confusion[i][j] += other.confusion[i][j];
+	}
+
+	/** Returns the number of rows scored. */
+	public int numRows()
+	{
+		return numRows;
+	}
+
+	/** Returns the number of correctly classified rows. */
+	public int correct()
+	{
+		return correct;
+	}
+
+	/** Returns the fraction of the rows classified correctly. */
+	public double accuracy()
+	{
+		return (numRows > 0) ? correct / (double)numRows : 0.0;
+	}
+
+	/** Returns the mean hinge loss over the rows with a class. */
+	public double hingeLoss()
+	{
+		return (numLabelled > 0) ? hingeSum / numLabelled : 0.0;
+	}
+
+	/**
+	 * Returns the confusion matrix, indexed by actual class and then by
+	 * predicted class. The array is the live one.
+	 */
+	public int[][] confusion()
+	{
+		return confusion;
+	}
+
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("accuracy ").append(accuracy()).append(" hinge ").append(hingeLoss());
+		sb.append(" confusion");
+		for (int i = 0; i < confusion.length; i++)
+		{
+			sb.append(" [");
+			for (int j = 0; j < confusion[i].length; j++)
+				sb.append(j > 0 ? " " : "").append(confusion[i][j]);
+			sb.append("]");
+		}
+		return sb.toString();
+	}
+}
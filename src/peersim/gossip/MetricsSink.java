@@ -0,0 +1,439 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class MetricsSink
+ * Asynchronous writer of the statistics and weight snapshots of the nodes of
+ * one run. There is one sink per run directory, shared by all the nodes. The
+ * simulation thread only queues the records; a background thread writes them,
+ * keeping one buffered writer open per file, and flushes the writers whenever
+ * the queue stays empty for a while. The queue is bounded, so that a slow disk
+ * slows the simulation down instead of filling the heap with snapshots.
+ * <p>
+ * Weight snapshots replace the previous snapshot of the same file, either in
+ * the sparse text format <code>index:value index:value ...</code> or in a
+ * binary format: the dimension and the number of non-zero entries as
+ * big-endian ints, followed by one (int index, double value) pair per non-zero
+ * entry.
+ * <p>
+ * All the sinks are closed, and their records written, by {@link #closeAll()}
+ * or at the latest when the JVM exits.
+ */
+public class MetricsSink
+{
+	/** Idle time after which the open writers are flushed, in milliseconds */
+	private static final long FLUSH_MS = 200;
+
+	/** Maximum number of records waiting to be written */
+	private static final int CAPACITY = 1024;
+
+	private static final int APPEND = 0;
+	private static final int TRUNCATE = 1;
+	private static final int REPLACE = 2;
+	private static final int FLUSH = 3;
+	private static final int CLOSE = 4;
+
+	/** Open sinks, by run directory */
+	private static final HashMap<String, MetricsSink> sinks = new HashMap<String, MetricsSink>();
+
+	static
+	{
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run()
+			{
+				closeAll();
+			}
+		});
+	}
+
+	/** A queued write */
+	private static final class Record
+	{
+		final int mode;
+		final String file;
+		final String text;
+		final byte[] bytes;
+		final CountDownLatch done;
+
+		Record(int mode, String file, String text, byte[] bytes, CountDownLatch done)
+		{
+			this.mode = mode;
+			this.file = file;
+			this.text = text;
+			this.bytes = bytes;
+			this.done = done;
+		}
+	}
+
+	private final File dir;
+	private final LinkedBlockingQueue<Record> queue = new LinkedBlockingQueue<Record>(CAPACITY);
+	/** Open writers, by file name; only used by the writer thread */
+	private final HashMap<String, Writer> writers = new HashMap<String, Writer>();
+	private final Thread writer;
+	private volatile boolean closed = false;
+
+	private MetricsSink(File dir)
+	{
+		this.dir = dir;
+		writer = new Thread("metrics-" + dir.getName()) {
+			public void run()
+			{
+				drain();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Returns the sink of the given run directory, creating it if needed.
+	 */
+	public static synchronized MetricsSink get(String runDir)
+	{
+		File dir = new File(runDir).getAbsoluteFile();
+		String key = dir.getPath();
+		MetricsSink sink = sinks.get(key);
+		if (sink == null)
+		{
+			sink = new MetricsSink(dir);
+			sinks.put(key, sink);
+		}
+		return sink;
+	}
+
+	/**
+	 * Writes all the queued records of every sink and closes them.
+	 */
+	public static void closeAll()
+	{
+		ArrayList<MetricsSink> open;
+		synchronized (MetricsSink.class)
+		{
+			open = new ArrayList<MetricsSink>(sinks.values());
+			sinks.clear();
+		}
+		for (MetricsSink sink : open)
+		{
+			try
+			{
+				sink.close();
+			}
+			catch (IllegalStateException e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Queues a line (or any text) to be appended to the given file of the run.
+	 */
+	public void append(String file, String text)
+	{
+		put(new Record(APPEND, file, text, null, null));
+	}
+
+	/**
+	 * Queues the given text to become the beginning of the given file, whose
+	 * previous content is discarded. Later appends go after it.
+	 */
+	public void create(String file, String text)
+	{
+		put(new Record(TRUNCATE, file, text, null, null));
+	}
+
+	/**
+	 * Queues a snapshot of the non-zero weights, which replaces the previous
+	 * content of the given file. The weights are copied before returning.
+	 *
+	 * @param binary true for the binary format, false for sparse text
+	 */
+	public void snapshot(String file, double[] weights, boolean binary)
+	{
+		if (binary)
+		{
+			int nnz = 0;
+			for (int i = 0; i < weights.length; i++)
+				if (weights[i] != 0.0) nnz++;
+			ByteBuffer buf = ByteBuffer.allocate(8 + 12 * nnz);
+			buf.putInt(weights.length);
+			buf.putInt(nnz);
+			for (int i = 0; i < weights.length; i++)
+			{
+				if (weights[i] != 0.0)
+				{
+					buf.putInt(i);
+					buf.putDouble(weights[i]);
+				}
+			}
+			put(new Record(REPLACE, file, null, buf.array(), null));
+		}
+		else
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < weights.length; i++)
+			{
+				if (weights[i] != 0.0)
+					sb.append(i).append(':').append(weights[i]).append(' ');
+			}
+			put(new Record(REPLACE, file, sb.toString(), null, null));
+		}
+	}
+
+	/**
+	 * Waits until every record queued so far is written and flushed.
+	 *
+	 * @throws IllegalStateException if the writer thread has stopped
+	 */
+	public void flush()
+	{
+		await(FLUSH);
+	}
+
+	/**
+	 * Writes every queued record, closes the files and stops the writer
+	 * thread. Records queued afterwards are dropped.
+	 *
+	 * @throws IllegalStateException if the writer thread has stopped
+	 */
+	public void close()
+	{
+		if (closed)
+			return;
+		try
+		{
+			await(CLOSE);
+		}
+		finally
+		{
+			closed = true;
+		}
+	}
+
+	private void await(int mode)
+	{
+		if (closed)
+			return;
+		CountDownLatch done = new CountDownLatch(1);
+		put(new Record(mode, null, null, null, done));
+		try
+		{
+			while (!done.await(FLUSH_MS, TimeUnit.MILLISECONDS))
+				checkWriter();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Queues a record, waiting while the queue is full.
+	 */
+	private void put(Record r)
+	{
+		if (closed)
+			return;
+		try
+		{
+			while (!queue.offer(r, FLUSH_MS, TimeUnit.MILLISECONDS))
+			{
+				if (closed)
+					return;
+				checkWriter();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Fails instead of waiting forever for a writer thread that has stopped.
+	 */
+	private void checkWriter()
+	{
+		if (!writer.isAlive())
+			throw new IllegalStateException("The writer of " + dir + " has stopped");
+	}
+
+	/**
+	 * Body of the writer thread.
+	 */
+	private void drain()
+	{
+		while (true)
+		{
+			Record r;
+			try
+			{
+				r = queue.poll(FLUSH_MS, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			if (r == null)
+			{
+				flushWriters();
+				continue;
+			}
+			// Nothing may stop the thread before close, the callers of
+			// flush and close wait for it
+			boolean stop = false;
+			try
+			{
+				switch (r.mode)
+				{
+				case APPEND:
+					writerFor(r.file, true).write(r.text);
+					break;
+				case TRUNCATE:
+					closeWriter(r.file);
+					writerFor(r.file, false).write(r.text);
+					break;
+				case REPLACE:
+					replace(r);
+					break;
+				case FLUSH:
+					flushWriters();
+					break;
+				case CLOSE:
+					stop = true;
+					for (Writer w : writers.values())
+					{
+						try
+						{
+							w.close();
+						}
+						catch (Throwable e)
+						{
+							e.printStackTrace();
+						}
+					}
+					writers.clear();
+					break;
+				}
+			}
+			catch (Throwable e)
+			{
+				e.printStackTrace();
+			}
+			finally
+			{
+				if (r.done != null)
+					r.done.countDown();
+			}
+			if (stop)
+				return;
+		}
+	}
+
+	private Writer writerFor(String file, boolean append) throws IOException
+	{
+		Writer w = writers.get(file);
+		if (w == null)
+		{
+			w = new BufferedWriter(new FileWriter(new File(dir, file), append), 1 << 16);
+			writers.put(file, w);
+		}
+		return w;
+	}
+
+	private void closeWriter(String file) throws IOException
+	{
+		Writer w = writers.remove(file);
+		if (w != null)
+			w.close();
+	}
+
+	private void flushWriters()
+	{
+		for (Writer w : writers.values())
+		{
+			try
+			{
+				w.flush();
+			}
+			catch (Throwable e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Writes a snapshot under a temporary name and renames it, so that a reader
+	 * never sees a partial snapshot.
+	 */
+	private void replace(Record r) throws IOException
+	{
+		closeWriter(r.file);
+		File target = new File(dir, r.file);
+		File tmp = new File(dir, r.file + ".tmp");
+		if (r.bytes != null)
+		{
+			FileOutputStream out = new FileOutputStream(tmp);
+			try
+			{
+				out.write(r.bytes);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		else
+		{
+			Writer out = new BufferedWriter(new FileWriter(tmp), 1 << 16);
+			try
+			{
+				out.write(r.text);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		if (!tmp.renameTo(target))
+		{
+			// renameTo does not replace an existing file on every platform
+			target.delete();
+			if (!tmp.renameTo(target))
+				throw new IOException("Cannot rename " + tmp + " to " + target);
+		}
+	}
+}
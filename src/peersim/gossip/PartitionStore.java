@@ -0,0 +1,518 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.functions.SPegasosGadget;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.converters.ArffLoader;
+
+/**
+ * Class PartitionStore
+ * A compact, read-only, columnar copy of the data partition of a node. The
+ * features are kept in CSR form (row pointers, column indices and values of
+ * the non-zero entries, class excluded) and the labels as the index of the
+ * class value in a <code>byte[]</code>, -1 for a missing class.
+ * <p>
+ * The first time an ARFF file is loaded, it is parsed once through Weka's
+ * {@link ArffLoader.FastArffReader} and written to a binary cache file. Later
+ * runs memory-map the cache instead of parsing the ARFF again, as long as the
+ * cache is not older than the ARFF.
+ * Within a simulation every file is loaded at most once, see
+ * {@link #get(String, String)}.
+ * <p>
+ * The training code still works on {@link Instances}, built from the store by
+ * {@link #toInstances()}, while the evaluation reads the store directly.
+ * Instance weights are not kept; all rows get weight 1.
+ */
+public class PartitionStore
+{
+	/** Identifies a cache file: "GCSR" */
+	private static final int MAGIC = 0x47435352;
+	private static final int VERSION = 1;
+
+	/** Rows scored by one task of a parallel {@link #score(double[], int)} */
+	private static final int SCORE_CHUNK = 4096;
+
+	/**
+	 * Pools of the parallel scoring by number of threads, created on first use.
+	 * A pool is never shut down, since another thread may still be scoring
+	 * with it; its idle workers exit on their own.
+	 */
+	private static final HashMap<Integer, ForkJoinPool> scorePools = new HashMap<Integer, ForkJoinPool>();
+
+	/** The stores loaded so far in this simulation, by ARFF path */
+	private static final HashMap<String, PartitionStore> loaded = new HashMap<String, PartitionStore>();
+
+	/** Attribute information, without rows */
+	private final Instances header;
+	private final int numRows;
+	/** True if the rows were sparse instances in the ARFF file */
+	private final boolean sparse;
+	/** Start of each row in {@link #cols} and {@link #vals}, numRows + 1 entries */
+	private final IntBuffer rowPtr;
+	private final IntBuffer cols;
+	private final DoubleBuffer vals;
+	private final byte[] labels;
+
+	private PartitionStore(Instances header, int numRows, boolean sparse,
+			IntBuffer rowPtr, IntBuffer cols, DoubleBuffer vals, byte[] labels)
+	{
+		this.header = header;
+		this.numRows = numRows;
+		this.sparse = sparse;
+		this.rowPtr = rowPtr;
+		this.cols = cols;
+		this.vals = vals;
+		this.labels = labels;
+	}
+
+	/**
+	 * Returns the store of the given ARFF file, whose last attribute is the
+	 * class. The store is loaded from the cache file when it is up to date,
+	 * otherwise the ARFF file is parsed and the cache is (re)written. Repeated
+	 * calls with the same ARFF file return the same store.
+	 */
+	public static synchronized PartitionStore get(String arffPath, String cachePath) throws IOException
+	{
+		File arff = new File(arffPath);
+		String key = arff.getAbsolutePath();
+		PartitionStore store = loaded.get(key);
+		if (store != null)
+			return store;
+		File cache = new File(cachePath);
+		if (cache.exists() && cache.lastModified() >= arff.lastModified())
+		{
+			store = read(cache);
+		}
+		else
+		{
+			FileInputStream in = new FileInputStream(arff);
+			Instances data;
+			try
+			{
+				data = new ArffLoader.FastArffReader(in).getData();
+			}
+			finally
+			{
+				in.close();
+			}
+			data.setClassIndex(data.numAttributes() - 1);
+			store = fromInstances(data);
+			try
+			{
+				store.write(cache);
+			}
+			catch (IOException e)
+			{
+				// The cache is only an optimisation, carry on without it
+				System.err.println("Cannot write partition cache " + cachePath + ": " + e.getMessage());
+			}
+		}
+		loaded.put(key, store);
+		return store;
+	}
+
+	/**
+	 * Builds a store from the given dataset, which must have a nominal class
+	 * with at most 127 values.
+	 */
+	public static PartitionStore fromInstances(Instances data)
+	{
+		int classIndex = data.classIndex();
+		if (classIndex < 0 || !data.classAttribute().isNominal() || data.numClasses() > Byte.MAX_VALUE)
+			throw new IllegalArgumentException("PartitionStore needs a nominal class with at most "
+					+ Byte.MAX_VALUE + " values");
+		int n = data.numInstances();
+		int nnz = 0;
+		for (int i = 0; i < n; i++)
+		{
+			Instance inst = data.instance(i);
+			for (int p = 0; p < inst.numValues(); p++)
+			{
+				if (inst.index(p) != classIndex && inst.valueSparse(p) != 0.0)
+					nnz++;
+			}
+		}
+		int[] rowPtr = new int[n + 1];
+		int[] cols = new int[nnz];
+		double[] vals = new double[nnz];
+		byte[] labels = new byte[n];
+		int k = 0;
+		for (int i = 0; i < n; i++)
+		{
+			Instance inst = data.instance(i);
+			rowPtr[i] = k;
+			for (int p = 0; p < inst.numValues(); p++)
+			{
+				int idx = inst.index(p);
+				double v = inst.valueSparse(p);
+				if (idx != classIndex && v != 0.0)
+				{
+					cols[k] = idx;
+					vals[k] = v;
+					k++;
+				}
+			}
+			labels[i] = inst.classIsMissing() ? -1 : (byte)inst.classValue();
+		}
+		rowPtr[n] = k;
+		boolean sparse = n > 0 && data.instance(0) instanceof SparseInstance;
+		return new PartitionStore(new Instances(data, 0), n, sparse,
+				IntBuffer.wrap(rowPtr), IntBuffer.wrap(cols), DoubleBuffer.wrap(vals), labels);
+	}
+
+	/**
+	 * Memory-maps a cache file written by {@link #write(File)}. Only the labels
+	 * are copied to the heap.
+	 */
+	public static PartitionStore read(File cache) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(cache, "r");
+		try
+		{
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+				throw new IOException("Not a partition cache: " + cache);
+			int n = buf.getInt();
+			int nnz = buf.getInt();
+			int classIndex = buf.getInt();
+			boolean sparse = buf.get() != 0;
+			byte[] text = new byte[buf.getInt()];
+			buf.get(text);
+			Instances header = new Instances(new StringReader(new String(text, "UTF-8")));
+			header.setClassIndex(classIndex);
+			int pos = buf.position();
+			IntBuffer rowPtr = slice(buf, pos, 4 * (n + 1)).asIntBuffer();
+			pos += 4 * (n + 1);
+			IntBuffer cols = slice(buf, pos, 4 * nnz).asIntBuffer();
+			pos += 4 * nnz;
+			DoubleBuffer vals = slice(buf, pos, 8 * nnz).asDoubleBuffer();
+			pos += 8 * nnz;
+			byte[] labels = new byte[n];
+			buf.position(pos);
+			buf.get(labels);
+			return new PartitionStore(header, n, sparse, rowPtr, cols, vals, labels);
+		}
+		finally
+		{
+			// The mapping stays valid after the channel is closed
+			file.close();
+		}
+	}
+
+	private static ByteBuffer slice(ByteBuffer buf, int pos, int len)
+	{
+		ByteBuffer b = buf.duplicate();
+		b.position(pos);
+		b.limit(pos + len);
+		return b.slice();
+	}
+
+	/**
+	 * Writes the store to the given cache file. The file is written under a
+	 * temporary name first, so that a partial file is never mapped.
+	 */
+	public void write(File cache) throws IOException
+	{
+		File dir = cache.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.exists())
+			dir.mkdirs();
+		File tmp = new File(cache.getPath() + ".tmp");
+		byte[] text = header.toString().getBytes("UTF-8");
+		int nnz = rowPtr.get(numRows);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numRows);
+			out.writeInt(nnz);
+			out.writeInt(header.classIndex());
+			out.writeByte(sparse ? 1 : 0);
+			out.writeInt(text.length);
+			out.write(text);
+			for (int i = 0; i <= numRows; i++)
+				out.writeInt(rowPtr.get(i));
+			for (int k = 0; k < nnz; k++)
+				out.writeInt(cols.get(k));
+			for (int k = 0; k < nnz; k++)
+				out.writeDouble(vals.get(k));
+			out.write(labels);
+		}
+		finally
+		{
+			out.close();
+		}
+		if (cache.exists() && !cache.delete())
+			throw new IOException("Cannot replace " + cache);
+		if (!tmp.renameTo(cache))
+			throw new IOException("Cannot rename " + tmp + " to " + cache);
+	}
+
+	/** Returns the number of rows. */
+	public int numRows()
+	{
+		return numRows;
+	}
+
+	/** Returns the number of attributes, class included. */
+	public int numAttributes()
+	{
+		return header.numAttributes();
+	}
+
+	/** Returns the index of the class attribute. */
+	public int classIndex()
+	{
+		return header.classIndex();
+	}
+
+	/** Returns the index of the class value of the given row, -1 if missing. */
+	public int label(int row)
+	{
+		return labels[row];
+	}
+
+	/** Returns the number of stored (non-zero) values of the given row. */
+	public int rowLength(int row)
+	{
+		return rowPtr.get(row + 1) - rowPtr.get(row);
+	}
+
+	/**
+	 * Returns a new, empty dataset with the attributes of the partition.
+	 */
+	public Instances header()
+	{
+		return new Instances(header, 0);
+	}
+
+	/**
+	 * Builds a new dataset with all the rows of the partition. The dataset is
+	 * independent of the store and may be modified.
+	 */
+	public Instances toInstances()
+	{
+		int numAttributes = header.numAttributes();
+		int classIndex = header.classIndex();
+		Instances data = new Instances(header, numRows);
+		for (int i = 0; i < numRows; i++)
+		{
+			int start = rowPtr.get(i);
+			int end = rowPtr.get(i + 1);
+			double classValue = (labels[i] < 0) ? Instance.missingValue() : labels[i];
+			Instance inst;
+			if (sparse)
+			{
+				// Merge the class value into the sorted features
+				int len = end - start + 1;
+				double[] v = new double[len];
+				int[] idx = new int[len];
+				int q = 0;
+				boolean classDone = false;
+				for (int k = start; k < end; k++)
+				{
+					int c = cols.get(k);
+					if (!classDone && c > classIndex)
+					{
+						idx[q] = classIndex;
+						v[q++] = classValue;
+						classDone = true;
+					}
+					idx[q] = c;
+					v[q++] = vals.get(k);
+				}
+				if (!classDone)
+				{
+					idx[q] = classIndex;
+					v[q++] = classValue;
+				}
+				inst = new SparseInstance(1.0, v, idx, numAttributes);
+			}
+			else
+			{
+				double[] v = new double[numAttributes];
+				for (int k = start; k < end; k++)
+					v[cols.get(k)] = vals.get(k);
+				v[classIndex] = classValue;
+				inst = new Instance(1.0, v);
+			}
+			data.add(inst);
+		}
+		return data;
+	}
+
+	/**
+	 * Returns the dot product of the given row with the weights, skipping the
+	 * missing values and the coordinates beyond the end of the weights.
+	 */
+	public double dotProduct(int row, double[] weights)
+	{
+		double sum = 0;
+		int end = rowPtr.get(row + 1);
+		for (int k = rowPtr.get(row); k < end; k++)
+		{
+			int c = cols.get(k);
+			double v = vals.get(k);
+			if (c < weights.length && !Double.isNaN(v))
+				sum += v * weights[c];
+		}
+		return sum;
+	}
+
+	/**
+	 * Scores the linear model with the given weights on all the rows, in one
+	 * pass over the CSR matrix.
+	 */
+	public LinearScores score(double[] weights)
+	{
+		return score(weights, 0, numRows);
+	}
+
+	/**
+	 * Scores the linear model with the given weights on all the rows, splitting
+	 * the rows across the given number of threads. With one thread this is the
+	 * same as {@link #score(double[])}.
+	 */
+	public LinearScores score(double[] weights, int threads)
+	{
+		if (threads <= 1 || numRows <= SCORE_CHUNK)
+			return score(weights);
+		return getScorePool(threads).invoke(new ScoreTask(weights, 0, numRows));
+	}
+
+	/**
+	 * Scores the rows in [from, to).
+	 */
+	private LinearScores score(double[] weights, int from, int to)
+	{
+		LinearScores scores = new LinearScores(header.numClasses());
+		for (int i = from; i < to; i++)
+			scores.add(labels[i], dotProduct(i, weights));
+		return scores;
+	}
+
+	private static ForkJoinPool getScorePool(int threads)
+	{
+		synchronized (scorePools)
+		{
+			ForkJoinPool pool = scorePools.get(threads);
+			if (pool == null)
+			{
+				pool = new ForkJoinPool(threads);
+				scorePools.put(threads, pool);
+			}
+			return pool;
+		}
+	}
+
+	/**
+	 * Scores a range of rows, halving it until it fits in one chunk.
+	 */
+	private class ScoreTask extends RecursiveTask<LinearScores>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final double[] weights;
+		private final int from;
+		private final int to;
+
+		ScoreTask(double[] weights, int from, int to)
+		{
+			this.weights = weights;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected LinearScores compute()
+		{
+			if (to - from <= SCORE_CHUNK)
+				return score(weights, from, to);
+			int mid = (from + to) >>> 1;
+			ScoreTask right = new ScoreTask(weights, mid, to);
+			right.fork();
+			LinearScores scores = new ScoreTask(weights, from, mid).compute();
+			scores.merge(right.join());
+			return scores;
+		}
+	}
+
+	/**
+	 * Returns true if {@link #score(double[])} gives the same predictions as
+	 * the given model, i.e. it is an SPegasosGadget that does not filter its
+	 * input.
+	 */
+	public static boolean isLinear(Classifier model)
+	{
+		return model instanceof SPegasosGadget && !((SPegasosGadget)model).hasInputFilters();
+	}
+
+	/**
+	 * Returns the fraction of the rows the model classifies correctly. A linear
+	 * model (see {@link #isLinear}) is scored on the store directly; any other
+	 * model is evaluated on {@link #toInstances()}.
+	 */
+	public double accuracy(Classifier model) throws Exception
+	{
+		return accuracy(model, 1);
+	}
+
+	/**
+	 * Same as {@link #accuracy(Classifier)}, scoring a linear model with the
+	 * given number of threads.
+	 */
+	public double accuracy(Classifier model, int threads) throws Exception
+	{
+		if (numRows == 0)
+			return 0.0;
+		if (isLinear(model))
+			return score(((SPegasosGadget)model).getWeights(), threads).accuracy();
+		int correct = 0;
+		Instances data = toInstances();
+		for (int i = 0; i < numRows; i++)
+		{
+			if (model.classifyInstance(data.instance(i)) == labels[i])
+				correct++;
+		}
+		return correct / (double)numRows;
+	}
+}
@@ -443,6 +443,15 @@ public class PegasosMLPNode implements Node
 				return counterID++;
 			}
 
+			/**
+			 * Restarts the ID sequence, so that the nodes of the next simulation run in
+			 * the same JVM read the same partitions as in a fresh one.
+			 * See {@link peersim.Simulator#runInProcess}.
+			 */
+			public static void resetStatic() {
+				counterID = -1;
+			}
+
 			// =============== public methods ==================================
 			// =================================================================
 
@@ -115,6 +115,39 @@ public class PegasosNode implements Node {
 	private static final String PAR_EXAM_PER_ITER = "examperiter";
 	private static final String PAR_REPLACE = "replace";
 	private static final String PAR_DIM = "dim";
+	/**
+	 * New config options for mini-batch training of the local model
+	 * PAR_BATCHSIZE	: number of examples per sub-gradient step, defaults to 0
+	 * which keeps the single-example update of SPegasosGadget.train
+	 * PAR_EPOCHS	: number of passes over the local data per cycle, defaults to 1
+	 * @config
+	 */
+	private static final String PAR_BATCHSIZE = "batchsize";
+	private static final String PAR_EPOCHS = "epochs";
+	/**
+	 * Number of threads used to score the test partition of the node, defaults
+	 * to 1. Useful with few nodes and large test sets.
+	 * @config
+	 */
+	private static final String PAR_EVALTHREADS = "evalthreads";
+	/**
+	 * How pushSV recognizes a support vector already in the training data:
+	 * "header" (the default, the row shares the header of the data, as in the
+	 * original pushSV) or "values" (all the non-class values are equal)
+	 * @config
+	 */
+	private static final String PAR_DEDUP = "dedup";
+	/**
+	 * Output of the weight snapshots, written through the {@link MetricsSink}
+	 * of the run
+	 * PAR_SNAPSHOT	: a snapshot is written every this many iterations, defaults
+	 * to 1; with 0 only the final snapshot is written, see {@link FinalControl}
+	 * PAR_WEIGHTFORMAT	: "sparse" (global_&lt;id&gt;.dat, index:value text, the
+	 * default) or "binary" (global_&lt;id&gt;.bin)
+	 * @config
+	 */
+	private static final String PAR_SNAPSHOT = "snapshot";
+	private static final String PAR_WEIGHTFORMAT = "weightformat";
         //private static final String PAR_ITER= "iter"; 
 
 	/** used to generate unique IDs */
@@ -134,6 +167,12 @@ public class PegasosNode implements Node {
         private int iter;
         private int replace;
         private int dimension;
+        private int batchSize;
+        private int epochs;
+        private int evalThreads;
+        private int snapshotInterval;
+        private boolean binaryWeights;
+        private boolean dedupByValue;
 	
         /**
 	 * The current index of this node in the node
@@ -190,6 +229,12 @@ public class PegasosNode implements Node {
 	Instances supportVecs=null;
 	Instances selectedSetXY=null;
 	Instances updatedTrainData=null;
+	/** Index over updatedTrainData, used to dedup incoming support vectors */
+	InstanceIndex updatedTrainIndex=null;
+	/** State of the delta encoded weight exchange with the peers, and its byte count */
+	public DeltaExchange exchange=null;
+	/** Read-only columnar copy of the test partition, shared with the evaluation */
+	public PartitionStore testStore=null;
 	File[] listOfFiles = null;
 	public int numFeat;
 	
@@ -217,6 +262,12 @@ public class PegasosNode implements Node {
 		exam_per_iter = Configuration.getInt(prefix + "." + PAR_EXAM_PER_ITER, 1);
 		replace = Configuration.getInt(prefix + "." + PAR_REPLACE, 1);
 		dimension = Configuration.getInt(prefix + "." + PAR_DIM, 0);
+		batchSize = Configuration.getInt(prefix + "." + PAR_BATCHSIZE, 0);
+		epochs = Configuration.getInt(prefix + "." + PAR_EPOCHS, 1);
+		evalThreads = Configuration.getInt(prefix + "." + PAR_EVALTHREADS, 1);
+		snapshotInterval = Configuration.getInt(prefix + "." + PAR_SNAPSHOT, 1);
+		binaryWeights = Configuration.getString(prefix + "." + PAR_WEIGHTFORMAT, "sparse").equals("binary");
+		dedupByValue = Configuration.getString(prefix + "." + PAR_DEDUP, "header").equals("values");
 		//iter = Configuration.getInt(prefix + "." + PAR_ITER);
 		System.out.println("model file and train file are saved in: " + resourcepath);
 		CommonState.setNode(this);
@@ -309,6 +360,7 @@ public class PegasosNode implements Node {
 			result.protocol[i] = (Protocol)protocol[i].clone();
 		}
 		System.out.println("creating node with ID: " + result.getID());
+		result.exchange = new DeltaExchange();
 		// take the training datafile associated with it and call training function
 		// and store the result locally in model file
 		// currently training file name format is fixed and hardcoded, should be 
@@ -335,23 +387,11 @@ public class PegasosNode implements Node {
 	 
 	    // Create headers to store the results
 //		String csv_filename = resourcepath + "/run" + result.numRun + "/node_" + result.getID() + ".csv";
-	    String csv_filename_ASG = resourcepath + "/run" + result.numRun + "/node_asg_" + result.getID() + ".csv";
 		String opString = "node,iter,obj_value,loss_value,wt_norm,obj_value_difference,converged,";
 		opString += "num_converge_iters,accuracy,zero_one_error,train_time,read_init_time\n";
 		
 		// Write to file
-		try {
-		//BufferedWriter bw = new BufferedWriter(new FileWriter(csv_filename));
-		BufferedWriter bwASG = new BufferedWriter(new FileWriter(csv_filename_ASG));
-		//bw.write(opString);
-		bwASG.write(opString);
-		//bw.close();
-		bwASG.close();
-		}
-		catch(Exception e) 
-		{
-		 e.printStackTrace();	
-		}
+		result.getMetricsSink().create("node_asg_" + result.getID() + ".csv", opString);
 		
 		//Get train and test data
 //		DataSource trainSource;
@@ -379,12 +419,24 @@ public class PegasosNode implements Node {
 			
 			//Read in the train file
 			String trainFilename = localTrainFolderpath + "/" + "t_" + result.getID() + ".arff";
-			// set up the data
-		    FileReader reader = new FileReader(trainFilename);
-		    Instances data = new Instances (reader);
-			// Make the last attribute be the class
-		    int classIndex = data.numAttributes()-1; 
-		    data.setClassIndex(classIndex); 
+			// The partitions are parsed once and cached in binary form under
+			// resourcepath/cache, later runs map the cache instead
+			String cacheFolderpath = resourcepath + "/cache";
+			PartitionStore trainStore = PartitionStore.get(trainFilename,
+					cacheFolderpath + "/t_" + result.getID() + ".csr");
+			// The last attribute is the class
+		    Instances data = trainStore.toInstances();
+		    int classIndex = data.classIndex();
+		    try
+		    {
+		    	String testFilename = resourcepath + "/" + "tst_" + result.getID() + "/" + "tst_" + result.getID() + ".arff";
+		    	result.testStore = PartitionStore.get(testFilename,
+		    			cacheFolderpath + "/tst_" + result.getID() + ".csr");
+		    }
+		    catch (IOException e)
+		    {
+		    	e.printStackTrace();
+		    }
 		      
 		     // Get the number of features
 		     numFeat = data.numAttributes()-1;
@@ -392,6 +444,7 @@ public class PegasosNode implements Node {
 		     
 		     result.trainData=data;
 		     result.updatedTrainData=data;
+		     result.updatedTrainIndex=new InstanceIndex(data, dedupByValue);
 		     
 		     // Build the model
 		     // SPegasos cModel = trainPegasosClassifier(globalTrainingSet, pegasosLambda);
@@ -410,6 +463,12 @@ public class PegasosNode implements Node {
 	    	cModel.setOptions(options);
 	    	cModel.m_dimension = dimension;
 	    	System.out.println("Setting dimension to" + dimension);
+	    	if (batchSize > 0)
+	    	{
+	    		cModel.setMiniBatchSize(batchSize);
+	    		cModel.setEpochs(epochs);
+	    		cModel.setSeed(CommonState.r.nextLong());
+	    	}
 	    	//cModel.getCapabilities();
 			cModel.buildClassifier(data);
 			
@@ -498,33 +557,32 @@ public class PegasosNode implements Node {
 
 	}
 	
+	/**
+	 * Returns the sink that writes the statistics and weights of this run.
+	 */
+	public MetricsSink getMetricsSink()
+	{
+		return MetricsSink.get(resourcepath + "/run" + numRun);
+	}
+	
+	/**
+	 * Returns true if the weights must be written after the given iteration,
+	 * according to {@value #PAR_SNAPSHOT}.
+	 */
+	public boolean isSnapshotIteration(int iter)
+	{
+		return snapshotInterval > 0 && iter % snapshotInterval == 0;
+	}
+	
 	/*
-	 * This method is called at the end of simulation cycles. And it writes final 
-	 * global weights obtained to global_<id>.dat files in resourcepath
+	 * Queues a snapshot of the current global weights, global_<id>.dat in the
+	 * sparse format or global_<id>.bin in the binary one, in the run directory.
+	 * The file is replaced, so it holds the latest snapshot.
 	*/
 	public void writeGlobalWeights() 
 	{
-		String filename = resourcepath + "/run"+this.numRun + "/global_"  + this.getID() + ".dat";
-		String opString = "";
-		for (int i = 0; i < this.wtvector.length;i++) {
-			if (this.wtvector[i] != 0.0) 
-			{
-				opString += i;
-				opString += ":";
-				opString += this.wtvector[i];
-				opString += " ";	
-			}			
-		}
-		
-		// Write to file
-		try {
-		BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
-		bw.write(opString);
-		bw.close();
-		}
-		catch(Exception e) {
-			
-		}
+		String filename = "global_" + this.getID() + (binaryWeights ? ".bin" : ".dat");
+		getMetricsSink().snapshot(filename, this.wtvector, binaryWeights);
 	}
  
 	/** returns the next unique ID */
@@ -533,6 +591,15 @@ public class PegasosNode implements Node {
 		return counterID++;
 	}
 
+	/**
+	 * Restarts the ID sequence, so that the nodes of the next simulation run in
+	 * the same JVM read the same partitions as in a fresh one.
+	 * See {@link peersim.Simulator#runInProcess}.
+	 */
+	public static void resetStatic() {
+		counterID = -1;
+	}
+
 	// =============== public methods ==================================
 	// =================================================================
 
@@ -582,6 +649,10 @@ public class PegasosNode implements Node {
         public int getExamPerIter(){ return exam_per_iter;}
         public int getReplace(){ return replace;}
         public int getNumNodes(){ return numNodes;}
+        public int getBatchSize(){ return batchSize;}
+        public int getEpochs(){ return epochs;}
+        public int getEvalThreads(){ return evalThreads;}
+        public int getSnapshotInterval(){ return snapshotInterval;}
 	/**
 	 * Returns the ID of this node. The IDs are generated using a counter
 	 * (i.e. they are not random).
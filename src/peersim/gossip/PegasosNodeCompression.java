@@ -154,6 +154,8 @@ public class PegasosNodeCompression implements Node
 		Instances trainData = null;
 		Instances testData = null;
 		Instances supportVecs=null;
+		/** State of the delta encoded weight exchange with the peers, and its byte count */
+		public DeltaExchange exchange=null;
 		//Instances selectedSetXY=null;
 		//Instances updatedTrainData=null;
 		File[] listOfFiles = null;
@@ -275,6 +277,7 @@ public class PegasosNodeCompression implements Node
 				result.protocol[i] = (Protocol)protocol[i].clone();
 			}
 			System.out.println("creating node with ID: " + result.getID());
+			result.exchange = new DeltaExchange();
 			// take the training datafile associated with it and call training function
 			// and store the result locally in model file
 			// currently training file name format is fixed and hardcoded, should be 
@@ -439,6 +442,15 @@ public class PegasosNodeCompression implements Node
 			return counterID++;
 		}
 
+		/**
+		 * Restarts the ID sequence, so that the nodes of the next simulation run in
+		 * the same JVM read the same partitions as in a fresh one.
+		 * See {@link peersim.Simulator#runInProcess}.
+		 */
+		public static void resetStatic() {
+			counterID = -1;
+		}
+
 		// =============== public methods ==================================
 		// =================================================================
 
@@ -0,0 +1,74 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+
+/**
+ * Class QSGDCodec
+ * Norm-scaled QSGD quantisation with <code>s</code> levels. Each coordinate is
+ * sent as <code>||v|| * sign(v_i) * l / s</code>, where <code>l</code> is
+ * <code>floor(s |v_i| / ||v||)</code> rounded up with probability equal to the
+ * remainder, which makes the codec unbiased. A message holds the norm and, for
+ * every coordinate, a sign bit and the level.
+ */
+public class QSGDCodec extends AbstractCodec
+{
+	/**
+	 * Number of quantisation levels, defaults to 4.
+	 * @config
+	 */
+	private static final String PAR_LEVELS = "levels";
+
+	private final int levels;
+	/** Bits per coordinate: the sign and a level in [0, s] */
+	private final int bitsPerCoord;
+
+	public QSGDCodec(String prefix)
+	{
+		levels = Configuration.getInt(prefix + "." + PAR_LEVELS, 4);
+		if (levels < 1)
+			throw new IllegalArgumentException(prefix + "." + PAR_LEVELS + " must be positive");
+		bitsPerCoord = 1 + (32 - Integer.numberOfLeadingZeros(levels));
+	}
+
+	protected double[] encode(double[] vec, double norm)
+	{
+		double[] comp = new double[vec.length];
+		if (norm == 0.0)
+			return comp;
+		for (int p = 0; p < vec.length; p++)
+		{
+			double r = Math.abs(vec[p]) / norm * levels;
+			double l = Math.floor(r);
+			if (CommonState.r.nextDouble() < r - l)
+				l += 1;
+			comp[p] = Math.signum(vec[p]) * norm * l / levels;
+		}
+		return comp;
+	}
+
+	protected long encodedBytes(int dim)
+	{
+		return HEADER_BYTES + (dim * (long)bitsPerCoord + 7) / 8;
+	}
+}
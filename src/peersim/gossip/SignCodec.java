@@ -0,0 +1,53 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+/**
+ * Class SignCodec
+ * 1-bit sign compression. Each coordinate is sent as its sign, and the
+ * receiver scales the signs by the mean magnitude <code>||v||_1 / d</code>,
+ * which is sent along with the message.
+ */
+public class SignCodec extends AbstractCodec
+{
+	public SignCodec(String prefix)
+	{
+	}
+
+	protected double[] encode(double[] vec, double norm)
+	{
+		double[] comp = new double[vec.length];
+		if (vec.length == 0)
+			return comp;
+		double scale = 0.0;
+		for (int p = 0; p < vec.length; p++)
+			scale += Math.abs(vec[p]);
+		scale /= vec.length;
+		for (int p = 0; p < vec.length; p++)
+			comp[p] = (vec[p] >= 0) ? scale : -scale;
+		return comp;
+	}
+
+	protected long encodedBytes(int dim)
+	{
+		return HEADER_BYTES + (dim + 7L) / 8;
+	}
+}
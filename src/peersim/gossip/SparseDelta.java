@@ -0,0 +1,45 @@
+package peersim.gossip;
+
+/**
+ * Class SparseDelta
+ * A weight vector message that carries only the coordinates that changed since
+ * the previous message sent to the same peer, as parallel index/value arrays.
+ * On the wire it would take a 4 byte count followed by a 4 byte index and an
+ * 8 byte value per coordinate; {@link #sizeInBytes()} reports that size.
+ */
+public class SparseDelta
+{
+	/** Bytes used by the coordinate count */
+	public static final int HEADER_BYTES = 4;
+	/** Bytes used by one (index, value) pair */
+	public static final int ENTRY_BYTES = 4 + 8;
+
+	/** Changed coordinates, in increasing order */
+	final int[] indices;
+	/** New values of the changed coordinates */
+	final double[] values;
+
+	SparseDelta(int[] indices, double[] values)
+	{
+		this.indices = indices;
+		this.values = values;
+	}
+
+	/** Returns the number of coordinates carried by the message. */
+	public int size()
+	{
+		return indices.length;
+	}
+
+	/** Returns the encoded size of the message. */
+	public long sizeInBytes()
+	{
+		return HEADER_BYTES + (long)ENTRY_BYTES * indices.length;
+	}
+
+	/** Returns the encoded size of a dense message of the given dimension. */
+	public static long denseSizeInBytes(int dimension)
+	{
+		return HEADER_BYTES + 8L * dimension;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+
+/**
+ * Class StochasticCodec
+ * The stochastic quantiser GadgetComprProtocol has always used, and the default
+ * codec. Each coordinate is sent as
+ * <pre>||v|| * 1[v_i &gt;= 0] * 2^-(b-1) * (2^-(b-1) * ceil(|v_i| / ||v||) + u)</pre>
+ * with <code>u</code> uniform in [0,1) and <code>b</code> the number of bits.
+ */
+public class StochasticCodec extends AbstractCodec
+{
+	/**
+	 * Number of bits per coordinate, defaults to 3.
+	 * @config
+	 */
+	private static final String PAR_BITS = "bits";
+
+	private final int numBits;
+
+	public StochasticCodec(String prefix)
+	{
+		numBits = Configuration.getInt(prefix + "." + PAR_BITS, 3);
+	}
+
+	protected double[] encode(double[] vec, double norm)
+	{
+		double[] comp = new double[vec.length];
+		if (norm == 0.0)
+			return comp;
+		double step = Math.pow(2, -(numBits - 1));
+		for (int p = 0; p < vec.length; p++)
+		{
+			double u = CommonState.r.nextDouble();
+			double sign = (vec[p] >= 0) ? 1 : 0;
+			comp[p] = norm * sign * step * (step * Math.ceil(Math.abs(vec[p]) / norm) + u);
+		}
+		return comp;
+	}
+
+	protected long encodedBytes(int dim)
+	{
+		return HEADER_BYTES + (dim * (long)numBits + 7) / 8;
+	}
+}
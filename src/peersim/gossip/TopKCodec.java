@@ -0,0 +1,149 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+import peersim.config.Configuration;
+
+/**
+ * Class TopKCodec
+ * Top-k sparsification with error feedback. The codec adds the residual left
+ * over by the previous messages to the vector, sends the k coordinates with
+ * the largest magnitude as (index, value) pairs, and keeps the rest as the new
+ * residual. The residual is per node, since each protocol instance owns a
+ * clone of the codec.
+ */
+public class TopKCodec extends AbstractCodec
+{
+	/**
+	 * Number of coordinates to send. If not given, {@value #PAR_RATIO} is used.
+	 * @config
+	 */
+	private static final String PAR_K = "k";
+	/**
+	 * Fraction of the coordinates to send when {@value #PAR_K} is not given,
+	 * defaults to 0.01.
+	 * @config
+	 */
+	private static final String PAR_RATIO = "ratio";
+
+	private final int k;
+	private final double ratio;
+
+	/** Error feedback memory, allocated on first use */
+	private double[] residual = null;
+	/** Scratch buffer for the selection */
+	private double[] scratch = null;
+
+	public TopKCodec(String prefix)
+	{
+		k = Configuration.getInt(prefix + "." + PAR_K, 0);
+		ratio = Configuration.getDouble(prefix + "." + PAR_RATIO, 0.01);
+	}
+
+	/** Returns the number of coordinates sent for a vector of the given dimension. */
+	protected int numSent(int dim)
+	{
+		int n = (k > 0) ? k : (int)Math.ceil(ratio * dim);
+		return Math.max(1, Math.min(n, dim));
+	}
+
+	protected double[] encode(double[] vec, double norm)
+	{
+		int d = vec.length;
+		double[] comp = new double[d];
+		if (d == 0)
+			return comp;
+		if (residual == null || residual.length != d)
+		{
+			residual = new double[d];
+			scratch = new double[d];
+		}
+		for (int p = 0; p < d; p++)
+		{
+			residual[p] += vec[p];
+			scratch[p] = Math.abs(residual[p]);
+		}
+		int n = numSent(d);
+		double threshold = select(scratch, d - n);
+		// Strictly larger first, then fill with ties up to n
+		int sent = 0;
+		for (int p = 0; p < d; p++)
+		{
+			if (Math.abs(residual[p]) > threshold)
+			{
+				comp[p] = residual[p];
+				residual[p] = 0.0;
+				sent++;
+			}
+		}
+		for (int p = 0; p < d && sent < n; p++)
+		{
+			if (comp[p] == 0.0 && Math.abs(residual[p]) == threshold)
+			{
+				comp[p] = residual[p];
+				residual[p] = 0.0;
+				sent++;
+			}
+		}
+		return comp;
+	}
+
+	protected long encodedBytes(int dim)
+	{
+		return HEADER_BYTES + 12L * numSent(dim);
+	}
+
+	/**
+	 * Returns the value that would be at position <code>rank</code> if the
+	 * array were sorted in ascending order. The array is reordered.
+	 */
+	private static double select(double[] a, int rank)
+	{
+		int lo = 0, hi = a.length - 1;
+		while (lo < hi)
+		{
+			double pivot = a[(lo + hi) >>> 1];
+			int i = lo, j = hi;
+			while (i <= j)
+			{
+				while (a[i] < pivot) i++;
+				while (a[j] > pivot) j--;
+				if (i <= j)
+				{
+					double tmp = a[i]; a[i] = a[j]; a[j] = tmp;
+					i++; j--;
+				}
+			}
+			if (rank <= j) hi = j;
+			else if (rank >= i) lo = i;
+			else return a[rank];
+		}
+		return a[rank];
+	}
+
+	public Object clone()
+	{
+		TopKCodec c = (TopKCodec)super.clone();
+		c.residual = null;
+		c.scratch = null;
+		return c;
+	}
+}
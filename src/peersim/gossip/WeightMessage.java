@@ -0,0 +1,46 @@
+/*
+ * Peersim-Gadget : A Gadget protocol implementation in peersim based on the paper
+ * Chase Henzel, Haimonti Dutta
+ * GADGET SVM: A Gossip-bAseD sub-GradiEnT SVM Solver   
+ * 
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+
+package peersim.gossip;
+
+import peersim.core.Node;
+
+/**
+ * Class WeightMessage
+ * The message {@link GadgetEDProtocol} sends through the transport: a snapshot
+ * of the sender's weight vector. A push is answered with a reply carrying the
+ * weights of the receiver, so that both ends average.
+ */
+public class WeightMessage
+{
+	/** The node that sent the message */
+	public final Node sender;
+	/** Copy of the sender's weights at sending time */
+	public final double[] weights;
+	/** True if this message answers a push */
+	public final boolean reply;
+
+	public WeightMessage(Node sender, double[] weights, boolean reply)
+	{
+		this.sender = sender;
+		this.weights = weights;
+		this.reply = reply;
+	}
+}
@@ -98,6 +98,21 @@ public class libSVMProtocol implements CDProtocol {
 	private double[] weights;
 	
 
+	/**
+	 * Restores the static state shared by all the instances (iteration counter,
+	 * convergence flags, optimal weights), so that the next simulation run in
+	 * the same JVM starts from scratch. See {@link peersim.Simulator#runInProcess}.
+	 */
+	public static void resetStatic()
+	{
+		flag = false;
+		t = 0;
+		optimizationDone = false;
+		optimalB = null;
+		end = 0;
+		pushsumobserverflag = false;
+	}
+
 	/**
 	 * Default constructor for configurable objects.
 	 */
@@ -258,61 +273,15 @@ public class libSVMProtocol implements CDProtocol {
 		PegasosNode peer = (PegasosNode)selectNeighbor(pn, pid);
 	    //System.out.println("ASG SVM Algorithm: Node "+node.getID()+" is gossiping with Node "+peer.getID()+"....");
 	    // Function to send selected Set
+	    // Each support vector is added to the peer's training data only if it is not
+	    // already there; membership is answered by the index of the peer.
 	    for(int h=0;h<pn.supportVecs.numInstances();h++)
 		{
-			boolean notInSet=true;
-			for(int f=0;f<peer.updatedTrainData.numInstances();f++)
-			{	
-//			  if(pn.supportVecs.instance(h).equals(peer.updatedTrainData.instance(f)))
-//			  {
-//				  notInSet=false;
-//			  }
-			  boolean instEqual=true;	
-			  for(int y=0;y<pn.numFeat;y++)
-			  {
-				  if(pn.supportVecs.instance(h).attribute(y)!=peer.updatedTrainData.instance(f).attribute(y))
-				  {
-				   instEqual=false; 
-				  }
-			  }
-			  if(instEqual==true)
-			  {
-				  notInSet=false;
-			  }			  
-			}
-			//If this support vector is not in the set, then add it to the training data
-			if(notInSet==true)
-			{
-			 peer.updatedTrainData.add(pn.supportVecs.instance(h));	
-			}
+			peer.updatedTrainIndex.add(pn.supportVecs.instance(h), pn.numFeat);
 		}
 	    for(int h1=0;h1<peer.supportVecs.numInstances();h1++)
 		{
-			boolean notInSetPeer=true;
-			for(int f1=0;f1<pn.updatedTrainData.numInstances();f1++)
-			{	
-//			  if(peer.supportVecs.instance(h1).equals(pn.updatedTrainData.instance(f1)))
-//			  {
-//				  notInSetPeer=false;
-//			  }
-				  boolean instEqualASG=true;	
-				  for(int y=0;y<pn.numFeat;y++)
-				  {
-					  if(peer.supportVecs.instance(h1).attribute(y)!=pn.updatedTrainData.instance(f1).attribute(y))
-					  {
-					   instEqualASG=false; 
-					  }
-				  }
-				  if(instEqualASG==true)
-				  {
-					  notInSetPeer=false;
-				  }			  		  	
-			}
-			//If this support vector is not in the set, then add it to the training data
-			if(notInSetPeer==true)
-			{
-			 pn.updatedTrainData.add(peer.supportVecs.instance(h1));	
-			}
+			pn.updatedTrainIndex.add(peer.supportVecs.instance(h1), pn.numFeat);
 		}
 }
 	
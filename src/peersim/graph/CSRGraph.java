@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.graph;
+
+import java.util.*;
+
+/**
+* An immutable graph in compressed sparse row format: the neighbours of
+* node i are <code>target(p)</code> for <code>start(i) &lt;= p &lt;
+* end(i)</code>, in the order they were given. Iterating over them this way
+* does not allocate any object, and {@link GraphAlgorithms} does so when it
+* is given a graph of this class. {@link #isEdge} is a binary search in a
+* sorted copy of the neighbour lists.
+* <p>
+* It is useful to freeze a graph that is observed many times without
+* changing, like the overlay during one cycle
+* (see {@link peersim.core.OverlayGraph#freeze}).
+*/
+public class CSRGraph implements Graph {
+
+
+// ====================== private fields ========================
+// ==============================================================
+
+
+/** The neighbours of node i are at positions offsets[i] to offsets[i+1]-1 */
+private final int[] offsets;
+
+/** The neighbour lists, one after the other */
+private final int[] targets;
+
+/** The neighbour lists, each sorted, for {@link #isEdge} */
+private final int[] sorted;
+
+/** The objects associated with the nodes, might be null */
+private final Object[] nodes;
+
+private final boolean directed;
+
+
+// ====================== public constructors ===================
+// ==============================================================
+
+/**
+* Builds the graph from the given arrays, which are stored by reference and
+* must not be modified afterwards.
+* @param offsets of length n+1; the neighbours of node i are at positions
+* <code>offsets[i]</code> to <code>offsets[i+1]-1</code> of targets.
+* @param targets the neighbour lists, one after the other
+* @param nodes the objects associated with the nodes, or null
+* @param directed if false, the neighbour lists must be symmetric
+*/
+public CSRGraph( int[] offsets, int[] targets, Object[] nodes,
+	boolean directed ) {
+
+	this.offsets = offsets;
+	this.targets = targets;
+	this.nodes = nodes;
+	this.directed = directed;
+	sorted = targets.clone();
+	for(int i=0; i<offsets.length-1; ++i)
+		Arrays.sort(sorted, offsets[i], offsets[i+1]);
+}
+
+// --------------------------------------------------------------
+
+/**
+* Makes a snapshot of the given graph, including its node objects.
+*/
+public CSRGraph( Graph g ) {
+
+	this(offsets(g), targets(g), nodes(g), g.directed());
+}
+
+// --------------------------------------------------------------
+
+private static int[] offsets( Graph g ) {
+
+	int[] offsets = new int[g.size()+1];
+	for(int i=0; i<g.size(); ++i)
+		offsets[i+1] = offsets[i]+g.getNeighbours(i).size();
+	return offsets;
+}
+
+// --------------------------------------------------------------
+
+private static int[] targets( Graph g ) {
+
+	int m = 0;
+	for(int i=0; i<g.size(); ++i) m += g.getNeighbours(i).size();
+	int[] targets = new int[m];
+	int p = 0;
+	for(int i=0; i<g.size(); ++i)
+		for(int j:g.getNeighbours(i)) targets[p++] = j;
+	return targets;
+}
+
+// --------------------------------------------------------------
+
+private static Object[] nodes( Graph g ) {
+
+	Object[] nodes = new Object[g.size()];
+	for(int i=0; i<g.size(); ++i) nodes[i] = g.getNode(i);
+	return nodes;
+}
+
+// --------------------------------------------------------------
+
+/**
+* Returns the undirected version of this graph, with the same neighbours as
+* {@link ConstUndirGraph} would list them: the neighbours of node i
+* followed by the nodes that link to i but are not linked by i, in
+* increasing order. Returns this graph if it is undirected.
+*/
+public CSRGraph undirected() {
+
+	if( !directed ) return this;
+
+	final int n = size();
+	int[] in = new int[n+1];
+	for(int i=0; i<n; ++i)
+		for(int p=offsets[i]; p<offsets[i+1]; ++p)
+			if( !isEdge(targets[p],i) ) in[targets[p]]++;
+
+	int[] uoffsets = new int[n+1];
+	for(int i=0; i<n; ++i)
+		uoffsets[i+1] = uoffsets[i]+degree(i)+in[i];
+	int[] utargets = new int[uoffsets[n]];
+
+	// in[i] becomes the next free position of node i
+	for(int i=0; i<n; ++i)
+	{
+		System.arraycopy(targets, offsets[i], utargets, uoffsets[i],
+			degree(i));
+		in[i] = uoffsets[i]+degree(i);
+	}
+	for(int i=0; i<n; ++i)
+		for(int p=offsets[i]; p<offsets[i+1]; ++p)
+			if( !isEdge(targets[p],i) ) utargets[in[targets[p]]++] = i;
+
+	return new CSRGraph(uoffsets, utargets, nodes, false);
+}
+
+
+// ======================= CSR access ===========================
+// ==============================================================
+
+
+/** The position of the first neighbour of node i */
+public int start(int i) { return offsets[i]; }
+
+// ---------------------------------------------------------------
+
+/** The position after the last neighbour of node i */
+public int end(int i) { return offsets[i+1]; }
+
+// ---------------------------------------------------------------
+
+/** The neighbour at position p */
+public int target(int p) { return targets[p]; }
+
+
+// ======================= Graph implementations ================
+// ==============================================================
+
+
+public boolean isEdge(int i, int j) {
+
+	return Arrays.binarySearch(sorted, offsets[i], offsets[i+1], j) >= 0;
+}
+
+// ---------------------------------------------------------------
+
+/**
+* Returns an unmodifiable view of the neighbour list. Prefer
+* {@link #start}, {@link #end} and {@link #target} which do not box.
+*/
+public Collection<Integer> getNeighbours(int i) {
+
+	return new Neighbours(offsets[i], offsets[i+1]);
+}
+
+// ---------------------------------------------------------------
+
+/** Returns the object associated with the node, null if there is none */
+public Object getNode(int i) { return (nodes == null ? null : nodes[i]); }
+
+// ---------------------------------------------------------------
+
+/** Returns null always */
+public Object getEdge(int i, int j) { return null; }
+
+// ---------------------------------------------------------------
+
+public int size() { return offsets.length-1; }
+
+// --------------------------------------------------------------------
+
+public boolean directed() { return directed; }
+
+// --------------------------------------------------------------------
+
+/** not supported */
+public boolean setEdge( int i, int j ) {
+
+	throw new UnsupportedOperationException();
+}
+
+// ---------------------------------------------------------------
+
+/** not supported */
+public boolean clearEdge( int i, int j ) {
+
+	throw new UnsupportedOperationException();
+}
+
+// ---------------------------------------------------------------
+
+public int degree(int i) { return offsets[i+1]-offsets[i]; }
+
+
+// ======================= inner classes ========================
+// ==============================================================
+
+
+/** A view of a range of {@link #targets} */
+private class Neighbours extends AbstractList<Integer>
+implements RandomAccess {
+
+	private final int from, to;
+
+	Neighbours(int from, int to) { this.from = from; this.to = to; }
+
+	public Integer get(int k) {
+
+		if( k < 0 || k >= to-from )
+			throw new IndexOutOfBoundsException("Index: "+k);
+		return targets[from+k];
+	}
+
+	public int size() { return to-from; }
+}
+
+}
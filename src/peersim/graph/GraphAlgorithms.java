@@ -24,6 +24,8 @@ import java.util.*;
 * Implements graph algorithms. The current implementation is NOT thread
 * safe. Some algorithms are not static, many times the result of an
 * algorithm can be read from non-static fields.
+* If the graph is a {@link CSRGraph}, the neighbours are read directly
+* from its arrays, without allocating objects.
 */
 public class GraphAlgorithms {
 
@@ -37,6 +39,12 @@ private int counter=0;
 
 private Graph g=null;
 
+/** {@link #g} if it is a {@link CSRGraph}, otherwise null */
+private CSRGraph csr=null;
+
+/** The queue of the breadth-first search */
+private int[] queue = null;
+
 public final static int WHITE=0;
 public final static int GREY=1;
 public final static int BLACK=2;
@@ -72,16 +80,14 @@ private void dfs( int from ) {
 
 	color[from]=GREY;
 
-	for(int j:g.getNeighbours(from))
+	if( csr != null )
 	{
-		if( color[j]==WHITE )
-		{
-			dfs(j);
-		}
-		else
-		{
-			if( color[j]<0 ) cluster.add(color[j]);
-		}
+		for(int p=csr.start(from); p<csr.end(from); ++p)
+			dfsVisit(csr.target(p));
+	}
+	else
+	{
+		for(int j:g.getNeighbours(from)) dfsVisit(j);
 	}
 
 	color[from]=BLACK;
@@ -89,6 +95,21 @@ private void dfs( int from ) {
 
 // --------------------------------------------------------------------
 
+/** Visits the edge to j in {@link #dfs}. */
+private void dfsVisit( int j ) {
+
+	if( color[j]==WHITE )
+	{
+		dfs(j);
+	}
+	else
+	{
+		if( color[j]<0 ) cluster.add(color[j]);
+	}
+}
+
+// --------------------------------------------------------------------
+
 /**
 * Collects nodes accessible from node "from" using breadth-first search.
 * Its parameters and side-effects are identical to those of dfs.
@@ -101,35 +122,28 @@ private void dfs( int from ) {
 */
 private void bfs( int from ) {
 
-	List<Integer> q = new LinkedList<Integer>();
-	int u, du;
+	// every node enters the queue at most once, when it becomes GREY
+	if( queue == null || queue.length < g.size() ) queue = new int[g.size()];
+	int head = 0, tail = 0;
 	
-	q.add(from);
-	q.add(0);
+	queue[tail++] = from;
 	if( d != null ) d[from] = 0;
 
 	color[from]=GREY;
 
-	while( ! q.isEmpty() )
+	while( head < tail )
 	{
-		u = q.remove(0).intValue();
-		du = q.remove(0).intValue();
+		final int u = queue[head++];
+		final int du = ( d != null ? d[u] : 0 );
 		
-		for(int j:g.getNeighbours(u))
+		if( csr != null )
 		{
-			if( color[j]==WHITE )
-			{
-				color[j]=GREY;
-				
-				q.add(j);
-				q.add(du+1);
-				if( d != null ) d[j] = du+1;
-			}
-			else
-			{
-				if( color[j]<0 )
-					cluster.add(color[j]);
-			}
+			for(int p=csr.start(u); p<csr.end(u); ++p)
+				tail = bfsVisit(csr.target(p), du, tail);
+		}
+		else
+		{
+			for(int j:g.getNeighbours(u)) tail = bfsVisit(j, du, tail);
 		}
 		color[u]=BLACK;
 	}
@@ -137,6 +151,29 @@ private void bfs( int from ) {
 
 // --------------------------------------------------------------------
 
+/**
+* Visits the edge to j from a node at distance du in {@link #bfs}.
+* @return the new tail of the queue
+*/
+private int bfsVisit( int j, int du, int tail ) {
+
+	if( color[j]==WHITE )
+	{
+		color[j]=GREY;
+		
+		queue[tail++] = j;
+		if( d != null ) d[j] = du+1;
+	}
+	else
+	{
+		if( color[j]<0 )
+			cluster.add(color[j]);
+	}
+	return tail;
+}
+
+// --------------------------------------------------------------------
+
 /** The recursive part of the Tarjan algorithm. */
 private void tarjanVisit(int i) {
 
@@ -144,17 +181,14 @@ private void tarjanVisit(int i) {
 	root[i]=i;
 	stack.push(i);
 	
-	for(int j:g.getNeighbours(i))
+	if( csr != null )
 	{
-		if( color[j]==WHITE )
-		{
-			tarjanVisit(j);
-		}
-		if( color[j]>0 && color[root[j]]<color[root[i]] )
-		// inComponent is false and have to update root
-		{
-			root[i]=root[j];
-		}
+		for(int p=csr.start(i); p<csr.end(i); ++p)
+			tarjanEdge(i, csr.target(p));
+	}
+	else
+	{
+		for(int j:g.getNeighbours(i)) tarjanEdge(i, j);
 	}
 
 	int j;
@@ -170,6 +204,31 @@ private void tarjanVisit(int i) {
 	}
 }
 
+// --------------------------------------------------------------------
+
+/** Visits the edge (i,j) in {@link #tarjanVisit}. */
+private void tarjanEdge(int i, int j) {
+
+	if( color[j]==WHITE )
+	{
+		tarjanVisit(j);
+	}
+	if( color[j]>0 && color[root[j]]<color[root[i]] )
+	// inComponent is false and have to update root
+	{
+		root[i]=root[j];
+	}
+}
+
+// --------------------------------------------------------------------
+
+/** Sets {@link #g} and {@link #csr}. */
+private void setGraph( Graph g ) {
+
+	this.g=g;
+	csr = ( g instanceof CSRGraph ? (CSRGraph) g : null );
+}
+
 // =================== public methods ================================
 // ====================================================================
 
@@ -180,7 +239,7 @@ private void tarjanVisit(int i) {
 */
 public Map weaklyConnectedClusters( Graph g ) {
 
-	this.g=g;
+	setGraph(g);
 	if( cluster == null ) cluster = new HashSet<Integer>();
 	if( color==null || color.length<g.size() ) color = new int[g.size()];
 
@@ -222,7 +281,7 @@ public Map weaklyConnectedClusters( Graph g ) {
 */
 public void dist( Graph g, int i ) {
 
-	this.g=g;
+	setGraph(g);
 	if( d==null || d.length<g.size() ) d = new int[g.size()];
 	if( color==null || color.length<g.size() ) color = new int[g.size()];
 	
@@ -251,6 +310,22 @@ public static double clustering( Graph g, int i ) {
 	if( g.directed() ) throw new IllegalArgumentException(
 		"graph is directed");
 		
+	if( g instanceof CSRGraph )
+	{
+		final CSRGraph csr = (CSRGraph) g;
+		final int s = csr.start(i), e = csr.end(i), n = e-s;
+		
+		if( n==1 ) return 1.0;
+		
+		int edges = 0;
+		
+		for(int j=s; j<e; ++j)
+		for(int k=j+1; k<e; ++k)
+			if( csr.isEdge(csr.target(j),csr.target(k)) ) ++edges;
+
+		return ((edges*2.0)/n)/(n-1);
+	}
+	
 	Object[] n = g.getNeighbours(i).toArray();
 	
 	if( n.length==1 ) return 1.0;
@@ -290,11 +365,20 @@ public static void multicast( Graph g, int[] b, Random r ) {
 	{
 		for(int i=0; i<c2.length; ++i)
 		{
-			neighbours=g.getNeighbours(i);
-			Iterator<Integer> it=neighbours.iterator();
-			for(int j=r.nextInt(neighbours.size()); j>0; --j)
-				it.next();
-			int randn = it.next();
+			int randn;
+			if( g instanceof CSRGraph )
+			{
+				final CSRGraph csr = (CSRGraph) g;
+				randn = csr.target(csr.start(i)+r.nextInt(csr.degree(i)));
+			}
+			else
+			{
+				neighbours=g.getNeighbours(i);
+				Iterator<Integer> it=neighbours.iterator();
+				for(int j=r.nextInt(neighbours.size()); j>0; --j)
+					it.next();
+				randn = it.next();
+			}
 			
 			// push pull exchane with random neighbour
 			if( c1[i]==BLACK ) //c2[i] is black too
@@ -347,7 +431,7 @@ public void flooding( Graph g, int[] b, int k ) {
 //XXX implement a non-recursive version ASAP!!!
 public Map tarjan( Graph g ) {
 	
-	this.g=g;
+	setGraph(g);
 	stack.clear();
 	if( root==null || root.length<g.size() ) root = new int[g.size()];
 	if( color==null || color.length<g.size() ) color = new int[g.size()];
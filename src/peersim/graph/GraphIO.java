@@ -20,6 +20,8 @@ package peersim.graph;
 
 import java.util.*;
 import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 
 /**
 * Implements static methods to load and write graphs.
@@ -27,6 +29,39 @@ import java.io.*;
 public class GraphIO {
 private GraphIO() {}
 
+/**
+* The first four bytes of a binary neighbor list, see
+* {@link #writeBinaryNeighborList}.
+*/
+public static final int BINARY_MAGIC = 0x50534e4c; // "PSNL"
+
+/** The version of the binary neighbor list format */
+private static final int BINARY_VERSION = 1;
+
+/** The largest part of a binary file that is mapped at once */
+private static final long MAP_WINDOW = 1L<<28;
+
+// ================== public interfaces =============================
+// ==================================================================
+
+
+/**
+* Receives the neighbor lists read by {@link #readNeighborList} and
+* {@link #readBinaryNeighborList}, one line or record at a time.
+*/
+public interface NeighborListHandler {
+
+	/**
+	* Called for each line or record. The array is reused for the next
+	* line, so it must not be stored.
+	* @param from the first node ID of the line
+	* @param to the following node IDs are <code>to[0]</code> to
+	* <code>to[count-1]</code>
+	* @param count the number of neighbors
+	*/
+	void neighbors( int from, int[] to, int count );
+}
+
 
 // ================== public static methods =========================
 // ==================================================================
@@ -40,10 +75,11 @@ public static void writeEdgeList( Graph g, PrintStream out ) {
 
 	for(int i=0; i<g.size(); ++i)
 	{
-		Iterator it=g.getNeighbours(i).iterator();
-		while(it.hasNext())
+		for(int j: g.getNeighbours(i))
 		{
-			out.println(i+" "+it.next());
+			out.print(i);
+			out.print(' ');
+			out.println(j);
 		}
 	}
 }
@@ -60,11 +96,12 @@ public static void writeNeighborList( Graph g, PrintStream out ) {
 	
 	for(int i=0; i<g.size(); ++i)
 	{
-		out.print(i+" ");
-		Iterator it=g.getNeighbours(i).iterator();
-		while(it.hasNext())
+		out.print(i);
+		out.print(' ');
+		for(int j: g.getNeighbours(i))
 		{
-			out.print(it.next()+" ");
+			out.print(j);
+			out.print(' ');
 		}
 		out.println();
 	}
@@ -72,6 +109,34 @@ public static void writeNeighborList( Graph g, PrintStream out ) {
 
 // ------------------------------------------------------------------
 
+/**
+* Writes graph in binary neighbor list format. It is the binary
+* equivalent of {@link #writeNeighborList}, much faster to read, in
+* particular with {@link #readBinaryNeighborList}.
+* All numbers are big endian 32 bit ints: the file begins with
+* {@link #BINARY_MAGIC} and the format version (1), followed by one
+* record for each node: its ID, the number of its neighbors, and the IDs of
+* the neighbors. The stream is flushed but not closed.
+*/
+public static void writeBinaryNeighborList( Graph g, OutputStream out )
+throws IOException {
+
+	DataOutputStream dos = new DataOutputStream(
+		new BufferedOutputStream(out, 1<<16));
+	dos.writeInt(BINARY_MAGIC);
+	dos.writeInt(BINARY_VERSION);
+	for(int i=0; i<g.size(); ++i)
+	{
+		Collection<Integer> neighbors = g.getNeighbours(i);
+		dos.writeInt(i);
+		dos.writeInt(neighbors.size());
+		for(int j: neighbors) dos.writeInt(j);
+	}
+	dos.flush();
+}
+
+// ------------------------------------------------------------------
+
 /**
 * Saves the given graph to
 * the given stream in DOT format. Good for the graphviz package.
@@ -256,7 +321,8 @@ throws IOException {
 	
 	NeighbourListGraph gr = new NeighbourListGraph( direction != 2 );
 	FileInputStream fis = new FileInputStream(file);
-	DataInputStream dis = new DataInputStream(fis);
+	DataInputStream dis = new DataInputStream(
+		new BufferedInputStream(fis, 1<<16));
 
 	dis.readByte();
 	dis.readByte();
@@ -291,5 +357,263 @@ throws IOException {
 }
 
 
+
+// ------------------------------------------------------------------
+
+/**
+* Reads a graph in neighbor list format, as written by
+* {@link #writeNeighborList}, passing each line to the handler.
+* Each line begins with a node ID followed by a list of neighbors,
+* separated by whitespace. Lines starting with a "#" character and
+* empty lines are ignored. The file is parsed as it is read, without
+* creating objects for the lines or the numbers, so its size is not
+* limited by the memory.
+* @throws IOException if the file cannot be read or a line contains
+* something other than integers
+*/
+public static void readNeighborList( String file, NeighborListHandler h )
+throws IOException {
+
+	InputStream in = new FileInputStream(file);
+	try
+	{
+		final byte[] buf = new byte[1<<16];
+		final NeighborListParser parser = new NeighborListParser(file, h);
+		int len;
+		while( (len=in.read(buf)) >= 0 )
+		{
+			for(int p=0; p<len; ++p) parser.put(buf[p]);
+		}
+		// the last line might not be terminated
+		parser.put('\n');
+	}
+	finally
+	{
+		in.close();
+	}
+}
+
+// ------------------------------------------------------------------
+
+/**
+* Reads a graph written by {@link #writeBinaryNeighborList}, passing each
+* record to the handler. The file is mapped in memory through a
+* {@link FileChannel}, a window at a time, so reading it costs little more
+* than copying the ints, and its size is not limited by the memory.
+* @throws IOException if the file cannot be read or is not in the
+* binary neighbor list format
+*/
+public static void readBinaryNeighborList( String file,
+NeighborListHandler h ) throws IOException {
+
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try
+	{
+		MappedInts in = new MappedInts(raf.getChannel());
+		if( in.remaining() < 2 || in.next() != BINARY_MAGIC )
+			throw new IOException(file+": not a binary neighbor list");
+		final int version = in.next();
+		if( version != BINARY_VERSION )
+			throw new IOException(file+": unknown version "+version);
+		
+		int[] to = new int[16];
+		while( in.remaining() > 0 )
+		{
+			if( in.remaining() < 2 )
+				throw new IOException(file+": truncated");
+			final int from = in.next();
+			final int count = in.next();
+			if( count < 0 || count > in.remaining() )
+				throw new IOException(file+": truncated record of node "+
+				from);
+			if( count > to.length )
+				to = new int[Math.max(count, 2*to.length)];
+			in.next(to, count);
+			h.neighbors(from, to, count);
+		}
+	}
+	finally
+	{
+		raf.close();
+	}
+}
+
+// ------------------------------------------------------------------
+
+/**
+* Returns true if the given file begins with {@link #BINARY_MAGIC}, that
+* is, it should be read with {@link #readBinaryNeighborList}.
+*/
+public static boolean isBinaryNeighborList( String file ) throws IOException {
+
+	DataInputStream dis = new DataInputStream(new FileInputStream(file));
+	try
+	{
+		return dis.readInt() == BINARY_MAGIC;
+	}
+	catch( EOFException e )
+	{
+		return false;
+	}
+	finally
+	{
+		dis.close();
+	}
+}
+
+// ==================================================================
+
+/**
+* Parses a neighbor list in text format one character at a time, see
+* {@link #readNeighborList}.
+*/
+private static class NeighborListParser {
+
+	private final String file;
+
+	private final NeighborListHandler h;
+
+	/** The neighbors on the current line */
+	private int[] to = new int[16];
+
+	/** Numbers on the current line, excluding the first; -1 if none */
+	private int count = -1;
+
+	/** The first number of the current line */
+	private int from = 0;
+
+	private int lineno = 1;
+
+	private boolean linestart = true, comment = false;
+
+	/** State of the current number */
+	private boolean innum = false, sign = false, negative = false;
+
+	private long num = 0;
+
+	NeighborListParser( String file, NeighborListHandler h ) {
+
+		this.file = file;
+		this.h = h;
+	}
+
+	void put( int c ) throws IOException {
+
+		if( comment && c != '\n' ) return;
+		if( linestart && c == '#' )
+		{
+			comment = true;
+			return;
+		}
+		linestart = false;
+
+		if( c >= '0' && c <= '9' )
+		{
+			num = num*10 + (c-'0');
+			if( num > Integer.MAX_VALUE+1L ) error("number out of range");
+			innum = true;
+			return;
+		}
+		if( (c == '-' || c == '+') && !innum && !sign )
+		{
+			sign = true;
+			negative = (c == '-');
+			return;
+		}
+		if( (c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != '\f')
+			|| (sign && !innum) )
+			error("unexpected character '"+(char)c+"'");
+
+		if( innum ) endNumber();
+		if( c == '\n' )
+		{
+			if( count >= 0 ) h.neighbors(from, to, count);
+			count = -1;
+			++lineno;
+			linestart = true;
+			comment = false;
+		}
+	}
+
+	private void endNumber() throws IOException {
+
+		final long v = (negative ? -num : num);
+		if( v > Integer.MAX_VALUE ) error("number out of range");
+		if( count < 0 ) from = (int) v;
+		else
+		{
+			if( count == to.length ) to = Arrays.copyOf(to, 2*to.length);
+			to[count] = (int) v;
+		}
+		++count;
+		num = 0;
+		innum = sign = negative = false;
+	}
+
+	private void error( String msg ) throws IOException {
+
+		throw new IOException(file+":"+lineno+": "+msg);
+	}
+}
+
+// ==================================================================
+
+/**
+* Reads the big endian ints of a file, mapping a window of at most
+* {@link #MAP_WINDOW} bytes at a time.
+*/
+private static class MappedInts {
+
+	private final FileChannel ch;
+	
+	/** Number of ints in the file */
+	private final long size;
+
+	/** Index of the first int of the window */
+	private long start = 0;
+	
+	private IntBuffer buf = null;
+
+	MappedInts( FileChannel ch ) throws IOException {
+
+		this.ch = ch;
+		if( ch.size() % 4 != 0 )
+			throw new IOException("truncated file");
+		size = ch.size()/4;
+		map(0);
+	}
+
+	/** Maps the window starting at the given int */
+	private void map( long from ) throws IOException {
+
+		start = from;
+		final long bytes = Math.min(MAP_WINDOW, 4*(size-from));
+		buf = ch.map(FileChannel.MapMode.READ_ONLY, 4*from,
+			bytes).asIntBuffer();
+	}
+
+	/** Number of ints still to be read */
+	long remaining() { return size - start - buf.position(); }
+
+	int next() throws IOException {
+
+		if( !buf.hasRemaining() ) map(start+buf.position());
+		return buf.get();
+	}
+
+	/** Reads the next n ints into the array */
+	void next( int[] dst, int n ) throws IOException {
+
+		int off = 0;
+		while( off < n )
+		{
+			if( !buf.hasRemaining() ) map(start+buf.position());
+			final int k = Math.min(n-off, buf.remaining());
+			buf.get(dst, off, k);
+			off += k;
+		}
+	}
+}
+
 }
 
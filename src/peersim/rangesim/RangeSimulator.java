@@ -20,6 +20,7 @@ package peersim.rangesim;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import peersim.*;
 import peersim.config.*;
@@ -81,6 +82,31 @@ java peersim.rangesim.RangeSimulator config.file jvm.options=-Xmx256m
  * The new JVM inherits the same classpath as the JVM running the
  * RangeSimulator. The {@value #PAR_JVM} parameter can be used to
  * specify additional classpath specification.
+ * <p>
+ * By default the experiments are run one at a time. The {@value #PAR_THREADS}
+ * parameter on the command line runs up to that many experiments at once:
+<pre>
+java peersim.rangesim.RangeSimulator config.file rangesim.threads=8
+</pre>
+ * The experiments and their seeds are the same as in the sequential mode, and
+ * so is the output: the output of each experiment is printed as one block, in
+ * the order of the experiments, while the experiments that are not yet due are
+ * buffered. An experiment whose JVM cannot be started or exits with an error
+ * is reported, and does not stop the others.
+ * <p>
+ * The {@value #PAR_INPROCESS} parameter on the command line runs all the
+ * experiments in the JVM of the RangeSimulator instead, one after the other,
+ * through {@link Simulator#runInProcess}:
+<pre>
+java peersim.rangesim.RangeSimulator config.file rangesim.inprocess
+</pre>
+ * This saves the start-up of a JVM per experiment and lets the experiments
+ * share the classes and the data that are already loaded, which pays off
+ * for sweeps of many short experiments. The static state of the simulator is
+ * reset between experiments, but application classes must provide their own
+ * reset hook (see {@link Simulator#RESET_METHOD}). The {@value #PAR_JVM}
+ * parameter is ignored, and so is {@value #PAR_THREADS}, since experiments
+ * share static state and cannot overlap.
  * 
  * @author Alberto Montresor
  * @version $Revision: 1.11 $
@@ -107,6 +133,20 @@ private static final String PAR_RANGE = "range";
  */
 public static final String PAR_JVM = "jvm.options";
 
+/**
+ * This config property sets the number of experiments that are run at the
+ * same time, each in its own JVM. Defaults to 1.
+ * @config
+ */
+public static final String PAR_THREADS = "rangesim.threads";
+
+/**
+ * If present, the experiments are run in the current JVM, one after the
+ * other, instead of forking a JVM for each of them.
+ * @config
+ */
+public static final String PAR_INPROCESS = "rangesim.inprocess";
+
 
 // --------------------------------------------------------------------------
 // Static variables
@@ -127,6 +167,16 @@ private String[] args;
 /** The current process that is executed */
 private Process p;
 
+/** Number of experiments run at the same time */
+private int threads;
+
+/** True if the experiments are run in the current JVM */
+private boolean inprocess;
+
+/** The processes of the experiments running in parallel mode */
+private final Set<Process> running =
+	Collections.synchronizedSet(new HashSet<Process>());
+
 
 // --------------------------------------------------------------------------
 // Main
@@ -169,6 +219,14 @@ public RangeSimulator(String[] args)
 	else
 		jvmoptions = opt.split(" ");
 
+	threads = Configuration.getInt(PAR_THREADS, 1);
+	inprocess = Configuration.contains(PAR_INPROCESS);
+	if (inprocess && threads > 1) {
+		System.err.println("RangeSimulator: " + PAR_THREADS
+				+ " is ignored when " + PAR_INPROCESS + " is set");
+		threads = 1;
+	}
+
 	// Parse range parameters
 	parseRanges();
 
@@ -282,6 +340,7 @@ private void doExperiments(String[] args)
 	
 	// The class to be run in the forked JVM
 	list.add("peersim.Simulator");
+	int startargs = list.size();
 	
 	// Parameters specified on the command line
 	for (int i=0; i < args.length; i++) {
@@ -294,6 +353,8 @@ private void doExperiments(String[] args)
 
 	// Activate redirection to separate stdout from stderr
 	list.add(Simulator.PAR_REDIRECT+"="+TaggedOutputStream.class.getCanonicalName());
+	if (inprocess)
+		list.add(Simulator.PAR_REDIRECT+"."+TaggedOutputStream.PAR_NOTAG+"=1");
 	int startlog = list.size();
 	list.add(""); 
 	
@@ -307,6 +368,7 @@ private void doExperiments(String[] args)
 		list.add("");
 		
 	// Execute with different values
+	List<Experiment> pending = new ArrayList<Experiment>();
 	int[] idx = new int[values.length]; // Initialized to 0
 	while (idx[0] < values[0].length) {
 
@@ -330,14 +392,213 @@ private void doExperiments(String[] args)
 		long seed = CommonState.r.nextLong();
 		list.set(startseed, CommonState.PAR_SEED+"="+seed);
 
-		System.err.println("Experiment: " + log);
-		
-		executeProcess(list);
+		if (threads > 1 || inprocess) {
+			pending.add(new Experiment(list.toArray(new String[list.size()]),
+					log.toString()));
+		} else {
+			System.err.println("Experiment: " + log);
+			executeProcess(list);
+		}
 
 		// Increment values
 		nextValues(idx, values);
 	
 	}
+	if (inprocess)
+		runInProcess(pending, startargs);
+	else if (threads > 1)
+		runParallel(pending);
+}
+
+//--------------------------------------------------------------------
+
+/**
+ * Runs the given experiments one after the other in the current JVM.
+ * All the command lines, and so the seeds, must have been generated
+ * before, since the configuration and the random generator are replaced
+ * by each experiment.
+ * @param from index of the first simulator argument in the command lines
+ */
+private void runInProcess(List<Experiment> experiments, int from)
+{
+	int failed = 0;
+	for (Experiment e : experiments) {
+		System.err.println("Experiment: " + e.log);
+		try {
+			Simulator.runInProcess(
+					Arrays.copyOfRange(e.cmd, from, e.cmd.length));
+		} catch (Throwable t) {
+			failed++;
+			t.printStackTrace();
+			System.err.println("Experiment failed: " + e.log + "(" + t + ")");
+		}
+	}
+	if (failed > 0)
+		System.err.println(failed + " of " + experiments.size()
+				+ " experiments failed");
+}
+
+//--------------------------------------------------------------------
+
+/**
+ * Runs the given experiments on a pool of {@link #threads} workers and
+ * prints their output in order, each experiment as one block.
+ */
+private void runParallel(List<Experiment> experiments)
+{
+	ExecutorService pool = Executors.newFixedThreadPool(threads);
+	for (Experiment e : experiments)
+		pool.execute(e);
+	pool.shutdown();
+
+	int failed = 0;
+	for (Experiment e : experiments) {
+		System.err.println("Experiment: " + e.log);
+		e.goLive();
+		String failure = e.waitFor();
+		if (failure != null) {
+			failed++;
+			System.err.println("Experiment failed: " + e.log + "(" + failure + ")");
+		}
+	}
+	if (failed > 0)
+		System.err.println(failed + " of " + experiments.size()
+				+ " experiments failed");
+}
+
+//--------------------------------------------------------------------
+
+/**
+ * Starts the JVM of the given command line. We try to run the same JVM as
+ * the current one. If not possible, we use the first java command found in
+ * the path.
+ */
+private static Process startProcess(String[] cmd) throws IOException
+{
+	try {
+		ProcessBuilder pb = new ProcessBuilder(cmd);
+		pb.redirectErrorStream(true);
+		return pb.start();
+	} catch (IOException e1) {
+		String[] retry = cmd.clone();
+		retry[0] = "java";
+		ProcessBuilder pb = new ProcessBuilder(retry);
+		pb.redirectErrorStream(true);
+		return pb.start();
+	}
+}
+
+//--------------------------------------------------------------------
+
+/**
+ * Prints a line read from a forked JVM, to System.out if it carries the
+ * {@link TaggedOutputStream#TAG}, to System.err otherwise.
+ */
+private static void printLine(String line)
+{
+	if (line.length() == 0) {
+		System.out.println();
+	} else {
+		int last = line.charAt(line.length()-1);
+		if (last != TaggedOutputStream.TAG) {
+			System.err.println(line);
+		} else {
+			line = line.substring(0, line.length()-1);
+			System.out.println(line);
+		}
+	}
+}
+
+//--------------------------------------------------------------------
+
+/**
+ * One experiment of the parallel mode. The worker thread runs the JVM and
+ * collects its output; the output is buffered until the main thread calls
+ * {@link #goLive()}, then it is printed as it arrives.
+ */
+private class Experiment implements Runnable
+{
+	final String[] cmd;
+	final String log;
+
+	/** Output lines not printed yet */
+	private final List<String> buffer = new ArrayList<String>();
+	/** True once this is the experiment whose output is printed */
+	private boolean live = false;
+	/** Null if the experiment succeeded; published by {@link #done} */
+	private String failure = null;
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	Experiment(String[] cmd, String log)
+	{
+		this.cmd = cmd;
+		this.log = log;
+	}
+
+	public void run()
+	{
+		Process proc = null;
+		try {
+			proc = startProcess(cmd);
+			running.add(proc);
+			BufferedReader toprint = new BufferedReader(
+					new InputStreamReader(proc.getInputStream()));
+			String line;
+			while ((line = toprint.readLine()) != null)
+				output(line);
+			int exit = proc.waitFor();
+			if (exit != 0)
+				failure = "exit code " + exit;
+		} catch (IOException e) {
+			failure = (proc == null) ? "unable to launch a Java virtual machine"
+					: e.toString();
+		} catch (InterruptedException e) {
+			failure = "interrupted";
+		} catch (RuntimeException e) {
+			failure = e.toString();
+		} finally {
+			if (proc != null) {
+				running.remove(proc);
+				try {
+					proc.getErrorStream().close();
+					proc.getInputStream().close();
+					proc.getOutputStream().close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				proc.destroy();
+			}
+			done.countDown();
+		}
+	}
+
+	private synchronized void output(String line)
+	{
+		if (live)
+			printLine(line);
+		else
+			buffer.add(line);
+	}
+
+	/** Prints the buffered output, and any later output as it arrives. */
+	synchronized void goLive()
+	{
+		for (String line : buffer)
+			printLine(line);
+		buffer.clear();
+		live = true;
+	}
+
+	/** Waits for the end of the experiment and returns its failure, if any. */
+	String waitFor()
+	{
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return failure;
+	}
 }
 
 //--------------------------------------------------------------------
@@ -376,17 +637,7 @@ private void executeProcess(List<String> list)
 			.getInputStream()));
 	String line;
 	while ((line = getLine(toprint)) != null) {
-		if (line.length() == 0) {
-			System.out.println();
-		} else {
-			int last = line.charAt(line.length()-1);
-			if (last != TaggedOutputStream.TAG) {
-				System.err.println(line);
-			} else {
-				line = line.substring(0, line.length()-1);
-				System.out.println(line);
-			}
-		}
+		printLine(line);
 	}
 
 	// We close all the files and we destroy the process. They are not 
@@ -447,6 +698,10 @@ public void doStop()
 {
 	if (p != null)
 		p.destroy();
+	synchronized (running) {
+		for (Process proc : running)
+			proc.destroy();
+	}
 }
 
 /**
@@ -455,7 +710,14 @@ public void doStop()
  */
 public void join() throws InterruptedException
 {
-	p.waitFor();
+	if (p != null)
+		p.waitFor();
+	Process[] procs;
+	synchronized (running) {
+		procs = running.toArray(new Process[running.size()]);
+	}
+	for (Process proc : procs)
+		proc.waitFor();
 }
 
 }
@@ -30,7 +30,9 @@ import peersim.core.*;
  * with a tag character. This is used to discriminate
  * among standard error and standard output. This 
  * feature is needed for launching new JVMs; it should
- * not be used for other purposes. 
+ * not be used for other purposes. When the experiments run in the
+ * same JVM, parameter {@value #PAR_NOTAG} disables the tag and only the
+ * ranges are inserted.
  * 
  * @author Alberto Montresor
  * @version $Revision: 1.5 $
@@ -69,6 +71,14 @@ public static final String PAR_RANGES = "ranges";
  */
 public static final String PAR_TIME = "simulation.timed-observers";
 
+/**
+ * If present, lines are not augmented with the {@link #TAG} character.
+ * The full name of this configuration string is prefixed by
+ * {@value peersim.Simulator#PAR_REDIRECT}.
+ * @config
+ */
+public static final String PAR_NOTAG = "notag";
+
 
 //--------------------------------------------------------------------------
 //Fields
@@ -89,6 +99,9 @@ private final String ranges;
 /** The value of the PAR_TIME parameter */
 private final ArrayList<String> obstime;
 
+/** False if the PAR_NOTAG parameter is present */
+private final boolean tag;
+
 //--------------------------------------------------------------------------
 //Initialization
 //--------------------------------------------------------------------------
@@ -108,6 +121,7 @@ public TaggedOutputStream(String prefix)
 		obstime.add("control." + obs[i]);
 	}
 	ranges = Configuration.getString(prefix + "." + PAR_RANGES, "");
+	tag = !Configuration.contains(prefix + "." + PAR_NOTAG);
 	stdout = System.out;
 	size = 0;
 }
@@ -128,7 +142,7 @@ public synchronized void write(byte[] b, int off, int len)
 	int last = off+len;
 	for (int i=off; i < last; i++) {
 		if (b[i] == '\n') {
-			buffer[size++] = TAG;
+			if (tag) buffer[size++] = TAG;
 			buffer[size++] = b[i];
 			printLine();
 		}  else {
@@ -147,7 +161,7 @@ public synchronized void write(int b)
 		buffer = tmp;
 	}
 	if (b == '\n') {
-		buffer[size++] = TAG;
+		if (tag) buffer[size++] = TAG;
 		buffer[size++] = (byte) b;
 		printLine();
 	}  else {
@@ -157,22 +171,27 @@ public synchronized void write(int b)
 
 /** 
  * Actually prints a line, inserting ranges and time
- * when needed.
+ * when needed. The line is written with a single call and flushed, so
+ * that it cannot be split by output written to standard error in the
+ * meantime, which would lose the tag.
  */
 private void printLine()
 {
 	String line = new String(buffer, 0, size);
 	String[] parts = line.split(":");
 	if (parts.length == 2) {
-		stdout.print(parts[0]);
-		stdout.print(": ");
-		stdout.print(ranges);
+		StringBuilder sb = new StringBuilder(line.length() + ranges.length() + 32);
+		sb.append(parts[0]);
+		sb.append(": ");
+		sb.append(ranges);
 		if (obstime.contains(parts[0]))
-			stdout.print(" TIME " + CommonState.getTime() + " ");
-		stdout.print(parts[1]);
+			sb.append(" TIME " + CommonState.getTime() + " ");
+		sb.append(parts[1]);
+		stdout.print(sb);
 	} else {
 		stdout.print(line);
 	}
+	stdout.flush();
 	size = 0;
 }
 
@@ -20,6 +20,7 @@ package peersim.reports;
 
 import peersim.config.*;
 import peersim.core.*;
+import peersim.graph.GraphAlgorithms;
 import peersim.util.*;
 
 /**
@@ -65,14 +66,20 @@ private static final String PAR_N = "n";
  */
 private static final String PAR_STATS = "stats";
 
+/**
+ * The number of threads running the breadth-first searches. Defaults to 1.
+ * The result does not depend on it.
+ * @config
+ */
+private static final String PAR_THREADS = "threads";
+
 private final int maxd;
 
 private final int n;
 
 private final boolean stats;
 
-/** working variable */
-private final int[] b;
+private final int threads;
 
 private final RandPermutation rp = new RandPermutation(CommonState.r);
 
@@ -90,7 +97,7 @@ public BallExpansion(String name)
 	maxd = Configuration.getInt(name + "." + PAR_MAXD, Network.size());
 	n = Configuration.getInt(name + "." + PAR_N, 1000);
 	stats = Configuration.contains(name + "." + PAR_STATS);
-	b = new int[maxd];
+	threads = Configuration.getInt(name + "." + PAR_THREADS, 1);
 }
 
 // ====================== methods ======================================
@@ -114,6 +121,7 @@ public BallExpansion(String name)
 * necessary.
 * Finally, note that the {@value #PAR_N} nodes are not guaranteed to be the
 * same nodes over consecutive calls to this method.
+* The searches from the nodes are run by {@value #PAR_THREADS} threads.
 * @return always false
 */
 public boolean execute() {
@@ -121,34 +129,56 @@ public boolean execute() {
 	updateGraph();
 	System.out.print(name + ": ");
 	rp.reset(g.size());
+	final int[] from = new int[Math.min(n, g.size())];
+	for (int i = 0; i < from.length; ++i)
+		from[i] = rp.next();
+
+	// balls[i][k] is the number of nodes at distance k from from[i]
+	final int[][] balls = new int[from.length][];
+	final int[] unreachable = new int[from.length];
+	parallel(threads, from.length, new Work() {
+		public void run(GraphAlgorithms ga, int i) {
+			ga.dist(g, from[i]);
+			int max = 0;
+			for (int j = 0; j < g.size(); j++)
+				max = Math.max(max, ga.d[j]);
+			balls[i] = new int[max + 1];
+			for (int j = 0; j < g.size(); j++)
+			{
+				if (ga.d[j] >= 0)
+					balls[i][ga.d[j]]++;
+				else
+					unreachable[i]++;
+			}
+		}
+	});
+
 	if (stats)
 	{
+		// the distances are integers, so the sums are the same as when
+		// adding them one by one
 		IncrementalStats is = new IncrementalStats();
-		for (int i = 0; i < n && i < g.size(); ++i)
+		for (int i = 0; i < from.length; ++i)
 		{
-			ga.dist(g, rp.next());
-			for (int j=0; j<g.size(); j++)
-			{
-				if (ga.d[j] > 0)
-					is.add(ga.d[j]);
-				else if (ga.d[j] == -1)
-					is.add(Double.POSITIVE_INFINITY);
-				// deliberately left ga.d[j]==0 out, as we don't
-				// want to count trivial distance to oneself.
-			}
+			// deliberately left distance 0 out, as we don't
+			// want to count trivial distance to oneself.
+			for (int k = 1; k < balls[i].length; k++)
+				if (balls[i][k] > 0)
+					is.add(k, balls[i][k]);
+			if (unreachable[i] > 0)
+				is.add(Double.POSITIVE_INFINITY, unreachable[i]);
 		}
 		System.out.println(is);
 	}
 	else
 	{
 		System.out.println();
-		for (int i = 0; i < n && i < g.size(); ++i)
+		for (int i = 0; i < from.length; ++i)
 		{
-			ga.flooding(g, b, rp.next());
 			int j = 0;
-			while (j < b.length && b[j] > 0)
+			while (j < maxd && j < balls[i].length && balls[i][j] > 0)
 			{
-				System.out.print(b[j++] + " ");
+				System.out.print(balls[i][j++] + " ");
 			}
 			System.out.println();
 		}
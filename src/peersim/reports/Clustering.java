@@ -38,8 +38,17 @@ public class Clustering extends GraphObserver
  */
 private static final String PAR_N = "n";
 
+/**
+ * The number of threads computing the coefficients. Defaults to 1.
+ * The result does not depend on it.
+ * @config
+ */
+private static final String PAR_THREADS = "threads";
+
 private final int n;
 
+private final int threads;
+
 // ===================== initialization ================================
 // =====================================================================
 
@@ -52,6 +61,7 @@ public Clustering(String name)
 {
 	super(name);
 	n = Configuration.getInt(name + "." + PAR_N, Integer.MAX_VALUE);
+	threads = Configuration.getInt(name + "." + PAR_THREADS, 1);
 }
 
 // ====================== methods ======================================
@@ -63,15 +73,23 @@ public Clustering(String name)
 * The output is
 * produced by {@link IncrementalStats#toString}, over the values of
 * the clustering coefficients of the given number of nodes.
-* Clustering coefficients are calculated by {@link GraphAlgorithms#clustering}.
+* Clustering coefficients are calculated by {@link GraphAlgorithms#clustering},
+* using {@value #PAR_THREADS} threads.
 * @return always false
 */
 public boolean execute()
 {
 	IncrementalStats stats = new IncrementalStats();
 	updateGraph();
-	for (int i = 0; i < n && i < g.size(); ++i) {
-		stats.add(GraphAlgorithms.clustering(g, i));
+	final double[] c = new double[Math.min(n, g.size())];
+	parallel(threads, c.length, new Work() {
+		public void run(GraphAlgorithms ga, int i) {
+			c[i] = GraphAlgorithms.clustering(g, i);
+		}
+	});
+	// added in order, so that the sums do not depend on the threads
+	for (int i = 0; i < c.length; ++i) {
+		stats.add(c[i]);
 	}
 	System.out.println(name + ": " + stats);
 	return false;
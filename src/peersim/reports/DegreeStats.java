@@ -86,6 +86,10 @@ private final RandPermutation rp = new RandPermutation(CommonState.r);
 
 private int nextnode = 0;
 
+/** The live overlay, for the "all" and "dead" link types that the graph
+observed by {@link #g} might not provide */
+private final OverlayGraph overlay;
+
 //--------------------------------------------------------------------------
 //Initialization
 //--------------------------------------------------------------------------
@@ -102,6 +106,7 @@ public DegreeStats(String name)
 	trace = Configuration.contains(name + "." + PAR_TRACE);
 	method = Configuration.getString(name + "." + PAR_METHOD, "stats");
 	type = Configuration.getString(name + "." + PAR_TYPE, "live");
+	overlay = new OverlayGraph(pid);
 	if ((type.equals("all") || type.equals("dead")) && undir) {
 		throw new IllegalParameterException(
 			name + "." + PAR_TYPE, " Parameter "+ name + "." +
@@ -142,9 +147,9 @@ private int nextDegree()
 	if (type.equals("live")) {
 		return g.degree(nodeid);
 	} else if (type.equals("all")) {
-		return ((OverlayGraph) g).fullDegree(nodeid);
+		return overlay.fullDegree(nodeid);
 	} else if (type.equals("dead")) {
-		return ((OverlayGraph) g).fullDegree(nodeid) - g.degree(nodeid);
+		return overlay.fullDegree(nodeid) - g.degree(nodeid);
 	} else
 		throw new RuntimeException(name + ": invalid type");
 }
@@ -18,6 +18,10 @@
 		
 package peersim.reports;
 
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import peersim.core.*;
 import peersim.config.Configuration;
 import peersim.graph.*;
@@ -65,6 +69,20 @@ private static final String PAR_UNDIR_ALT = "undirected";
  */
 private static final String PAR_FAST = "graphobserver.fast";
 
+/**
+ * If defined, the graph is frozen into a {@link CSRGraph} whenever it is
+ * updated, and so is its undirected version. The algorithms of
+ * {@link GraphAlgorithms} run much faster on it, without allocating objects,
+ * and it takes less memory than {@value #PAR_FAST}. The graph is a snapshot,
+ * so it is not an {@link OverlayGraph}, and the changes made by other
+ * controls in the same cycle are not seen by the observers that run after
+ * them. Like {@value #PAR_FAST}, it is a
+ * standalone property that affects all graph observers, and it overrides
+ * {@value #PAR_FAST}. Not defined by default.
+ * @config
+ */
+private static final String PAR_CSR = "graphobserver.csr";
+
 /** The name of this observer in the configuration */
 protected final String name;
 
@@ -92,6 +110,8 @@ private static Graph undirg;
 
 private static boolean fast;
 
+private static boolean csr;
+
 /** If any instance of some extending class defines undir we need to
 maintain an undir graph. Note that the graph is stored in a static
 field so it is common to all instances. */
@@ -113,6 +133,7 @@ protected GraphObserver(String name) {
 	undir = (Configuration.contains(name + "." + PAR_UNDIR) |
 		Configuration.contains(name + "." + PAR_UNDIR_ALT));
 	GraphObserver.fast = Configuration.contains(PAR_FAST);
+	GraphObserver.csr = Configuration.contains(PAR_CSR);
 	GraphObserver.needUndir = (GraphObserver.needUndir || undir);
 }
 
@@ -120,6 +141,93 @@ protected GraphObserver(String name) {
 // ====================== methods ======================================
 // =====================================================================
 
+/**
+* Discards the shared graphs and the settings collected from the
+* configuration, so that they are not mistaken for up to date in the next
+* simulation run in the same JVM. See {@link peersim.Simulator#runInProcess}.
+*/
+public static void reset() {
+
+	lastpid = -1234;
+	time = -1234;
+	phase = -1234;
+	ctime = -1234;
+	dirg = null;
+	undirg = null;
+	fast = false;
+	csr = false;
+	needUndir = false;
+}
+
+// ---------------------------------------------------------------------
+
+/**
+* A computation for one item of a loop run by {@link #parallel}.
+*/
+protected interface Work {
+
+	/**
+	* Processes item i. It must only write its own results, and use the
+	* given algorithms object for its scratch state.
+	*/
+	void run(GraphAlgorithms ga, int i);
+}
+
+// ---------------------------------------------------------------------
+
+/**
+* Runs the given work for items 0 to count-1 with the given number of
+* threads, each with its own {@link GraphAlgorithms}, so that the
+* traversal state is not shared. The items are handed out one at a time, in
+* increasing order. With one thread, the items are processed in the calling
+* thread with {@link #ga}. The graph must not be modified meanwhile.
+*/
+protected void parallel(int threads, final int count, final Work work) {
+
+	if( threads <= 1 || count <= 1 )
+	{
+		for(int i=0; i<count; ++i) work.run(ga, i);
+		return;
+	}
+	
+	final AtomicInteger next = new AtomicInteger();
+	List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+	for(int t=0; t<threads; ++t)
+	{
+		tasks.add(new Callable<Object>() {
+			public Object call() {
+				GraphAlgorithms tga = new GraphAlgorithms();
+				for(int i=next.getAndIncrement(); i<count;
+					i=next.getAndIncrement())
+					work.run(tga, i);
+				return null;
+			}
+		});
+	}
+	ExecutorService pool = Executors.newFixedThreadPool(threads);
+	try
+	{
+		for(Future<Object> f: pool.invokeAll(tasks)) f.get();
+	}
+	catch( InterruptedException e )
+	{
+		throw new RuntimeException(e);
+	}
+	catch( ExecutionException e )
+	{
+		Throwable t = e.getCause();
+		if( t instanceof RuntimeException ) throw (RuntimeException) t;
+		if( t instanceof Error ) throw (Error) t;
+		throw new RuntimeException(t);
+	}
+	finally
+	{
+		pool.shutdown();
+	}
+}
+
+// ---------------------------------------------------------------------
+
 /**
 * Sets {@link #g}.
 * It MUST be called by any implementation of {@link #execute()} before
@@ -148,15 +256,25 @@ protected void updateGraph() {
 		if( CDState.isCD() ) GraphObserver.ctime = CDState.getCycleT();
 		GraphObserver.phase = CommonState.getPhase();
 
-		GraphObserver.dirg = new OverlayGraph(pid);
-		if( GraphObserver.needUndir )
+		if( csr )
+		{
+			CSRGraph frozen = new OverlayGraph(pid).freeze();
+			GraphObserver.dirg = frozen;
+			if( GraphObserver.needUndir )
+				GraphObserver.undirg = frozen.undirected();
+		}
+		else
 		{
-			if( fast )
-				GraphObserver.undirg =
-				new FastUndirGraph(GraphObserver.dirg);
-			else
-				GraphObserver.undirg =
-				new ConstUndirGraph(GraphObserver.dirg);
+			GraphObserver.dirg = new OverlayGraph(pid);
+			if( GraphObserver.needUndir )
+			{
+				if( fast )
+					GraphObserver.undirg =
+					new FastUndirGraph(GraphObserver.dirg);
+				else
+					GraphObserver.undirg =
+					new ConstUndirGraph(GraphObserver.dirg);
+			}
 		}
 	}
 	
@@ -22,6 +22,7 @@ import peersim.config.Configuration;
 import peersim.graph.GraphIO;
 import peersim.util.FileNameGenerator;
 import java.io.PrintStream;
+import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
@@ -51,8 +52,10 @@ private static final String PAR_BASENAME = "outf";
 * Embedder, "netmeter" to be used with Sergi Valverde's netmeter and also
 * with pajek,
 * "edgelist" that dumps one (directed) node pair in each line for each edge,
-* "gml" that is a generic format of many graph tools, and "dot" that can
-* be used with the graphviz package.
+* "gml" that is a generic format of many graph tools, "dot" that can
+* be used with the graphviz package, and "binary", a binary neighbor list
+* that {@link peersim.dynamics.WireFromFile} reads much faster.
+* @see GraphIO#writeBinaryNeighborList
 * @see GraphIO#writeEdgeList
 * @see GraphIO#writeChaco
 * @see GraphIO#writeNeighborList
@@ -109,7 +112,7 @@ try {
 		String fname = fng.nextCounterName();
 		fos = new FileOutputStream(fname);
 		System.out.println("writing to file "+fname);
-		pstr = new PrintStream(fos);
+		pstr = new PrintStream(new BufferedOutputStream(fos, 1<<16));
 	}
 	else	System.out.println();
 	
@@ -125,10 +128,13 @@ try {
 		GraphIO.writeGML(g, pstr);
 	else if( format.equals("dot") )
 		GraphIO.writeDOT(g, pstr);
+	else if( format.equals("binary") )
+		GraphIO.writeBinaryNeighborList(g, pstr);
 	else
 		System.err.println(name+": unsupported format "+format);
 	
-	if( fos != null ) fos.close();
+	pstr.flush();
+	if( fos != null ) pstr.close();
 	
 	return false;
 }
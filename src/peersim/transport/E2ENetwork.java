@@ -18,11 +18,24 @@
 
 package peersim.transport;
 
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 /**
  * This static singleton emulates an underlying router network
  * of fixed size, and stores the latency measurements for all pairs
  * of routers.
+ * <p>
+ * The latencies are stored in a flat array, split in pages of
+ * 2^{@value #PAGE_BITS} entries so that its size is not limited by the
+ * size of a Java array. If latency is symmetric, only the pairs (i,j) with
+ * j &lt; i are stored, at position i(i-1)/2+j; otherwise the pair (i,j) is
+ * at position i*size+j. The store is either on the heap, or in a file
+ * mapped in memory, which can be used as a binary cache of a parsed data
+ * set (see {@link #reset(int, boolean, File)} and {@link #load}).
  *
  * @author Alberto Montresor
  * @version $Revision: 1.6 $
@@ -30,6 +43,27 @@ package peersim.transport;
 public class E2ENetwork
 {
 
+//---------------------------------------------------------------------
+//Constants
+//---------------------------------------------------------------------
+
+/** Number of bits of the index within a page */
+private static final int PAGE_BITS = 26;
+
+private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+/** First int of a latency file: "E2EL" */
+private static final int MAGIC = 0x4532454c;
+
+/** Version of the latency file format */
+private static final int VERSION = 1;
+
+/**
+ * Size of the header of a latency file: magic, version, size, symm
+ * (ints) and stamp (long), padded.
+ */
+private static final int HEADER = 32;
+
 //---------------------------------------------------------------------
 //Fields
 //---------------------------------------------------------------------
@@ -45,9 +79,32 @@ private static boolean symm;
 private static int size;
 
 /**
- * Latency distances between nodes.
+ * Latency distances between nodes, if stored on the heap.
+ */
+private static int[][] pages;
+
+/**
+ * Latency distances between nodes, if stored in a file.
+ */
+private static IntBuffer[] mapped;
+
+/**
+ * The mapped pages of the file, if it is opened by
+ * {@link #reset(int, boolean, File)}.
  */
-private static int[][] array;
+private static MappedByteBuffer[] written;
+
+/**
+ * The header of the file, if the latencies are stored in a file opened
+ * by {@link #reset(int, boolean, File)}.
+ */
+private static MappedByteBuffer header;
+
+/**
+ * The temporary file written after {@link #reset(int, boolean, File)}, and
+ * the file it replaces when it is sealed.
+ */
+private static File temp, target;
 	
 //---------------------------------------------------------------------
 //Initialization
@@ -62,22 +119,257 @@ private E2ENetwork() {}
 
 /**
  * Resets the network, by creating a triangular (if symm is true) or
- * a rectangular (if symm is false) array of integers. Initially all
- * latencies between any pairs are set to be 0.
+ * a rectangular (if symm is false) array of integers on the heap.
+ * Initially all latencies between any pairs are set to be 0.
  * @param size the number or routers
  * @param symm if latency is symmetric between all pairs of routers
  */
 public static void reset(int size, boolean symm)
+{
+	init(size, symm);
+	final long n = entries(size, symm);
+	pages = new int[pageCount(n)][];
+	for (int p = 0; p < pages.length; p++)
+		pages[p] = new int[pageLength(n, p)];
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Resets the network like {@link #reset(int, boolean)}, but stores the
+ * latencies in the given file, mapped in memory, so that they do not use
+ * the heap. The latencies are written to a new file in the same directory,
+ * which replaces the given one when it is marked as complete by
+ * {@link #seal}; it then becomes a cache that can be loaded by
+ * {@link #load}. The given file is never modified in place, since other
+ * simulations may have it mapped.
+ * @param size the number or routers
+ * @param symm if latency is symmetric between all pairs of routers
+ * @param file the file storing the latencies
+ */
+public static void reset(int size, boolean symm, File file)
+throws IOException
+{
+	init(size, symm);
+	final long n = entries(size, symm);
+	File tmp = File.createTempFile(file.getName() + ".", ".tmp",
+		file.getAbsoluteFile().getParentFile());
+	tmp.deleteOnExit();
+	RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+	boolean ok = false;
+	try {
+		raf.setLength(HEADER + 4 * n);
+		FileChannel ch = raf.getChannel();
+		header = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+		header.putInt(0, MAGIC);
+		header.putInt(4, VERSION);
+		header.putInt(8, size);
+		header.putInt(12, symm ? 1 : 0);
+		header.putLong(16, 0); // not complete
+		written = map(ch, FileChannel.MapMode.READ_WRITE, n);
+		mapped = new IntBuffer[written.length];
+		for (int p = 0; p < written.length; p++)
+			mapped[p] = written[p].asIntBuffer();
+		ok = true;
+	} finally {
+		raf.close();
+		if (!ok)
+			tmp.delete();
+	}
+	temp = tmp;
+	target = file;
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Marks the file opened by {@link #reset(int, boolean, File)} as complete,
+ * with the given stamp, writes it to the disk and renames it to the
+ * file given to reset, atomically. If the rename fails, the error is
+ * reported and the cache is not written; the latencies stay available.
+ * @param stamp identifies the data in the file; it must not be 0
+ */
+public static void seal(long stamp)
+{
+	if (header == null)
+		throw new IllegalStateException("The latencies are not in a file");
+	for (MappedByteBuffer b : written)
+		b.force();
+	header.putLong(16, stamp);
+	header.force();
+	header = null;
+	written = null;
+	try {
+		Files.move(temp.toPath(), target.toPath(),
+			StandardCopyOption.ATOMIC_MOVE);
+	} catch (IOException e) {
+		System.err.println("E2ENetwork: cannot write " + target + ": " + e);
+		temp.delete();
+	}
+	temp = null;
+	target = null;
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Resets the network from a file written through
+ * {@link #reset(int, boolean, File)} and {@link #seal}, mapping it in
+ * memory read only. The latencies cannot be modified afterwards.
+ * @param file the file to read
+ * @param stamp the stamp the file was sealed with
+ * @return false, and the network is not modified, if the file does not
+ * exist, is not complete, or has a different stamp
+ */
+public static boolean load(File file, long stamp) throws IOException
+{
+	if (!file.isFile())
+		return false;
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+		if (raf.length() < HEADER)
+			return false;
+		FileChannel ch = raf.getChannel();
+		ByteBuffer h = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+		if (h.getInt(0) != MAGIC || h.getInt(4) != VERSION ||
+			h.getLong(16) != stamp || stamp == 0)
+			return false;
+		final int size = h.getInt(8);
+		final boolean symm = (h.getInt(12) != 0);
+		final long n = entries(size, symm);
+		if (raf.length() != HEADER + 4 * n)
+			return false;
+		init(size, symm);
+		MappedByteBuffer[] b = map(ch, FileChannel.MapMode.READ_ONLY, n);
+		mapped = new IntBuffer[b.length];
+		for (int p = 0; p < b.length; p++)
+			mapped[p] = b[p].asIntBuffer();
+		return true;
+	} finally {
+		raf.close();
+	}
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Returns a stamp for a cache of the given data set, that changes if the
+ * file or the ratio changes. If the file does not exist (it is read
+ * through the class loader), only the ratio is taken into account.
+ */
+static long stamp(String filename, double ratio)
+{
+	long stamp = Double.doubleToLongBits(ratio);
+	File f = (filename == null ? null : new File(filename));
+	if (f != null && f.isFile())
+		stamp = 31 * (31 * stamp + f.length()) + f.lastModified();
+	return (stamp == 0 ? 1 : stamp);
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Resets the network from the given cache file, if it is valid, for the
+ * parsers. Errors are reported, and the cache is then ignored.
+ * @return true if the cache was loaded
+ */
+static boolean loadCache(String cache, long stamp)
+{
+	try {
+		return load(new File(cache), stamp);
+	} catch (IOException e) {
+		System.err.println("E2ENetwork: cannot read " + cache + ": " + e);
+		return false;
+	}
+}
+
+//---------------------------------------------------------------------
+
+/**
+ * Resets the network on the heap if the cache is null, or in the cache
+ * file otherwise, for the parsers.
+ */
+static void resetCache(String cache, int size, boolean symm)
+{
+	if (cache == null) {
+		reset(size, symm);
+		return;
+	}
+	try {
+		reset(size, symm, new File(cache));
+	} catch (IOException e) {
+		throw new RuntimeException("E2ENetwork: cannot write " + cache, e);
+	}
+}
+
+//---------------------------------------------------------------------
+
+/** Sets the size and symmetry, and discards the current store */
+private static void init(int size, boolean symm)
 {
 	E2ENetwork.symm = symm;
 	E2ENetwork.size = size;
-	array = new int[size][];
-	for (int i=0; i < size; i++) {
-		if (symm)
-			array[i] = new int[i];
-		else
-			array[i] = new int[size];
+	pages = null;
+	mapped = null;
+	header = null;
+	written = null;
+	temp = null;
+	target = null;
+}
+
+//---------------------------------------------------------------------
+
+/** Maps the pages of the latencies of a file */
+private static MappedByteBuffer[] map(FileChannel ch,
+	FileChannel.MapMode mode, long n) throws IOException
+{
+	MappedByteBuffer[] b = new MappedByteBuffer[pageCount(n)];
+	for (int p = 0; p < b.length; p++) {
+		b[p] = ch.map(mode, HEADER + 4L * p * (PAGE_MASK + 1),
+			4L * pageLength(n, p));
+	}
+	return b;
+}
+
+//---------------------------------------------------------------------
+
+/** The number of stored latencies */
+private static long entries(int size, boolean symm)
+{
+	return (symm ? (long) size * (size - 1) / 2 : (long) size * size);
+}
+
+//---------------------------------------------------------------------
+
+/** The number of pages storing n latencies */
+private static int pageCount(long n)
+{
+	return (int) ((n + PAGE_MASK) >>> PAGE_BITS);
+}
+
+//---------------------------------------------------------------------
+
+/** The length of page p, storing n latencies */
+private static int pageLength(long n, int p)
+{
+	return (int) Math.min(PAGE_MASK + 1, n - ((long) p << PAGE_BITS));
+}
+
+//---------------------------------------------------------------------
+
+/** The position of the given pair in the store */
+private static long index(int sender, int receiver)
+{
+	if (symm) {
+		// Symmetric network
+		if (sender < receiver) {
+			int tmp = sender;
+			sender = receiver;
+			receiver = tmp;
+		}
+		return (long) sender * (sender - 1) / 2 + receiver;
 	}
+	return (long) sender * size + receiver;
 }
 	
 //---------------------------------------------------------------------
@@ -96,15 +388,11 @@ public static int getLatency(int sender, int receiver)
 	if (sender == receiver)
 		return 0;
 	// XXX There should be the possibility to fix the delay.
-	if (symm) {
-		// Symmetric network
-		if (sender < receiver) {
-			int tmp = sender;
-			sender = receiver;
-			receiver = tmp;
-		}
-	} 
-	return array[sender][receiver];
+	final long i = index(sender, receiver);
+	final int p = (int) (i >>> PAGE_BITS);
+	if (pages != null)
+		return pages[p][(int) i & PAGE_MASK];
+	return mapped[p].get((int) i & PAGE_MASK);
 }
 
 //---------------------------------------------------------------------
@@ -119,15 +407,14 @@ public static int getLatency(int sender, int receiver)
  */
 public static void setLatency(int sender, int receiver, int latency) 
 {
-	if (symm) {
-		// Symmetric network
-		if (sender < receiver) {
-			int tmp = sender;
-			sender = receiver;
-			receiver = tmp;
-		}
-	} 
- 	array[sender][receiver] = latency;
+	if (symm && sender == receiver)
+		return; // not stored, always 0
+	final long i = index(sender, receiver);
+	final int p = (int) (i >>> PAGE_BITS);
+	if (pages != null)
+		pages[p][(int) i & PAGE_MASK] = latency;
+	else
+		mapped[p].put((int) i & PAGE_MASK, latency);
 }
 
 //---------------------------------------------------------------------
@@ -34,7 +34,7 @@ import peersim.edsim.*;
  * @author Alberto Montresor
  * @version $Revision: 1.11 $
  */
-public class E2ETransport implements Transport, RouterInfo
+public class E2ETransport implements MinLatencyTransport, RouterInfo
 {
 
 //---------------------------------------------------------------------
@@ -127,6 +127,15 @@ public long getLatency(Node src, Node dest)
 	return E2ENetwork.getLatency(sender.router, receiver.router) + local*2;
 }
 
+/**
+* Returns twice the local delay configured by {@value #PAR_LOCAL}, that is,
+* the latency between nodes assigned to the same router.
+*/
+public long getMinLatency()
+{
+	return local*2;
+}
+
 
 //---------------------------------------------------------------------
 //Methods inherited by RouterInfo
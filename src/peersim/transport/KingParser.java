@@ -49,6 +49,15 @@ private static final String PAR_FILE = "file";
  */
 private static final String PAR_RATIO = "ratio";
 
+/**
+ * If set, the parsed latencies are stored in this binary file, which is
+ * mapped in memory instead of being read into the heap. Later runs map the
+ * file directly, without parsing, as long as the measurements file and
+ * the ratio do not change. See {@link E2ENetwork#load}.
+ * @config
+ */
+private static final String PAR_CACHE = "cache";
+
 // ---------------------------------------------------------------------
 // Fields
 // ---------------------------------------------------------------------
@@ -65,6 +74,9 @@ private double ratio;
 /** Prefix for reading parameters */
 private String prefix;
 
+/** Name of the cache file, or null */
+private String cache;
+
 // ---------------------------------------------------------------------
 // Initialization
 // ---------------------------------------------------------------------
@@ -77,6 +89,7 @@ public KingParser(String prefix)
 	this.prefix = prefix;
 	ratio = Configuration.getDouble(prefix + "." + PAR_RATIO, 1);
 	filename = Configuration.getString(prefix + "." + PAR_FILE, null);
+	cache = Configuration.getString(prefix + "." + PAR_CACHE, null);
 }
 
 // ---------------------------------------------------------------------
@@ -89,6 +102,13 @@ public KingParser(String prefix)
 */
 public boolean execute()
 {
+	final long stamp = E2ENetwork.stamp(filename, ratio);
+	if (cache != null && E2ENetwork.loadCache(cache, stamp)) {
+		System.err.println("KingParser: read " + E2ENetwork.getSize() +
+			" entries from " + cache);
+		return false;
+	}
+
 	BufferedReader in = null;
 	if (filename != null) {
 		try {
@@ -123,7 +143,7 @@ public boolean execute()
 		try { in.close(); } catch (IOException e1) { };
 		System.exit(1);
 	}
-	E2ENetwork.reset(size, true);
+	E2ENetwork.resetCache(cache, size, true);
 	if (line == null) {
 		System.err.println("KingParser: " + filename + ", line " + lc + ":");
 		System.err.println("No latency matrix contained in the specified file");
@@ -151,6 +171,8 @@ public boolean execute()
 		} while (line != null);
 		
 		in.close();
+		if (cache != null)
+			E2ENetwork.seal(stamp);
 	
 	} catch (IOException e) {
 		System.err.println("KingParser: " + filename + ", line " + lc + ":");
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2003-2005 The BISON Project
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License version 2 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *
+ */
+
+package peersim.transport;
+
+/**
+ * A transport protocol that knows a lower bound of the delay of the messages
+ * it delivers. The parallel event-driven engine uses this bound as
+ * lookahead: a message sent at time t is never delivered before
+ * t+{@link #getMinLatency}, so the nodes can be simulated independently
+ * for that long.
+ */
+public interface MinLatencyTransport extends Transport
+{
+
+/**
+ * Returns the minimal delay of a message sent through this transport, for
+ * any pair of nodes. The value must not change during the simulation.
+ */
+public long getMinLatency();
+
+}
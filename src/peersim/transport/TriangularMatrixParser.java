@@ -63,6 +63,15 @@ private static final String PAR_FILE = "file";
  */
 private static final String PAR_RATIO = "ratio";
 
+/**
+ * If set, the parsed latencies are stored in this binary file, which is
+ * mapped in memory instead of being read into the heap. Later runs map the
+ * file directly, without parsing, as long as the measurements file and
+ * the ratio do not change. See {@link E2ENetwork#load}.
+ * @config
+ */
+private static final String PAR_CACHE = "cache";
+
 // ---------------------------------------------------------------------
 // Fields
 // ---------------------------------------------------------------------
@@ -73,6 +82,9 @@ private String filename;
 /** Ratio read from PAR_RATIO */
 private double ratio;
 
+/** Name of the cache file, or null */
+private String cache;
+
 // ---------------------------------------------------------------------
 // Initialization
 // ---------------------------------------------------------------------
@@ -84,6 +96,7 @@ public TriangularMatrixParser(String prefix)
 {
 	filename = Configuration.getString(prefix + "." + PAR_FILE);
 	ratio = Configuration.getDouble(prefix + "." + PAR_RATIO);
+	cache = Configuration.getString(prefix + "." + PAR_CACHE, null);
 }
 
 // ---------------------------------------------------------------------
@@ -96,6 +109,13 @@ public TriangularMatrixParser(String prefix)
 */
 public boolean execute()
 {
+	final long stamp = E2ENetwork.stamp(filename, ratio);
+	if (cache != null && E2ENetwork.loadCache(cache, stamp)) {
+		System.err.println("TriangularMatrixParser: read " +
+			E2ENetwork.getSize() + " rows from " + cache);
+		return false;
+	}
+
 	try {
 		ObjectInputStream in = null;
 		try {
@@ -114,7 +134,7 @@ public boolean execute()
 	  int size = in.readInt();
 	  
 		// Reset the E2E network
-		E2ENetwork.reset(size, true);
+		E2ENetwork.resetCache(cache, size, true);
 		System.err.println("TriangularMatrixParser: reading " + size + " rows");
 	
 		// If the file format is not correct, data will be read 
@@ -131,6 +151,9 @@ public boolean execute()
 			}
 		}
 		System.err.println("TriangularMatrixParser: Read " + count + " entries");
+		in.close();
+		if (cache != null)
+			E2ENetwork.seal(stamp);
 	} catch (IOException e) {
 		throw new RuntimeException(e.getMessage());
 	}
@@ -31,7 +31,7 @@ import peersim.edsim.*;
  * @author Alberto Montresor
  * @version $Revision: 1.14 $
  */
-public final class UniformRandomTransport implements Transport
+public final class UniformRandomTransport implements MinLatencyTransport
 {
 
 //---------------------------------------------------------------------
@@ -119,5 +119,13 @@ public long getLatency(Node src, Node dest)
 	return (range==1?min:min + CommonState.r.nextLong(range));
 }
 
+/**
+ * Returns the configured minimal delay.
+ */
+public long getMinLatency()
+{
+	return min;
+}
+
 
 }
@@ -35,7 +35,7 @@ import peersim.core.*;
  * @author Alberto Montresor
  * @version $Revision: 1.13 $
  */
-public final class UnreliableTransport implements Transport
+public final class UnreliableTransport implements MinLatencyTransport
 {
 
 //---------------------------------------------------------------------
@@ -126,4 +126,13 @@ public long getLatency(Node src, Node dest)
 	return t.getLatency(src, dest);
 }
 
+/** Returns the minimal latency of the underlying protocol, or 0 if it is
+* unknown.*/
+public long getMinLatency()
+{
+	Object t = Network.prototype.getProtocol(transport);
+	return (t instanceof MinLatencyTransport ?
+		((MinLatencyTransport) t).getMinLatency() : 0);
+}
+
 }
@@ -40,6 +40,12 @@ import java.lang.reflect.Method;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -96,6 +102,11 @@ import weka.estimators.KernelEstimator;
  * The number of folds for the cross-validation (default: 10).
  * <p/>
  * 
+ * -num-slots number <br/>
+ * The number of threads that build and test the folds of the
+ * cross-validation (default: 1).
+ * <p/>
+ * 
  * -no-cv <br/>
  * No cross validation. If no test file is provided, no evaluation is done.
  * <p/>
@@ -326,6 +337,9 @@ public class Evaluation implements Summarizable, RevisionHandler {
    */
   protected boolean m_NoPriors = false;
 
+  /** The number of threads that build and test folds of a cross-validation. */
+  protected int m_NumExecutionSlots = 1;
+
   /**
    * Initializes all the counters for the evaluation. Use
    * <code>useNoPriors()</code> if the dataset is the test set and you can't
@@ -449,11 +463,34 @@ public class Evaluation implements Summarizable, RevisionHandler {
     return newMatrix;
   }
 
+  /**
+   * Sets the number of threads that build and test the folds of a
+   * cross-validation.
+   * 
+   * @param numSlots the number of threads, 1 to build the folds one after the
+   *          other in the calling thread
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = numSlots;
+  }
+
+  /**
+   * Gets the number of threads that build and test the folds of a
+   * cross-validation.
+   * 
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Performs a (stratified if class is nominal) cross-validation for a
    * classifier on a set of instances. Now performs a deep copy of the
    * classifier before each call to buildClassifier() (just in case the
-   * classifier is not initialized properly).
+   * classifier is not initialized properly). With more than one execution
+   * slot, the folds are built and tested in parallel, and the result is the
+   * same as with one.
    * 
    * @param classifier the classifier with any options set.
    * @param data the data on which the cross-validation is to be performed
@@ -491,17 +528,188 @@ public class Evaluation implements Summarizable, RevisionHandler {
     }
 
     // Do the folds
-    for (int i = 0; i < numFolds; i++) {
-      Instances train = data.trainCV(numFolds, i, random);
-      setPriors(train);
-      Classifier copiedClassifier = Classifier.makeCopy(classifier);
-      copiedClassifier.buildClassifier(train);
-      Instances test = data.testCV(numFolds, i);
-      evaluateModel(copiedClassifier, test, forPredictionsPrinting);
+    if (m_NumExecutionSlots > 1) {
+      crossValidateFolds(classifier, data, numFolds, random,
+        forPredictionsPrinting);
+    } else {
+      for (int i = 0; i < numFolds; i++) {
+        Instances train = data.trainCV(numFolds, i, random);
+        setPriors(train);
+        Classifier copiedClassifier = Classifier.makeCopy(classifier);
+        copiedClassifier.buildClassifier(train);
+        Instances test = data.testCV(numFolds, i);
+        evaluateModel(copiedClassifier, test, forPredictionsPrinting);
+      }
     }
     m_NumFolds = numFolds;
   }
 
+  /**
+   * Builds and tests the folds of a cross-validation on a pool of
+   * m_NumExecutionSlots threads. The folds are split off in order in the
+   * calling thread, so the random number generator is used as in the
+   * sequential case, and at most m_NumExecutionSlots folds are in memory. Each
+   * thread only computes the predictions of its fold; they are added to the
+   * statistics in the calling thread in the order of the folds, exactly as
+   * evaluateModel would add them.
+   * 
+   * @param classifier the classifier with any options set.
+   * @param data the randomized (and stratified) data
+   * @param numFolds the number of folds for the cross-validation
+   * @param random random number generator for randomization
+   * @param forPredictionsPrinting a StringBuffer, a Range and a Boolean to
+   *          print the predictions, or nothing
+   * @throws Exception if a classifier could not be generated successfully
+   */
+  protected void crossValidateFolds(Classifier classifier, Instances data,
+    int numFolds, Random random, Object... forPredictionsPrinting)
+    throws Exception {
+
+    StringBuffer buff = null;
+    Range attsToOutput = null;
+    boolean printDist = false;
+    if (forPredictionsPrinting.length > 0) {
+      buff = (StringBuffer) forPredictionsPrinting[0];
+      attsToOutput = (Range) forPredictionsPrinting[1];
+      printDist = ((Boolean) forPredictionsPrinting[2]).booleanValue();
+    }
+
+    ThreadPoolExecutor pool =
+      new ThreadPoolExecutor(m_NumExecutionSlots, m_NumExecutionSlots, 120,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    FastVector folds = new FastVector(numFolds);
+    try {
+      int submitted = 0;
+      for (int i = 0; i < numFolds; i++) {
+        while ((submitted < numFolds)
+          && (submitted < i + m_NumExecutionSlots)) {
+          Fold fold =
+            new Fold(Classifier.makeCopy(classifier), data.trainCV(numFolds,
+              submitted, random), data.testCV(numFolds, submitted),
+              m_ClassIsNominal, (buff != null), attsToOutput, printDist);
+          folds.addElement(pool.submit(fold));
+          submitted++;
+        }
+
+        Fold fold;
+        try {
+          fold = (Fold) ((Future<?>) folds.elementAt(i)).get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+          }
+          throw e;
+        }
+        folds.setElementAt(null, i);
+
+        setPriors(fold.m_Train);
+        for (int j = 0; j < fold.m_Test.numInstances(); j++) {
+          evaluateModelOnceAndRecordPrediction(fold.m_Predictions[j],
+            fold.m_Test.instance(j));
+        }
+        if (buff != null) {
+          buff.append(fold.m_PredictionText);
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * One fold of a cross-validation: builds the classifier on the training
+   * data and computes its predictions for the test data.
+   */
+  protected static class Fold implements Callable<Fold> {
+
+    /** The classifier to build. */
+    protected Classifier m_Classifier;
+
+    /** The training data. */
+    protected Instances m_Train;
+
+    /** The test data. */
+    protected Instances m_Test;
+
+    /** Whether the class is nominal. */
+    protected boolean m_ClassIsNominal;
+
+    /** Whether to print the predictions. */
+    protected boolean m_PrintPredictions;
+
+    /** The attributes to print with the predictions. */
+    protected Range m_AttsToOutput;
+
+    /** Whether to print the distributions. */
+    protected boolean m_PrintDist;
+
+    /**
+     * The distribution predicted for each test instance, or a single value if
+     * the class is numeric.
+     */
+    protected double[][] m_Predictions;
+
+    /** The printed predictions. */
+    protected StringBuffer m_PredictionText;
+
+    /**
+     * Creates the fold.
+     * 
+     * @param classifier the classifier to build
+     * @param train the training data
+     * @param test the test data
+     * @param classIsNominal whether the class is nominal
+     * @param printPredictions whether to print the predictions
+     * @param attsToOutput the attributes to print with the predictions
+     * @param printDist whether to print the distributions
+     */
+    public Fold(Classifier classifier, Instances train, Instances test,
+      boolean classIsNominal, boolean printPredictions, Range attsToOutput,
+      boolean printDist) {
+
+      m_Classifier = classifier;
+      m_Train = train;
+      m_Test = test;
+      m_ClassIsNominal = classIsNominal;
+      m_PrintPredictions = printPredictions;
+      m_AttsToOutput = attsToOutput;
+      m_PrintDist = printDist;
+    }
+
+    /**
+     * Builds the classifier and computes the predictions.
+     * 
+     * @return this fold
+     * @throws Exception if building or testing fails
+     */
+    public Fold call() throws Exception {
+
+      m_Classifier.buildClassifier(m_Train);
+      m_Predictions = new double[m_Test.numInstances()][];
+      if (m_PrintPredictions) {
+        m_PredictionText = new StringBuffer();
+      }
+      for (int i = 0; i < m_Test.numInstances(); i++) {
+        Instance instance = m_Test.instance(i);
+        Instance classMissing = (Instance) instance.copy();
+        classMissing.setDataset(instance.dataset());
+        classMissing.setClassMissing();
+        if (m_ClassIsNominal) {
+          m_Predictions[i] = m_Classifier.distributionForInstance(classMissing);
+        } else {
+          m_Predictions[i] =
+            new double[] { m_Classifier.classifyInstance(classMissing) };
+        }
+        if (m_PrintPredictions) {
+          m_PredictionText.append(predictionText(m_Classifier, instance, i,
+            m_AttsToOutput, m_PrintDist));
+        }
+      }
+      m_Classifier = null;
+      return this;
+    }
+  }
+
   /**
    * Performs a (stratified if class is nominal) cross-validation for a
    * classifier on a set of instances.
@@ -546,6 +754,11 @@ public class Evaluation implements Summarizable, RevisionHandler {
    * The number of folds for the cross-validation (default: 10).
    * <p/>
    * 
+   * -num-slots number <br/>
+   * The number of threads that build and test the folds of the
+   * cross-validation (default: 1).
+   * <p/>
+   * 
    * -no-cv <br/>
    * No cross validation. If no test file is provided, no evaluation is done.
    * <p/>
@@ -697,6 +910,11 @@ public class Evaluation implements Summarizable, RevisionHandler {
    * The number of folds for the cross-validation (default: 10).
    * <p/>
    * 
+   * -num-slots number of threads <br/>
+   * The number of threads that build and test the folds of the
+   * cross-validation (default: 1).
+   * <p/>
+   * 
    * -no-cv <br/>
    * No cross validation. If no test file is provided, no evaluation is done.
    * <p/>
@@ -780,9 +998,9 @@ public class Evaluation implements Summarizable, RevisionHandler {
     throws Exception {
 
     Instances train = null, tempTrain, test = null, template = null;
-    int seed = 1, folds = 10, classIndex = -1;
+    int seed = 1, folds = 10, classIndex = -1, numSlots = 1;
     boolean noCrossValidation = false;
-    String trainFileName, testFileName, sourceClass, classIndexString, seedString, foldsString, objectInputFileName, objectOutputFileName, attributeRangeString;
+    String trainFileName, testFileName, sourceClass, classIndexString, seedString, foldsString, numSlotsString, objectInputFileName, objectOutputFileName, attributeRangeString;
     boolean noOutput = false, printClassifications = false, trainStatistics =
       true, printMargins = false, printComplexityStatistics = false, printGraph =
       false, classStatistics = false, printSource = false;
@@ -883,6 +1101,14 @@ public class Evaluation implements Summarizable, RevisionHandler {
       if (foldsString.length() != 0) {
         folds = Integer.parseInt(foldsString);
       }
+      numSlotsString = Utils.getOption("num-slots", options);
+      if (numSlotsString.length() != 0) {
+        numSlots = Integer.parseInt(numSlotsString);
+        if (numSlots < 1) {
+          throw new Exception("Number of slots ('-num-slots') must be at "
+            + "least 1.");
+        }
+      }
       seedString = Utils.getOption('s', options);
       if (seedString.length() != 0) {
         seed = Integer.parseInt(seedString);
@@ -1089,6 +1315,7 @@ public class Evaluation implements Summarizable, RevisionHandler {
       new Evaluation(new Instances(template, 0), costMatrix);
     Evaluation testingEvaluation =
       new Evaluation(new Instances(template, 0), costMatrix);
+    testingEvaluation.setNumExecutionSlots(numSlots);
 
     // disable use of priors if no training file given
     if (!trainSetPresent) {
@@ -3419,6 +3646,10 @@ public class Evaluation implements Summarizable, RevisionHandler {
     optionsText.append("-x <number of folds>\n");
     optionsText
       .append("\tSets number of folds for cross-validation (default: 10).\n");
+    optionsText.append("-num-slots <number of threads>\n");
+    optionsText
+      .append("\tSets number of threads that build and test the folds of the\n");
+    optionsText.append("\tcross-validation (default: 1).\n");
     optionsText.append("-no-cv\n");
     optionsText.append("\tDo not perform any cross validation.\n");
     optionsText.append("-split-percentage <percentage>\n");
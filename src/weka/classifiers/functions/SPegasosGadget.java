@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Random;
 import java.util.Vector;
 
 import weka.classifiers.Classifier;
@@ -80,6 +81,9 @@ import weka.filters.unsupervised.attribute.Normalize;
  * <pre> -E &lt;integer&gt;
  *  The number of epochs to perform (batch learning only, default = 500)</pre>
  * 
+ * <pre> -B &lt;integer&gt;
+ *  The mini-batch size (default = 1)</pre>
+ * 
  * <pre> -N
  *  Don't normalize the data</pre>
  * 
@@ -117,6 +121,9 @@ public class SPegasosGadget extends Classifier
   /** Stores the weights (+ bias in the last element) */
   protected double[] m_weights;
   
+  /** Scaled view over m_weights used by the stochastic updates */
+  protected ScaledWeightVector m_wv;
+  
   protected double[] m_prev_wts;
   
   /** Holds the current iteration number */
@@ -141,6 +148,21 @@ public class SPegasosGadget extends Classifier
    */
   protected int m_epochs = 500;
   
+  /** Random number generator used to shuffle the data for mini-batches */
+  protected Random m_random = new Random(1);
+  
+  /** Sub-gradient accumulated over a mini-batch, reused between steps */
+  protected double[] m_gradBuffer;
+  
+  /** Coordinates touched in m_gradBuffer by the current mini-batch */
+  protected int[] m_touched;
+  
+  /** Flags the coordinates already listed in m_touched */
+  protected boolean[] m_isTouched;
+  
+  /** Number of valid entries in m_touched */
+  protected int m_numTouched;
+  
   /** 
    * Turn off normalization of the input data. This option gets
    * forced for incremental training.
@@ -191,16 +213,51 @@ public class SPegasosGadget extends Classifier
     return "The regularization constant. (default = 0.0001)";
   }
   
+  /**
+   * Returns the dense weight vector. The scale kept implicitly by the
+   * stochastic updates is folded back into the array first, so this is O(d)
+   * the first time it is called after an update. The array is the live
+   * backing store of the classifier.
+   * 
+   * @return the weights
+   */
   public double[] getWeights() {
+	  if (m_wv != null) {
+		  m_weights = m_wv.materialize();
+	  }
 	  return m_weights;
   }
   
+  /**
+   * Replaces the weights with the given vector, which becomes the backing
+   * store of the classifier.
+   * 
+   * @param weights the new weights
+   */
+  public void setWeights(double[] weights) {
+	  m_weights = weights;
+	  if (m_wv != null) {
+		  m_wv.wrap(m_weights);
+	  }
+  }
+  
+  /**
+   * Returns true if the classifier transforms the input before the dot
+   * product (missing value replacement, nominal to binary or normalization).
+   * 
+   * @return true if any input filter is in use
+   */
+  public boolean hasInputFilters() {
+	  return m_replaceMissing != null || m_nominalToBinary != null || m_normalize != null;
+  }
+  
   public void setWeights(double value)
   {
 	  for(int k=0;k<m_weights.length;k++)
 	  {
 		m_weights[k]=value;  
 	  }
+	  m_wv.wrap(m_weights);
   }
   /**
    * Set the value of lambda to use
@@ -250,6 +307,44 @@ public class SPegasosGadget extends Classifier
     return m_epochs;
   }
   
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String miniBatchSizeTipText() {
+    return "The number of examples whose sub-gradients are accumulated " +
+    		"into a single update (mini-batch training only).";
+  }
+  
+  /**
+   * Set the mini-batch size
+   * 
+   * @param size the number of examples per step
+   */
+  public void setMiniBatchSize(int size) {
+    m_miniBatchSz = size;
+  }
+  
+  /**
+   * Get the mini-batch size
+   * 
+   * @return the number of examples per step
+   */
+  public int getMiniBatchSize() {
+    return m_miniBatchSz;
+  }
+  
+  /**
+   * Set the seed used to shuffle the data for mini-batch training
+   * 
+   * @param seed the seed
+   */
+  public void setSeed(long seed) {
+    m_random = new Random(seed);
+  }
+  
   /**
    * Turn normalization off/on.
    * 
@@ -358,6 +453,8 @@ public class SPegasosGadget extends Classifier
     newVector.add(new Option("\tThe number of epochs to perform (" +
     		"batch learning only, default = 500)", "E", 1,
     		"-E <integer>"));
+    newVector.add(new Option("\tThe mini-batch size (default = 1)",
+    		"B", 1, "-B <integer>"));
     newVector.add(new Option("\tDon't normalize the data", "N", 0, "-N"));
     newVector.add(new Option("\tDon't replace missing values", "M", 0, "-M"));
     
@@ -377,6 +474,9 @@ public class SPegasosGadget extends Classifier
    * <pre> -E &lt;integer&gt;
    *  The number of epochs to perform (batch learning only, default = 500)</pre>
    * 
+   * <pre> -B &lt;integer&gt;
+   *  The mini-batch size (default = 1)</pre>
+   * 
    * <pre> -N
    *  Don't normalize the data</pre>
    * 
@@ -409,6 +509,13 @@ public class SPegasosGadget extends Classifier
       setEpochs(Integer.parseInt(epochsString));
     }
     
+    String batchString = Utils.getOption('B', options);
+    if (batchString.length() > 0) {
+      setMiniBatchSize(Integer.parseInt(batchString));
+    } else {
+      setMiniBatchSize(1);
+    }
+    
     setDontNormalize(Utils.getFlag("N", options));
     setDontReplaceMissing(Utils.getFlag('M', options));
   }
@@ -424,6 +531,7 @@ public class SPegasosGadget extends Classifier
     options.add("-F"); options.add("" + getLossFunction().getSelectedTag().getID());
     options.add("-L"); options.add("" + getLambda());
     options.add("-E"); options.add("" + getEpochs());
+    options.add("-B"); options.add("" + getMiniBatchSize());
     if (getDontNormalize()) {
       options.add("-N");
     }
@@ -478,6 +586,7 @@ public class SPegasosGadget extends Classifier
   public void reset() {
     m_t = 2;
     m_weights = null;
+    m_wv = null;
     m_prev_wts =null;
   }
 
@@ -526,7 +635,12 @@ public class SPegasosGadget extends Classifier
       data = Filter.useFilter(data, m_normalize);
     } 
     m_weights = new double[m_dimension];
+    m_wv = new ScaledWeightVector(m_weights, data.classIndex());
     m_prev_wts = new double[m_dimension];
+    m_gradBuffer = new double[m_dimension];
+    m_touched = new int[m_dimension];
+    m_isTouched = new boolean[m_dimension];
+    m_numTouched = 0;
     
     m_data = new Instances(data, 0);
     
@@ -543,10 +657,54 @@ public class SPegasosGadget extends Classifier
         updateClassifier(data.instance(i));
       }
      //For mini-batches, normalize weights by mini-batch size
-     for(int k=0;k<m_weights.length;k++)
-     {
-    	 m_weights[k] = m_weights[k]/m_miniBatchSz;
-    	 //m_weights[k] = m_weights[k]/data.numInstances();
+     m_wv.scaleAll(1.0 / m_miniBatchSz);
+      
+      // Check if the obj value difference is below EPSILON_VAL
+      // Increment counter if it is
+      if (m_obj_value_diff <= EPSILON_VAL) {
+    	  num_converge_iters++;
+      }
+      
+      //reset the convergence counter if the objective value difference slips above EPSILON_VAL
+      if (m_obj_value_diff > EPSILON_VAL) {
+    	  num_converge_iters = 0;
+      }
+      // Once it reaches 10, it should stop training. Handled by GadgetProtocol code.
+    }
+  
+  /**
+   * Mini-batch training. Runs m_epochs passes over a shuffled copy of the
+   * indices of the data; each step takes the next m_miniBatchSz examples,
+   * accumulates their sub-gradient into a reusable sparse buffer and applies
+   * a single update with step size 1/(lambda t), followed by the projection.
+   * m_t is advanced by one for every step, so consecutive calls continue
+   * the learning rate schedule.
+   * 
+   * @param data the training instances
+   * @throws Exception if the model could not be updated
+   */
+  public void trainMiniBatch(Instances data) throws Exception 
+  {
+     int n = data.numInstances();
+     int batch = Math.max(1, m_miniBatchSz);
+     int[] order = new int[n];
+     for (int i = 0; i < n; i++) {
+       order[i] = i;
+     }
+     
+     for (int e = 0; e < m_epochs; e++) {
+       // Fisher-Yates shuffle of the visiting order
+       for (int i = n - 1; i > 0; i--) {
+         int j = m_random.nextInt(i + 1);
+         int tmp = order[i];
+         order[i] = order[j];
+         order[j] = tmp;
+       }
+       for (int start = 0; start < n; start += batch) {
+         int end = Math.min(n, start + batch);
+         updateMiniBatch(data, order, start, end);
+         m_t++;
+       }
      }
       
       // Check if the obj value difference is below EPSILON_VAL
@@ -562,6 +720,76 @@ public class SPegasosGadget extends Classifier
       // Once it reaches 10, it should stop training. Handled by GadgetProtocol code.
     }
   
+  /**
+   * Performs one mini-batch step with the examples order[start..end-1].
+   * The loss of every example is evaluated against the weights before the
+   * step, and the reported loss is the average over the batch.
+   * 
+   * @param data the training instances
+   * @param order the visiting order
+   * @param start the first position in order (inclusive)
+   * @param end the last position in order (exclusive)
+   * @throws Exception if the model could not be updated
+   */
+  protected void updateMiniBatch(Instances data, int[] order, int start, int end) 
+    throws Exception {
+    
+    double lossSum = 0;
+    int count = 0;
+    for (int b = start; b < end; b++) {
+      Instance instance = data.instance(order[b]);
+      if (instance.classIsMissing()) {
+        continue;
+      }
+      count++;
+      double y = (instance.classValue() == 0) ? -1 : 1;
+      double z = y * m_wv.dotProduct(instance, instance.classIndex());
+      double dl = dloss(z);
+      lossSum += dl;
+      if (m_loss == LOGLOSS || (z < 1)) {
+        int n1 = instance.numValues();
+        for (int p1 = 0; p1 < n1; p1++) {
+          int indS = instance.index(p1);
+          if (indS < m_gradBuffer.length && indS != instance.classIndex() 
+              && !instance.isMissingSparse(p1)) {
+            if (!m_isTouched[indS]) {
+              m_isTouched[indS] = true;
+              m_touched[m_numTouched++] = indS;
+            }
+            m_gradBuffer[indS] += dl * instance.valueSparse(p1) * y;
+          }
+        }
+      }
+    }
+    if (count == 0) {
+      return;
+    }
+    
+    double learningRate = 1.0 / (m_lambda * m_t);
+    m_wv.scale(1.0 - 1.0 / m_t);
+    double step = learningRate / count;
+    for (int k = 0; k < m_numTouched; k++) {
+      int indS = m_touched[k];
+      m_wv.add(indS, step * m_gradBuffer[indS]);
+      m_gradBuffer[indS] = 0;
+      m_isTouched[indS] = false;
+    }
+    m_numTouched = 0;
+    
+    double norm = m_wv.squaredNorm();
+    m_loss_value = lossSum / count;
+    m_obj_value = m_loss_value + norm*(m_lambda/2);
+    m_obj_value_diff = Math.abs(m_obj_value - m_obj_value_prev);
+    m_obj_value_prev = m_obj_value;
+    wt_norm = norm;
+    
+    // Apply projection
+    double scale2 = Math.min(1.0, (1.0 / (m_lambda * norm)));
+    if (scale2 < 1.0) {
+      m_wv.project(Math.sqrt(scale2));
+    }
+  }
+  
   public void trainMom(Instances data) throws Exception 
   {
      //for (int i = 0; i < m_miniBatchSz; i++) 
@@ -571,11 +799,7 @@ public class SPegasosGadget extends Classifier
      }
 	 //System.out.println("Exited updateMomClassifier");
      //For mini-batches, normalize weights by mini-batch size
-     for(int k=0;k<m_weights.length;k++)
-     {
-    	 m_weights[k] = m_weights[k]/m_miniBatchSz;
-    	 //m_weights[k] = m_weights[k]/data.numInstances();
-     }
+     m_wv.scaleAll(1.0 / m_miniBatchSz);
       
       // Check if the obj value difference is below EPSILON_VAL
       // Increment counter if it is
@@ -599,11 +823,7 @@ public class SPegasosGadget extends Classifier
         updateNAGClassifier(data.instance(i));
      }
      //For mini-batches, normalize weights by mini-batch size
-     for(int k=0;k<m_weights.length;k++)
-     {
-    	 m_weights[k] = m_weights[k]/m_miniBatchSz;
-    	 //m_weights[k] = m_weights[k]/data.numInstances();
-     }
+     m_wv.scaleAll(1.0 / m_miniBatchSz);
       
       // Check if the obj value difference is below EPSILON_VAL
       // Increment counter if it is
@@ -684,14 +904,11 @@ public class SPegasosGadget extends Classifier
       //double scale = 1.0 - learningRate * m_lambda;
       double scale = 1.0 - 1.0 / m_t;
       double y = (instance.classValue() == 0) ? -1 : 1;
-      double wx = dotProd(instance, m_weights, instance.classIndex());
+      double wx = m_wv.dotProduct(instance, instance.classIndex());
       double z = y * (wx);        
 
-      for (int j = 0; j < m_weights.length; j++) {
-        if (j != instance.classIndex()) {
-          m_weights[j] *= scale;
-        }
-      }
+      // shrinking the weights only changes the implicit scale
+      m_wv.scale(scale);
       
       if (m_loss == LOGLOSS || (z < 1)) {
         m_loss_value = dloss(z);
@@ -700,7 +917,7 @@ public class SPegasosGadget extends Classifier
           int indS = instance.index(p1);
           if (indS != instance.classIndex() &&  !instance.isMissingSparse(p1)) {
             double m = learningRate * m_loss_value * (instance.valueSparse(p1) * y);
-            m_weights[indS] += m;
+            m_wv.add(indS, m);
           }
         }
         
@@ -708,12 +925,7 @@ public class SPegasosGadget extends Classifier
        // m_weights[m_weights.length - 1] += learningRate * m_loss_value * y;
       }
       
-      double norm = 0;
-      for (int k = 0; k < m_weights.length; k++) {
-        if (k != instance.classIndex()) {
-          norm += (m_weights[k] * m_weights[k]);
-        }
-      }
+      double norm = m_wv.squaredNorm();
       
       m_loss_value = dloss(z);
       m_obj_value = m_loss_value + norm*(m_lambda/2);
@@ -737,11 +949,7 @@ public class SPegasosGadget extends Classifier
       double scale2 = Math.min(1.0, (1.0 / (m_lambda * norm)));
       if (scale2 < 1.0) {
         scale2 = Math.sqrt(scale2);
-        for (int j = 0; j < m_weights.length - 1; j++) {
-          if (j != instance.classIndex()) {
-            m_weights[j] *= scale2;
-          }
-        }
+        m_wv.project(scale2);
       }            
     }
   }
@@ -763,6 +971,7 @@ public void updateMomClassifier(Instance instance) throws Exception
 	  //System.out.println("Enters updateMomClassifier");
     //if (!instance.classIsMissing()) 
     //{  
+      m_weights = m_wv.materialize();
       double learningRate = 1.0 / (m_lambda * m_t);
       //double scale = 1.0 - learningRate * m_lambda;
       double scale = 1.0 - 1.0 / m_t;
@@ -828,6 +1037,7 @@ public void updateMomClassifier(Instance instance) throws Exception
           }
         }
       } // end of projection           
+      m_wv.wrap(m_weights);
     //}
   }
   
@@ -842,6 +1052,7 @@ public void updateMomClassifier(Instance instance) throws Exception
    */
   public void updateNAGClassifier(Instance instance) throws Exception 
   {
+      m_weights = m_wv.materialize();
       double learningRate = 1.0 / (m_lambda * m_t);
       //double scale = 1.0 - learningRate * m_lambda;
       double scale = 1.0 - 1.0 / m_t;
@@ -912,6 +1123,7 @@ public void updateMomClassifier(Instance instance) throws Exception
           }
         }
       }
+      m_wv.wrap(m_weights);
       
   }
   
@@ -941,7 +1153,7 @@ public void updateMomClassifier(Instance instance) throws Exception
       inst = m_normalize.output();
     }
 
-    double wx = dotProd(inst, m_weights, inst.classIndex());// * m_wScale;
+    double wx = m_wv.dotProduct(inst, inst.classIndex());
     double z = (wx);
     //System.out.print("" + z + ": ");
     // System.out.println(1.0 / (1.0 + Math.exp(-z)));
@@ -973,6 +1185,7 @@ public void updateMomClassifier(Instance instance) throws Exception
     if (m_weights == null) {
       return "SPegasos: No model built yet.\n";
     }
+    double[] weights = getWeights();
     StringBuffer buff = new StringBuffer();
     buff.append("Loss function: ");
     if (m_loss == HINGE) {
@@ -982,7 +1195,7 @@ public void updateMomClassifier(Instance instance) throws Exception
     }
     int printed = 0;
     
-    for (int i = 0 ; i < m_weights.length; i++) {
+    for (int i = 0 ; i < weights.length; i++) {
       if (i != m_data.classIndex()) {
         if (printed > 0) {
           buff.append(" + ");
@@ -990,7 +1203,7 @@ public void updateMomClassifier(Instance instance) throws Exception
           buff.append("   ");
         }
 
-        buff.append(Utils.doubleToString(m_weights[i], 12, 4) +
+        buff.append(Utils.doubleToString(weights[i], 12, 4) +
             " " + ((m_normalize != null) ? "(normalized) " : "") 
             + m_data.attribute(i).name() + "\n");
 
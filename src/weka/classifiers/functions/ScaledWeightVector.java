@@ -0,0 +1,265 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ScaledWeightVector.java
+ *
+ */
+
+package weka.classifiers.functions;
+
+import weka.core.Instance;
+
+import java.io.Serializable;
+
+/**
+ * A primal weight vector for the stochastic sub-gradient solvers that keeps
+ * a global scale factor and the squared norm implicitly. The weight of a
+ * regular coordinate i is <code>scale * v[i]</code>, so shrinking the whole
+ * vector, computing its norm and projecting it onto the Pegasos ball are O(1),
+ * and one sub-gradient step only costs O(nnz(x)).
+ * <p/>
+ * Two coordinates are kept explicitly (unscaled) in the backing array, to
+ * reproduce the dense update of SPegasosGadget exactly:
+ * <ul>
+ *   <li>the class index, which is never shrunk and not part of the norm</li>
+ *   <li>the last (bias) coordinate, which is shrunk and part of the norm, but
+ *   is not projected</li>
+ * </ul>
+ * The dense weights are only materialised on request by folding the scale
+ * back into the backing array.
+ *
+ * @version $Revision: 1 $
+ */
+public class ScaledWeightVector
+  implements Serializable {
+
+  /** for serialization */
+  private static final long serialVersionUID = 4526310942915388265L;
+
+  /** Below this scale the factor is folded back into the values */
+  protected static final double MIN_SCALE = 1e-9;
+
+  /** The backing array */
+  protected double[] m_values;
+
+  /** The implicit scale of the regular coordinates */
+  protected double m_scale = 1.0;
+
+  /** The squared norm of the regular coordinates, scale included */
+  protected double m_sqNorm = 0.0;
+
+  /** Coordinate that is neither shrunk nor part of the norm, -1 for none */
+  protected int m_classIndex;
+
+  /** Coordinate that is not projected, -1 for none */
+  protected int m_biasIndex;
+
+  /**
+   * Wraps the given dense array. The array becomes the backing store of this
+   * vector, and must not be modified directly afterwards except through
+   * {@link #wrap(double[])}.
+   *
+   * @param values the dense weights
+   * @param classIndex the index of the class attribute
+   */
+  public ScaledWeightVector(double[] values, int classIndex) {
+    m_classIndex = (classIndex >= 0 && classIndex < values.length) ? classIndex : -1;
+    m_biasIndex = (values.length - 1 != m_classIndex) ? values.length - 1 : -1;
+    wrap(values);
+  }
+
+  /**
+   * Replaces the backing array with the given dense weights and recomputes
+   * the squared norm.
+   *
+   * @param values the new dense weights
+   */
+  public void wrap(double[] values) {
+    m_values = values;
+    m_scale = 1.0;
+    double norm = 0;
+    for (int k = 0; k < values.length; k++) {
+      if (k != m_classIndex && k != m_biasIndex) {
+        norm += values[k] * values[k];
+      }
+    }
+    m_sqNorm = norm;
+  }
+
+  /**
+   * Returns the dimension of the vector.
+   *
+   * @return the number of coordinates
+   */
+  public int size() {
+    return m_values.length;
+  }
+
+  /**
+   * Returns the weight of the given coordinate.
+   *
+   * @param index the coordinate
+   * @return the weight
+   */
+  public double get(int index) {
+    if (index == m_classIndex || index == m_biasIndex) {
+      return m_values[index];
+    }
+    return m_scale * m_values[index];
+  }
+
+  /**
+   * Adds the given amount to one coordinate, O(1).
+   *
+   * @param index the coordinate
+   * @param delta the amount to add
+   */
+  public void add(int index, double delta) {
+    if (index == m_classIndex || index == m_biasIndex) {
+      m_values[index] += delta;
+      return;
+    }
+    double old = m_scale * m_values[index];
+    double updated = old + delta;
+    m_values[index] += delta / m_scale;
+    m_sqNorm += updated * updated - old * old;
+  }
+
+  /**
+   * Multiplies every coordinate but the class index by the given factor, O(1).
+   *
+   * @param s the factor
+   */
+  public void scale(double s) {
+    if (m_biasIndex >= 0) {
+      m_values[m_biasIndex] *= s;
+    }
+    rescale(s);
+  }
+
+  /**
+   * Multiplies every coordinate but the class index and the bias by the
+   * given factor, O(1).
+   *
+   * @param s the factor
+   */
+  public void project(double s) {
+    rescale(s);
+  }
+
+  /**
+   * Multiplies every coordinate, class index included, by the given factor.
+   *
+   * @param s the factor
+   */
+  public void scaleAll(double s) {
+    if (m_classIndex >= 0) {
+      m_values[m_classIndex] *= s;
+    }
+    scale(s);
+  }
+
+  /**
+   * Applies a factor to the regular coordinates only.
+   *
+   * @param s the factor
+   */
+  protected void rescale(double s) {
+    if (s == 0.0) {
+      for (int k = 0; k < m_values.length; k++) {
+        if (k != m_classIndex && k != m_biasIndex) {
+          m_values[k] = 0;
+        }
+      }
+      m_scale = 1.0;
+      m_sqNorm = 0;
+      return;
+    }
+    m_scale *= s;
+    m_sqNorm *= s * s;
+    if (Math.abs(m_scale) < MIN_SCALE) {
+      fold();
+    }
+  }
+
+  /**
+   * Returns the squared norm of all coordinates but the class index, O(1).
+   *
+   * @return the squared norm
+   */
+  public double squaredNorm() {
+    double bias = (m_biasIndex >= 0) ? m_values[m_biasIndex] : 0;
+    return m_sqNorm + bias * bias;
+  }
+
+  /**
+   * Computes the dot product with the given instance, skipping the class and
+   * missing values, in O(nnz(x)).
+   *
+   * @param inst the instance
+   * @param classIndex the class index of the instance
+   * @return the dot product
+   */
+  public double dotProduct(Instance inst, int classIndex) {
+    double regular = 0;
+    double special = 0;
+    int n = inst.numValues();
+    for (int p = 0; p < n; p++) {
+      int ind = inst.index(p);
+      if (ind >= m_values.length) {
+        break;
+      }
+      if (ind != classIndex && !inst.isMissingSparse(p)) {
+        if (ind == m_classIndex || ind == m_biasIndex) {
+          special += inst.valueSparse(p) * m_values[ind];
+        } else {
+          regular += inst.valueSparse(p) * m_values[ind];
+        }
+      }
+    }
+    return m_scale * regular + special;
+  }
+
+  /**
+   * Folds the scale back into the backing array and returns it. The squared
+   * norm is recomputed exactly at the same time. The returned array is the
+   * live backing store.
+   *
+   * @return the dense weights
+   */
+  public double[] materialize() {
+    if (m_scale != 1.0) {
+      fold();
+    }
+    return m_values;
+  }
+
+  /**
+   * Multiplies the regular coordinates by the scale and resets it to one.
+   */
+  protected void fold() {
+    double norm = 0;
+    for (int k = 0; k < m_values.length; k++) {
+      if (k != m_classIndex && k != m_biasIndex) {
+        m_values[k] *= m_scale;
+        norm += m_values[k] * m_values[k];
+      }
+    }
+    m_scale = 1.0;
+    m_sqNorm = norm;
+  }
+}
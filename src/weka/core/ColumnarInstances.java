@@ -0,0 +1,984 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ColumnarInstances.java
+ *    Copyright (C) 2006 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.DoubleBuffer;
+
+/**
+ * A set of instances that stores the values of each attribute, and the
+ * weights, in one buffer of doubles. The instances of the set are
+ * {@link Row}s: views that read and write their values in these buffers, so
+ * that a row only costs the view object. The buffers are usually arrays on
+ * the heap, but can also be read-only views of a memory-mapped file (see
+ * {@link weka.core.converters.BinaryInstancesLoader}); such a buffer is only
+ * copied to the heap when one of its values is changed. Code that works with
+ * {@link Instances} keeps working; scans over one attribute (meanOrMode,
+ * variance, attributeStats, kthSmallestValue, sort, ...) read the arrays
+ * directly instead of going through every instance.
+ * <p>
+ *
+ * Typical usage:
+ * <p>
+ *
+ * <pre>
+ * Instances data = new ColumnarInstances(source.getDataSet());
+ * </pre>
+ * <p>
+ *
+ * Notes:
+ * <ul>
+ * <li>Sparse instances are stored like dense ones and their views are dense.</li>
+ * <li>The views belong to the set: after delete() or compactify() the ones
+ * that are not in the set anymore must not be used. Use copy() for an
+ * instance of its own, as add() of any other set does.</li>
+ * <li>Sets created from this one with the constructors of Instances, or with
+ * trainCV, testCV, resample, etc., are ordinary Instances.</li>
+ * </ul>
+ *
+ * @version $Revision: 1 $
+ */
+public class ColumnarInstances extends Instances {
+
+  /** for serialization */
+  static final long serialVersionUID = 6385474391720374549L;
+
+  /** The values, one buffer per attribute, indexed by row. */
+  protected transient DoubleBuffer[] m_Columns;
+
+  /** The weights, indexed by row. */
+  protected transient DoubleBuffer m_Weights;
+
+  /** The number of rows in use in the arrays. */
+  protected int m_NumRows;
+
+  /** The row of each instance of the set, in the same order. */
+  protected int[] m_Rows;
+
+  /**
+   * Constructor copying the header information and the values and weights of
+   * all instances of the given set.
+   *
+   * @param dataset the set to be copied
+   */
+  public ColumnarInstances(/* @non_null@ */Instances dataset) {
+
+    this(dataset, dataset.numInstances());
+
+    dataset.copyInstances(0, this, dataset.numInstances());
+  }
+
+  /**
+   * Constructor creating an empty set of instances. Copies references to the
+   * header information from the given set of instances.
+   *
+   * @param dataset the instances from which the header information is to be
+   *          taken
+   * @param capacity the number of rows to reserve
+   */
+  public ColumnarInstances(/* @non_null@ */Instances dataset, int capacity) {
+
+    super(dataset, capacity);
+
+    if (capacity < 0) {
+      capacity = 0;
+    }
+    m_Columns = new DoubleBuffer[numAttributes()];
+    for (int j = 0; j < m_Columns.length; j++) {
+      m_Columns[j] = DoubleBuffer.wrap(new double[capacity]);
+    }
+    m_Weights = DoubleBuffer.wrap(new double[capacity]);
+    m_Rows = new int[capacity];
+    m_NumRows = 0;
+  }
+
+  /**
+   * Constructor that uses the given arrays, which must not be modified
+   * afterwards, as the values of the instances.
+   *
+   * @param dataset the instances from which the header information is to be
+   *          taken
+   * @param columns the values, one array of the same length per attribute
+   * @param weights the weights, or null if all are 1
+   * @throws IllegalArgumentException if the arrays don't match the header or
+   *           each other
+   */
+  public ColumnarInstances(/* @non_null@ */Instances dataset,
+  /* @non_null@ */double[][] columns, double[] weights) {
+
+    this(dataset, wrap(columns), (weights == null) ? null : DoubleBuffer
+      .wrap(weights));
+  }
+
+  /**
+   * Constructor that uses the given buffers as the values of the instances,
+   * from index 0 to their capacity. Writable buffers must not be modified
+   * afterwards, except through this set. Read-only buffers, such as views of
+   * a file mapped in memory, are only read; a column (or the weights) is
+   * copied to the heap when one of its values is changed.
+   *
+   * @param dataset the instances from which the header information is to be
+   *          taken
+   * @param columns the values, one buffer of the same capacity per attribute
+   * @param weights the weights, or null if all are 1
+   * @throws IllegalArgumentException if the buffers don't match the header or
+   *           each other
+   */
+  public ColumnarInstances(/* @non_null@ */Instances dataset,
+  /* @non_null@ */DoubleBuffer[] columns, DoubleBuffer weights) {
+
+    super(dataset, 0);
+
+    int n;
+    if (columns.length != numAttributes()) {
+      throw new IllegalArgumentException("Expected " + numAttributes()
+        + " columns, got " + columns.length);
+    }
+    if (columns.length > 0) {
+      n = columns[0].capacity();
+    } else if (weights != null) {
+      n = weights.capacity();
+    } else {
+      n = 0;
+    }
+    for (int j = 0; j < columns.length; j++) {
+      if (columns[j].capacity() != n) {
+        throw new IllegalArgumentException("Columns of different lengths");
+      }
+    }
+    if (weights == null) {
+      double[] ones = new double[n];
+      java.util.Arrays.fill(ones, 1.0);
+      weights = DoubleBuffer.wrap(ones);
+    } else if (weights.capacity() != n) {
+      throw new IllegalArgumentException("Weights and columns of different "
+        + "lengths");
+    }
+
+    m_Columns = columns.clone();
+    m_Weights = weights;
+    m_Rows = new int[n];
+    m_NumRows = n;
+    m_Instances = new FastVector(n);
+    for (int i = 0; i < n; i++) {
+      m_Rows[i] = i;
+      m_Instances.addElement(new Row(this, i));
+    }
+  }
+
+  /**
+   * Makes room for the given number of rows and instances.
+   *
+   * @param capacity the number of rows needed
+   */
+  protected void ensureCapacity(int capacity) {
+
+    if (m_Weights.capacity() < capacity) {
+      int newCapacity = Math.max(capacity, 2 * m_Weights.capacity());
+      for (int j = 0; j < m_Columns.length; j++) {
+        m_Columns[j] = DoubleBuffer.wrap(toArray(m_Columns[j], m_NumRows,
+          newCapacity));
+      }
+      m_Weights = DoubleBuffer.wrap(toArray(m_Weights, m_NumRows, newCapacity));
+    }
+    if (m_Rows.length < capacity) {
+      int[] rows = new int[Math.max(capacity, 2 * m_Rows.length)];
+      System.arraycopy(m_Rows, 0, rows, 0, numInstances());
+      m_Rows = rows;
+    }
+  }
+
+  /**
+   * Adds one instance to the end of the set, copying its values and weight
+   * into a new row. Does not check if the instance is compatible with the
+   * dataset. Note: String or relational values are not transferred.
+   *
+   * @param instance the instance to be added
+   */
+  public void add(/* @non_null@ */Instance instance) {
+
+    ensureCapacity(Math.max(m_NumRows, numInstances()) + 1);
+    int row = m_NumRows++;
+    if (instance instanceof SparseInstance) {
+      for (int j = 0; j < m_Columns.length; j++) {
+        writableColumn(j).put(row, 0);
+      }
+      for (int k = 0; k < instance.numValues(); k++) {
+        m_Columns[instance.index(k)].put(row, instance.valueSparse(k));
+      }
+    } else {
+      for (int j = 0; j < m_Columns.length; j++) {
+        writableColumn(j).put(row, instance.value(j));
+      }
+    }
+    writableWeights().put(row, instance.weight());
+    m_Rows[numInstances()] = row;
+    m_Instances.addElement(new Row(this, row));
+  }
+
+  /**
+   * Stores the rows in the order of the instances, drops the rows of deleted
+   * instances and decreases the capacity to the number of instances. Column
+   * scans are fastest after this.
+   */
+  public void compactify() {
+
+    int n = numInstances();
+    for (int j = 0; j < m_Columns.length; j++) {
+      m_Columns[j] = DoubleBuffer.wrap(gather(m_Columns[j]));
+    }
+    m_Weights = DoubleBuffer.wrap(gather(m_Weights));
+    for (int i = 0; i < n; i++) {
+      ((Row) m_Instances.elementAt(i)).m_Row = i;
+    }
+    m_Rows = new int[n];
+    for (int i = 0; i < n; i++) {
+      m_Rows[i] = i;
+    }
+    m_NumRows = n;
+    super.compactify();
+  }
+
+  /**
+   * Removes all instances from the set. The rows are reused.
+   */
+  public void delete() {
+
+    super.delete();
+    m_NumRows = 0;
+  }
+
+  /**
+   * Removes an instance at the given position from the set. Its row is only
+   * freed by compactify().
+   *
+   * @param index the instance's position (index starts with 0)
+   */
+  public void delete(int index) {
+
+    super.delete(index);
+    System.arraycopy(m_Rows, index + 1, m_Rows, index, numInstances() - index);
+  }
+
+  /**
+   * Deletes an attribute at the given position (0 to numAttributes() - 1),
+   * together with its column.
+   *
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range or the
+   *           class attribute is being deleted
+   */
+  public void deleteAttributeAt(int position) {
+
+    super.deleteAttributeAt(position);
+
+    DoubleBuffer[] columns = new DoubleBuffer[m_Columns.length - 1];
+    System.arraycopy(m_Columns, 0, columns, 0, position);
+    System.arraycopy(m_Columns, position + 1, columns, position,
+      columns.length - position);
+    m_Columns = columns;
+  }
+
+  /**
+   * Inserts an attribute at the given position (0 to numAttributes()), with a
+   * column of missing values.
+   *
+   * @param att the attribute to be inserted
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range
+   */
+  public void insertAttributeAt(/* @non_null@ */Attribute att, int position) {
+
+    super.insertAttributeAt(att, position);
+
+    DoubleBuffer[] columns = new DoubleBuffer[m_Columns.length + 1];
+    System.arraycopy(m_Columns, 0, columns, 0, position);
+    double[] missing = new double[m_Weights.capacity()];
+    java.util.Arrays.fill(missing, Instance.missingValue());
+    columns[position] = DoubleBuffer.wrap(missing);
+    System.arraycopy(m_Columns, position, columns, position + 1,
+      m_Columns.length - position);
+    m_Columns = columns;
+  }
+
+  /**
+   * Removes all instances with missing values for a particular attribute from
+   * the dataset.
+   *
+   * @param attIndex the attribute's index (index starts with 0)
+   */
+  public void deleteWithMissing(int attIndex) {
+
+    DoubleBuffer column = m_Columns[attIndex];
+    FastVector newInstances = new FastVector(numInstances());
+    int n = 0;
+    for (int i = 0; i < numInstances(); i++) {
+      if (!Instance.isMissingValue(column.get(m_Rows[i]))) {
+        newInstances.addElement(m_Instances.elementAt(i));
+        m_Rows[n++] = m_Rows[i];
+      }
+    }
+    m_Instances = newInstances;
+  }
+
+  /**
+   * Returns the kth-smallest attribute value of a numeric attribute. Missing
+   * values are treated as Double.MAX_VALUE.
+   *
+   * @param attIndex the attribute's index
+   * @param k the value of k
+   * @return the kth-smallest value
+   */
+  public double kthSmallestValue(int attIndex, int k) {
+
+    if (!attribute(attIndex).isNumeric()) {
+      throw new IllegalArgumentException(
+        "Instances: attribute must be numeric to compute kth-smallest value.");
+    }
+
+    if ((k < 1) || (k > numInstances())) {
+      throw new IllegalArgumentException(
+        "Instances: value for k for computing kth-smallest value too large.");
+    }
+
+    return Utils.kthSmallestValue(valuesWithNoMissing(attIndex), k);
+  }
+
+  /**
+   * Returns the mean (mode) for a numeric (nominal) attribute as a
+   * floating-point value. Returns 0 if the attribute is neither nominal nor
+   * numeric. If all values are missing it returns zero.
+   *
+   * @param attIndex the attribute's index (index starts with 0)
+   * @return the mean or the mode
+   */
+  public/* @pure@ */double meanOrMode(int attIndex) {
+
+    DoubleBuffer column = m_Columns[attIndex];
+    double result, found, value;
+    int[] counts;
+
+    if (attribute(attIndex).isNumeric()) {
+      result = found = 0;
+      for (int i = 0; i < numInstances(); i++) {
+        value = column.get(m_Rows[i]);
+        if (!Instance.isMissingValue(value)) {
+          found += m_Weights.get(m_Rows[i]);
+          result += m_Weights.get(m_Rows[i]) * value;
+        }
+      }
+      if (found <= 0) {
+        return 0;
+      } else {
+        return result / found;
+      }
+    } else if (attribute(attIndex).isNominal()) {
+      counts = new int[attribute(attIndex).numValues()];
+      for (int i = 0; i < numInstances(); i++) {
+        value = column.get(m_Rows[i]);
+        if (!Instance.isMissingValue(value)) {
+          counts[(int) value] += m_Weights.get(m_Rows[i]);
+        }
+      }
+      return Utils.maxIndex(counts);
+    } else {
+      return 0;
+    }
+  }
+
+  /**
+   * Returns the number of distinct values of a given attribute. Returns the
+   * number of instances if the attribute is a string attribute. The value
+   * 'missing' is not counted.
+   *
+   * @param attIndex the attribute (index starts with 0)
+   * @return the number of distinct values of a given attribute
+   */
+  public/* @pure@ */int numDistinctValues(int attIndex) {
+
+    if (attribute(attIndex).isNumeric()) {
+      double[] attVals = attributeToDoubleArray(attIndex);
+      int[] sorted = Utils.sort(attVals);
+      double prev = 0;
+      int counter = 0;
+      for (int i = 0; i < sorted.length; i++) {
+        double value = attVals[sorted[i]];
+        if (Instance.isMissingValue(value)) {
+          break;
+        }
+        if ((i == 0) || (value > prev)) {
+          prev = value;
+          counter++;
+        }
+      }
+      return counter;
+    } else {
+      return attribute(attIndex).numValues();
+    }
+  }
+
+  /**
+   * Sorts the instances based on an attribute. For numeric attributes,
+   * instances are sorted in ascending order. For nominal attributes, instances
+   * are sorted based on the attribute label ordering specified in the header.
+   * Instances with missing values for the attribute are placed at the end of
+   * the dataset. The rows are not moved, call compactify() for that.
+   *
+   * @param attIndex the attribute's index (index starts with 0)
+   */
+  public void sort(int attIndex) {
+
+    int[] sortOrder = Utils.sortWithNoMissingValues(valuesWithNoMissing(attIndex));
+    Object[] backup = new Object[sortOrder.length];
+    int[] rows = new int[sortOrder.length];
+    for (int i = 0; i < sortOrder.length; i++) {
+      backup[i] = m_Instances.elementAt(i);
+      rows[i] = m_Rows[i];
+    }
+    for (int i = 0; i < sortOrder.length; i++) {
+      m_Instances.setElementAt(backup[sortOrder[i]], i);
+      m_Rows[i] = rows[sortOrder[i]];
+    }
+  }
+
+  /**
+   * Computes the sum of all the instances' weights.
+   *
+   * @return the sum of all the instances' weights as a double
+   */
+  public/* @pure@ */double sumOfWeights() {
+
+    double sum = 0;
+
+    for (int i = 0; i < numInstances(); i++) {
+      sum += m_Weights.get(m_Rows[i]);
+    }
+    return sum;
+  }
+
+  /**
+   * Swaps two instances in the set.
+   *
+   * @param i the first instance's index (index starts with 0)
+   * @param j the second instance's index (index starts with 0)
+   */
+  public void swap(int i, int j) {
+
+    super.swap(i, j);
+
+    int row = m_Rows[i];
+    m_Rows[i] = m_Rows[j];
+    m_Rows[j] = row;
+  }
+
+  /**
+   * Computes the variance for a numeric attribute.
+   *
+   * @param attIndex the numeric attribute (index starts with 0)
+   * @return the variance if the attribute is numeric
+   * @throws IllegalArgumentException if the attribute is not numeric
+   */
+  public/* @pure@ */double variance(int attIndex) {
+
+    DoubleBuffer column = m_Columns[attIndex];
+    double sum = 0, sumSquared = 0, sumOfWeights = 0, value, weight;
+
+    if (!attribute(attIndex).isNumeric()) {
+      throw new IllegalArgumentException(
+        "Can't compute variance because attribute is " + "not numeric!");
+    }
+    for (int i = 0; i < numInstances(); i++) {
+      value = column.get(m_Rows[i]);
+      if (!Instance.isMissingValue(value)) {
+        weight = m_Weights.get(m_Rows[i]);
+        sum += weight * value;
+        sumSquared += weight * value * value;
+        sumOfWeights += weight;
+      }
+    }
+    if (sumOfWeights <= 1) {
+      return 0;
+    }
+    double result = (sumSquared - (sum * sum / sumOfWeights))
+      / (sumOfWeights - 1);
+
+    // We don't like negative variance
+    if (result < 0) {
+      return 0;
+    } else {
+      return result;
+    }
+  }
+
+  /**
+   * Calculates summary statistics on the values that appear in this set of
+   * instances for a specified attribute.
+   *
+   * @param index the index of the attribute to summarize (index starts with 0)
+   * @return an AttributeStats object with it's fields calculated.
+   */
+  public AttributeStats attributeStats(int index) {
+
+    AttributeStats result = new AttributeStats();
+    if (attribute(index).isNominal()) {
+      result.nominalCounts = new int[attribute(index).numValues()];
+    }
+    if (attribute(index).isNumeric()) {
+      result.numericStats = new weka.experiment.Stats();
+    }
+    result.totalCount = numInstances();
+
+    double[] attVals = attributeToDoubleArray(index);
+    int[] sorted = Utils.sort(attVals);
+    int currentCount = 0;
+    double prev = Instance.missingValue();
+    for (int j = 0; j < numInstances(); j++) {
+      double value = attVals[sorted[j]];
+      if (Instance.isMissingValue(value)) {
+        result.missingCount = numInstances() - j;
+        break;
+      }
+      if (value == prev) {
+        currentCount++;
+      } else {
+        result.addDistinct(prev, currentCount);
+        currentCount = 1;
+        prev = value;
+      }
+    }
+    result.addDistinct(prev, currentCount);
+    result.distinctCount--; // So we don't count "missing" as a value
+    return result;
+  }
+
+  /**
+   * Gets the value of all instances in this dataset for a particular attribute.
+   *
+   * @param index the index of the attribute.
+   * @return an array containing the value of the desired attribute for each
+   *         instance in the dataset.
+   */
+  public/* @pure@ */double[] attributeToDoubleArray(int index) {
+
+    return gather(m_Columns[index]);
+  }
+
+  /**
+   * Help function needed for stratification of set.
+   *
+   * @param numFolds the number of folds for the stratification
+   */
+  protected void stratStep(int numFolds) {
+
+    super.stratStep(numFolds);
+
+    for (int i = 0; i < numInstances(); i++) {
+      m_Rows[i] = ((Row) m_Instances.elementAt(i)).m_Row;
+    }
+  }
+
+  /**
+   * Returns the values of the instances from a buffer indexed by row.
+   *
+   * @param column the buffer indexed by row
+   * @return the values, in the order of the instances
+   */
+  protected double[] gather(DoubleBuffer column) {
+
+    double[] result = new double[numInstances()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = column.get(m_Rows[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the column of an attribute, copied to the heap first if it is
+   * read-only.
+   *
+   * @param attIndex the attribute's index
+   * @return the column, which can be changed
+   */
+  protected DoubleBuffer writableColumn(int attIndex) {
+
+    DoubleBuffer column = m_Columns[attIndex];
+    if (column.isReadOnly()) {
+      column = DoubleBuffer.wrap(toArray(column, column.capacity(),
+        column.capacity()));
+      m_Columns[attIndex] = column;
+    }
+    return column;
+  }
+
+  /**
+   * Returns the weights, copied to the heap first if they are read-only.
+   *
+   * @return the weights, which can be changed
+   */
+  protected DoubleBuffer writableWeights() {
+
+    if (m_Weights.isReadOnly()) {
+      m_Weights = DoubleBuffer.wrap(toArray(m_Weights, m_Weights.capacity(),
+        m_Weights.capacity()));
+    }
+    return m_Weights;
+  }
+
+  /**
+   * Copies the beginning of a buffer into a new array.
+   *
+   * @param buffer the buffer
+   * @param length the number of values to copy, from index 0
+   * @param capacity the length of the array
+   * @return the array
+   */
+  protected static double[] toArray(DoubleBuffer buffer, int length,
+    int capacity) {
+
+    double[] result = new double[capacity];
+    DoubleBuffer source = buffer.duplicate();
+    source.clear();
+    source.get(result, 0, length);
+    return result;
+  }
+
+  /**
+   * Wraps arrays in buffers.
+   *
+   * @param columns the arrays
+   * @return the buffers
+   */
+  protected static DoubleBuffer[] wrap(double[][] columns) {
+
+    DoubleBuffer[] result = new DoubleBuffer[columns.length];
+    for (int j = 0; j < columns.length; j++) {
+      result[j] = DoubleBuffer.wrap(columns[j]);
+    }
+    return result;
+  }
+
+  /**
+   * Writes the buffers, which are not serializable, as arrays of the values
+   * of the rows in use.
+   *
+   * @param out the stream
+   * @throws IOException if writing fails
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+
+    out.defaultWriteObject();
+    double[][] columns = new double[m_Columns.length][];
+    for (int j = 0; j < columns.length; j++) {
+      columns[j] = toArray(m_Columns[j], m_NumRows, m_NumRows);
+    }
+    out.writeObject(columns);
+    out.writeObject(toArray(m_Weights, m_NumRows, m_NumRows));
+  }
+
+  /**
+   * Reads the buffers written by writeObject.
+   *
+   * @param in the stream
+   * @throws IOException if reading fails
+   * @throws ClassNotFoundException if a class is missing
+   */
+  private void readObject(ObjectInputStream in) throws IOException,
+    ClassNotFoundException {
+
+    in.defaultReadObject();
+    m_Columns = wrap((double[][]) in.readObject());
+    m_Weights = DoubleBuffer.wrap((double[]) in.readObject());
+  }
+
+  /**
+   * Returns the values of an attribute with the missing values replaced by
+   * Double.MAX_VALUE, in the order of the instances.
+   *
+   * @param attIndex the attribute's index
+   * @return the values
+   */
+  protected double[] valuesWithNoMissing(int attIndex) {
+
+    double[] result = gather(m_Columns[attIndex]);
+    for (int i = 0; i < result.length; i++) {
+      if (Instance.isMissingValue(result[i])) {
+        result[i] = Double.MAX_VALUE;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1 $");
+  }
+
+  /**
+   * An instance of a {@link ColumnarInstances} set: a view of one of its rows.
+   * Changing a value or the weight changes the row, as it does for an
+   * ordinary instance of a set.
+   */
+  public static class Row extends Instance {
+
+    /** for serialization */
+    static final long serialVersionUID = -3049384017245830215L;
+
+    /** The set that stores the values. */
+    protected ColumnarInstances m_Store;
+
+    /** The row of the values in the set. */
+    protected int m_Row;
+
+    /**
+     * Creates a view of a row, with access to the given set.
+     *
+     * @param store the set that stores the values
+     * @param row the row
+     */
+    protected Row(ColumnarInstances store, int row) {
+
+      m_Store = store;
+      m_Row = row;
+      m_AttValues = null;
+      m_Dataset = store;
+    }
+
+    /**
+     * Produces a copy of this instance with its own attribute values. The copy
+     * has access to the same dataset.
+     *
+     * @return the copy
+     */
+    public Object copy() {
+
+      Instance result = new Instance(this);
+      result.m_Dataset = m_Dataset;
+      return result;
+    }
+
+    /**
+     * Not supported, attributes are deleted from the dataset.
+     *
+     * @param position the attribute's position
+     */
+    public void deleteAttributeAt(int position) {
+
+      throw new UnsupportedOperationException(
+        "Instance is a view of a ColumnarInstances row!");
+    }
+
+    /**
+     * Not supported, attributes are inserted into the dataset.
+     *
+     * @param position the attribute's position
+     */
+    public void insertAttributeAt(int position) {
+
+      throw new UnsupportedOperationException(
+        "Instance is a view of a ColumnarInstances row!");
+    }
+
+    /**
+     * Tests if a specific value is "missing".
+     *
+     * @param attIndex the attribute's index
+     * @return true if the value is "missing"
+     */
+    public/* @pure@ */boolean isMissing(int attIndex) {
+
+      return Double.isNaN(m_Store.m_Columns[attIndex].get(m_Row));
+    }
+
+    /**
+     * Tests if a specific value is "missing". Does the same thing as
+     * isMissing().
+     *
+     * @param indexOfIndex the index of the attribute's index
+     * @return true if the value is "missing"
+     */
+    public/* @pure@ */boolean isMissingSparse(int indexOfIndex) {
+
+      return Double.isNaN(m_Store.m_Columns[indexOfIndex].get(m_Row));
+    }
+
+    /**
+     * Returns the number of attributes.
+     *
+     * @return the number of attributes as an integer
+     */
+    public/* @pure@ */int numAttributes() {
+
+      return m_Store.m_Columns.length;
+    }
+
+    /**
+     * Returns the number of values present. Always the same as
+     * numAttributes().
+     *
+     * @return the number of values
+     */
+    public/* @pure@ */int numValues() {
+
+      return m_Store.m_Columns.length;
+    }
+
+    /**
+     * Replaces all missing values in the instance with the values contained
+     * in the given array.
+     *
+     * @param array containing the means and modes
+     * @throws IllegalArgumentException if numbers of attributes are unequal
+     */
+    public void replaceMissingValues(double[] array) {
+
+      if ((array == null) || (array.length != numAttributes())) {
+        throw new IllegalArgumentException("Unequal number of attributes!");
+      }
+      for (int i = 0; i < array.length; i++) {
+        if (isMissing(i)) {
+          m_Store.writableColumn(i).put(m_Row, array[i]);
+        }
+      }
+    }
+
+    /**
+     * Sets a specific value in the instance to the given value (internal
+     * floating-point format).
+     *
+     * @param attIndex the attribute's index
+     * @param value the new attribute value (If the corresponding attribute is
+     *          nominal (or a string) then this is the new value's index as a
+     *          double).
+     */
+    public void setValue(int attIndex, double value) {
+
+      m_Store.writableColumn(attIndex).put(m_Row, value);
+    }
+
+    /**
+     * Sets a specific value in the instance to the given value (internal
+     * floating-point format). Does exactly the same thing as setValue().
+     *
+     * @param indexOfIndex the index of the attribute's index
+     * @param value the new attribute value (If the corresponding attribute is
+     *          nominal (or a string) then this is the new value's index as a
+     *          double).
+     */
+    public void setValueSparse(int indexOfIndex, double value) {
+
+      m_Store.writableColumn(indexOfIndex).put(m_Row, value);
+    }
+
+    /**
+     * Sets the weight of the instance.
+     *
+     * @param weight the weight
+     */
+    public void setWeight(double weight) {
+
+      m_Store.writableWeights().put(m_Row, weight);
+    }
+
+    /**
+     * Returns the values of each attribute as an array of doubles.
+     *
+     * @return an array containing all the instance attribute values
+     */
+    public double[] toDoubleArray() {
+
+      double[] result = new double[numAttributes()];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = m_Store.m_Columns[i].get(m_Row);
+      }
+      return result;
+    }
+
+    /**
+     * Returns an instance's attribute value in internal format.
+     *
+     * @param attIndex the attribute's index
+     * @return the specified value as a double (If the corresponding attribute
+     *         is nominal (or a string) then it returns the value's index as a
+     *         double).
+     */
+    public/* @pure@ */double value(int attIndex) {
+
+      return m_Store.m_Columns[attIndex].get(m_Row);
+    }
+
+    /**
+     * Returns an instance's attribute value in internal format. Does exactly
+     * the same thing as value().
+     *
+     * @param indexOfIndex the index of the attribute's index
+     * @return the specified value as a double (If the corresponding attribute
+     *         is nominal (or a string) then it returns the value's index as a
+     *         double).
+     */
+    public/* @pure@ */double valueSparse(int indexOfIndex) {
+
+      return m_Store.m_Columns[indexOfIndex].get(m_Row);
+    }
+
+    /**
+     * Returns the instance's weight.
+     *
+     * @return the instance's weight as a double
+     */
+    public/* @pure@ */double weight() {
+
+      return m_Store.m_Weights.get(m_Row);
+    }
+
+    /**
+     * Does nothing, the dataset deletes the column.
+     *
+     * @param position the attribute's position
+     */
+    void forceDeleteAttributeAt(int position) {
+    }
+
+    /**
+     * Does nothing, the dataset inserts the column.
+     *
+     * @param position the attribute's position
+     */
+    void forceInsertAttributeAt(int position) {
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision: 1 $");
+    }
+  }
+}
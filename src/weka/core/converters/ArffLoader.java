@@ -31,14 +31,21 @@ import weka.core.RevisionUtils;
 import weka.core.SparseInstance;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.io.StreamTokenizer;
 import java.io.StringReader;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.text.ParseException;
 
 
@@ -70,6 +77,12 @@ public class ArffLoader
   /** The reader for the source file. */
   protected transient Reader m_sourceReader = null;
 
+  /** The source stream, for the fast reader */
+  protected transient InputStream m_sourceStream = null;
+
+  /** whether to read the data with a FastArffReader */
+  protected boolean m_FastReading = false;
+
   /** The parser for the ARFF file */
   protected transient ArffReader m_ArffReader = null;
 
@@ -119,6 +132,12 @@ public class ArffLoader
     /** the number of lines read so far */
     protected int m_Lines;
 
+    /**
+     * Constructor for subclasses that do not read through a tokenizer.
+     */
+    protected ArffReader() {
+    }
+
     /**
      * Reads the data completely from the reader. The data can be accessed
      * via the <code>getData()</code> method.
@@ -836,6 +855,638 @@ public class ArffLoader
     }
   }
 
+  /**
+   * Reads data from an ARFF file like {@link ArffReader}, and gives the same
+   * instances, but reads the bytes of the source through NIO and parses the
+   * data section directly from them, without a tokenizer and without
+   * creating strings for numbers and nominal values. <p/>
+   *
+   * The header is still parsed by {@link ArffReader}. Dense and sparse rows
+   * of numeric and nominal values are parsed directly; a row that uses
+   * anything else (instance weights, escapes in quoted values, non-ASCII
+   * characters, or an error) is handed to an {@link ArffReader} of its own,
+   * which gives the usual result or error message. If the relation has
+   * string, date or relational attributes, the whole data section is read
+   * by an {@link ArffReader}. The source must be in an ASCII compatible
+   * encoding, like UTF-8 or ISO-8859-1, and it is decoded with the default
+   * one, as by {@link ArffLoader}. <p/>
+   *
+   * Typical code for batch usage:
+   * <pre>
+   * InputStream in = new FileInputStream("/some/where/file.arff");
+   * FastArffReader arff = new FastArffReader(in);
+   * Instances data = arff.getData();
+   * data.setClassIndex(data.numAttributes() - 1);
+   * </pre>
+   *
+   * Incremental usage is as with {@link ArffReader}, through
+   * <code>FastArffReader(InputStream, int)</code> and
+   * <code>readInstance(Instances)</code>.
+   *
+   * @version $Revision: 1 $
+   */
+  public static class FastArffReader
+    extends ArffReader {
+
+    /** a word, with its bounds in {@link #m_TokenStart} and {@link #m_TokenEnd} */
+    protected static final int TOKEN_WORD = 0;
+
+    /** the end of the line */
+    protected static final int TOKEN_EOL = 1;
+
+    /** an opening brace */
+    protected static final int TOKEN_OPEN = 2;
+
+    /** a closing brace */
+    protected static final int TOKEN_CLOSE = 3;
+
+    /** something that is left to {@link ArffReader} */
+    protected static final int TOKEN_OTHER = 4;
+
+    /** nominal attributes with more values are looked up by string */
+    protected static final int MAX_SCANNED_VALUES = 16;
+
+    /** the channel to read from */
+    protected ReadableByteChannel m_Channel;
+
+    /** the read buffer */
+    protected byte[] m_Bytes = new byte[1 << 16];
+
+    /** the position of the next unread byte in the buffer */
+    protected int m_Pos = 0;
+
+    /** the number of bytes in the buffer */
+    protected int m_Limit = 0;
+
+    /** whether the end of the channel has been reached */
+    protected boolean m_EOF = false;
+
+    /** whether a '\n' at the start of the buffer ends the previous line */
+    protected boolean m_SkipLF = false;
+
+    /** the start of the current line in the buffer */
+    protected int m_LineStart;
+
+    /** the end of the current line in the buffer */
+    protected int m_LineEnd;
+
+    /** the number of the current line */
+    protected int m_LineNo = 0;
+
+    /** whether the current line still has to be parsed */
+    protected boolean m_Pending = false;
+
+    /** the position of the next token in the current line */
+    protected int m_Next;
+
+    /** the start of the current word */
+    protected int m_TokenStart;
+
+    /** the end of the current word */
+    protected int m_TokenEnd;
+
+    /** whether the current word was quoted */
+    protected boolean m_TokenQuoted;
+
+    /** the reader of the whole data section, if it cannot be parsed here */
+    protected ArffReader m_Delegate = null;
+
+    /** the reader of a single line that cannot be parsed here */
+    protected ArffReader m_LineReader = null;
+
+    /** the structure that the nominal values are indexed for */
+    protected Instances m_Indexed = null;
+
+    /** the ASCII bytes of the values of the nominal attributes */
+    protected byte[][][] m_NominalValues;
+
+    /**
+     * Reads the data completely from the stream. The data can be accessed
+     * via the <code>getData()</code> method.
+     *
+     * @param in		the stream to use
+     * @throws IOException	if something goes wrong
+     * @see			#getData()
+     */
+    public FastArffReader(InputStream in) throws IOException {
+      this(in, 1000);
+
+      Instance inst;
+      while ((inst = readInstance(m_Data)) != null) {
+        m_Data.add(inst);
+      };
+
+      compactify();
+    }
+
+    /**
+     * Reads only the header and reserves the specified space for instances.
+     * Further instances can be read via <code>readInstance()</code>.
+     *
+     * @param in			the stream to use
+     * @param capacity 			the capacity of the new dataset
+     * @throws IOException		if something goes wrong
+     * @throws IllegalArgumentException	if capacity is negative
+     * @see				#getStructure()
+     * @see				#readInstance(Instances)
+     */
+    public FastArffReader(InputStream in, int capacity) throws IOException {
+      if (capacity < 0)
+	throw new IllegalArgumentException("Capacity has to be positive!");
+
+      if (in instanceof FileInputStream)
+	m_Channel = ((FileInputStream) in).getChannel();
+      else
+	m_Channel = Channels.newChannel(in);
+
+      readHeader(capacity);
+      initBuffers();
+    }
+
+    /**
+     * Reads the header up to the "@data" keyword with an
+     * {@link ArffReader}. The rest of that line is the first line of the
+     * data section.
+     *
+     * @param capacity 		the number of instances to reserve in the data
+     * 				structure
+     * @throws IOException 	if the information is not read
+     * 				successfully
+     */
+    protected void readHeader(int capacity) throws IOException {
+      ByteArrayOutputStream	header;
+      ArffReader		reader;
+      int			dataEnd;
+      int			i;
+      boolean			fast;
+
+      header  = new ByteArrayOutputStream();
+      dataEnd = -1;
+      while ((dataEnd == -1) && nextLine()) {
+	dataEnd = findData();
+	if (dataEnd == -1) {
+	  header.write(m_Bytes, m_LineStart, m_LineEnd - m_LineStart);
+	  header.write('\n');
+	}
+	else {
+	  header.write(m_Bytes, m_LineStart, dataEnd - m_LineStart);
+	}
+      }
+
+      // the header is parsed (or rejected) as usual
+      reader = new ArffReader(new StringReader(header.toString()), capacity);
+      m_Data = reader.getData();
+
+      fast = true;
+      for (i = 0; i < m_Data.numAttributes(); i++) {
+	if (!m_Data.attribute(i).isNumeric() && !m_Data.attribute(i).isNominal())
+	  fast = false;
+      }
+
+      if (fast) {
+	m_LineStart = dataEnd;
+	m_Pending   = true;
+      }
+      else {
+	// the bytes from the end of the keyword on are read as usual
+	m_Delegate = new ArffReader(
+	    new BufferedReader(new InputStreamReader(new SequenceInputStream(
+		new ByteArrayInputStream(m_Bytes, dataEnd, m_Limit - dataEnd),
+		Channels.newInputStream(m_Channel)))),
+	    m_Data, m_LineNo, capacity);
+      }
+    }
+
+    /**
+     * Checks whether the first token of the current line is the "@data"
+     * keyword.
+     *
+     * @return			the end of the keyword, -1 if it is not there
+     */
+    protected int findData() {
+      int	start;
+      int	end;
+
+      m_Next = m_LineStart;
+      if (nextToken() != TOKEN_WORD)
+	return -1;
+      start = m_TokenStart;
+      end   = m_TokenEnd;
+      if (end - start != Instances.ARFF_DATA.length())
+	return -1;
+      for (int i = 0; i < end - start; i++) {
+	if (Character.toLowerCase((char) m_Bytes[start + i])
+	    != Character.toLowerCase(Instances.ARFF_DATA.charAt(i)))
+	  return -1;
+      }
+      return m_Next;
+    }
+
+    /**
+     * Reads the next line into the buffer. Both "\n" and "\r" end a line,
+     * and so does "\r\n".
+     *
+     * @return			false if the end of the source is reached
+     * @throws IOException	if reading fails
+     */
+    protected boolean nextLine() throws IOException {
+      int	i;
+      byte	c;
+
+      i = m_Pos;
+      while (true) {
+	for (; i < m_Limit; i++) {
+	  c = m_Bytes[i];
+	  if ((c == '\n') || (c == '\r')) {
+	    m_LineStart = m_Pos;
+	    m_LineEnd   = i;
+	    m_Pos       = i + 1;
+	    if (c == '\r') {
+	      if (m_Pos == m_Limit)
+		m_SkipLF = true;
+	      else if (m_Bytes[m_Pos] == '\n')
+		m_Pos++;
+	    }
+	    m_LineNo++;
+	    return true;
+	  }
+	}
+
+	if (m_EOF) {
+	  if (m_Pos == m_Limit)
+	    return false;
+	  m_LineStart = m_Pos;
+	  m_LineEnd   = m_Limit;
+	  m_Pos       = m_Limit;
+	  m_LineNo++;
+	  return true;
+	}
+
+	i -= m_Pos;
+	fill();
+	i += m_Pos;
+      }
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer, growing it if it is
+     * full, and reads more bytes from the channel.
+     *
+     * @throws IOException	if reading fails
+     */
+    protected void fill() throws IOException {
+      ByteBuffer	buffer;
+      byte[]		bytes;
+      int		n;
+
+      if (m_Pos > 0) {
+	System.arraycopy(m_Bytes, m_Pos, m_Bytes, 0, m_Limit - m_Pos);
+	m_Limit -= m_Pos;
+	m_Pos    = 0;
+      }
+      if (m_Limit == m_Bytes.length) {
+	bytes = new byte[2 * m_Bytes.length];
+	System.arraycopy(m_Bytes, 0, bytes, 0, m_Limit);
+	m_Bytes = bytes;
+      }
+
+      buffer = ByteBuffer.wrap(m_Bytes, m_Limit, m_Bytes.length - m_Limit);
+      do {
+	n = m_Channel.read(buffer);
+      }
+      while (n == 0);
+      if (n < 0)
+	m_EOF = true;
+      else
+	m_Limit += n;
+
+      if (m_SkipLF && (m_Pos < m_Limit)) {
+	if (m_Bytes[m_Pos] == '\n')
+	  m_Pos++;
+	m_SkipLF = false;
+      }
+    }
+
+    /**
+     * Reads the next token of the current line, from {@link #m_Next}. The
+     * tokens are those of {@link ArffReader}, except that quoted words with
+     * escapes or without a closing quote, and non-ASCII characters, are
+     * left to it.
+     *
+     * @return			the type of the token
+     */
+    protected int nextToken() {
+      int	pos;
+      int	end;
+      byte	c;
+
+      pos = m_Next;
+      end = m_LineEnd;
+
+      // skip white space, commas included
+      while (pos < end) {
+	c = m_Bytes[pos];
+	if (c < 0)
+	  return TOKEN_OTHER;
+	if ((c > ' ') && (c != ','))
+	  break;
+	pos++;
+      }
+      if ((pos == end) || (m_Bytes[pos] == '%')) {
+	m_Next = end;
+	return TOKEN_EOL;
+      }
+
+      c = m_Bytes[pos];
+      if (c == '{') {
+	m_Next = pos + 1;
+	return TOKEN_OPEN;
+      }
+      if (c == '}') {
+	m_Next = pos + 1;
+	return TOKEN_CLOSE;
+      }
+
+      if ((c == '\'') || (c == '"')) {
+	m_TokenStart = pos + 1;
+	for (pos++; (pos < end) && (m_Bytes[pos] != c); pos++) {
+	  if ((m_Bytes[pos] == '\\') || (m_Bytes[pos] < 0))
+	    return TOKEN_OTHER;
+	}
+	if (pos == end)
+	  return TOKEN_OTHER;
+	m_TokenEnd    = pos;
+	m_TokenQuoted = true;
+	m_Next        = pos + 1;
+	return TOKEN_WORD;
+      }
+
+      m_TokenStart = pos;
+      for (; pos < end; pos++) {
+	c = m_Bytes[pos];
+	if (c < 0)
+	  return TOKEN_OTHER;
+	if ((c <= ' ') || (c == ',') || (c == '%') || (c == '{') || (c == '}')
+	    || (c == '\'') || (c == '"'))
+	  break;
+      }
+      m_TokenEnd    = pos;
+      m_TokenQuoted = false;
+      m_Next        = pos;
+      return TOKEN_WORD;
+    }
+
+    /**
+     * Indexes the values of the nominal attributes of the given structure,
+     * unless it has been done already.
+     *
+     * @param structure		the structure
+     */
+    protected void indexNominalValues(Instances structure) {
+      Attribute	att;
+      String	value;
+      int	i;
+      int	j;
+      int	k;
+
+      if (structure == m_Indexed)
+	return;
+
+      m_NominalValues = new byte[structure.numAttributes()][][];
+      for (i = 0; i < structure.numAttributes(); i++) {
+	att = structure.attribute(i);
+	if (!att.isNominal() || (att.numValues() > MAX_SCANNED_VALUES))
+	  continue;
+	m_NominalValues[i] = new byte[att.numValues()][];
+	for (j = 0; j < att.numValues(); j++) {
+	  value = att.value(j);
+	  m_NominalValues[i][j] = new byte[value.length()];
+	  for (k = 0; k < value.length(); k++) {
+	    if (value.charAt(k) >= 0x80) {
+	      // cannot match an ASCII token
+	      m_NominalValues[i][j] = null;
+	      break;
+	    }
+	    m_NominalValues[i][j][k] = (byte) value.charAt(k);
+	  }
+	}
+      }
+      if (m_ValueBuffer.length < structure.numAttributes()) {
+	m_ValueBuffer   = new double[structure.numAttributes()];
+	m_IndicesBuffer = new int[structure.numAttributes()];
+      }
+      m_Indexed = structure;
+    }
+
+    /**
+     * Parses the current word as the value of the given attribute.
+     *
+     * @param structure		the structure
+     * @param index		the index of the attribute
+     * @param values		receives the value
+     * @param pos		the position of the value in values
+     * @return			false if the word is left to {@link ArffReader}
+     */
+    protected boolean parseValue(Instances structure, int index, double[] values, int pos) {
+      Attribute	att;
+      byte[][]	nominal;
+      int	start;
+      int	len;
+      int	i;
+      int	j;
+
+      start = m_TokenStart;
+      len   = m_TokenEnd - m_TokenStart;
+
+      // Check if value is missing.
+      if (!m_TokenQuoted && (len == 1) && (m_Bytes[start] == '?')) {
+	values[pos] = Instance.missingValue();
+	return true;
+      }
+
+      att = structure.attribute(index);
+      if (att.isNumeric()) {
+	try {
+	  values[pos] = SparseRowParser.parseDouble(m_Bytes, start, start + len);
+	  return true;
+	}
+	catch (NumberFormatException e) {
+	  return false;
+	}
+      }
+      if (!att.isNominal())
+	return false;
+
+      nominal = m_NominalValues[index];
+      if (nominal == null) {
+	i = att.indexOfValue(new String(m_Bytes, start, len));
+	values[pos] = i;
+	return (i != -1);
+      }
+      for (i = 0; i < nominal.length; i++) {
+	if ((nominal[i] == null) || (nominal[i].length != len))
+	  continue;
+	for (j = 0; (j < len) && (nominal[i][j] == m_Bytes[start + j]); j++);
+	if (j == len) {
+	  values[pos] = i;
+	  return true;
+	}
+      }
+      return false;
+    }
+
+    /**
+     * Reads a single instance and returns it.
+     *
+     * @param structure 	the dataset header information, will get updated
+     * 				in case of string or relational attributes
+     * @param flag 		if method should test for carriage return after
+     * 				each instance
+     * @return 			null if end of file has been reached
+     * @throws IOException 	if the information is not read
+     * successfully
+     */
+    public Instance readInstance(Instances structure, boolean flag) throws IOException {
+      Instance	inst;
+
+      if (m_Delegate != null)
+	return m_Delegate.readInstance(structure, flag);
+
+      m_Data = structure;
+      indexNominalValues(structure);
+      while (true) {
+	if (m_LineReader != null) {
+	  inst = m_LineReader.readInstance(structure, flag);
+	  if (inst != null)
+	    return inst;
+	  m_LineReader = null;
+	}
+
+	if (m_Pending)
+	  m_Pending = false;
+	else if (!nextLine())
+	  return null;
+
+	m_Next = m_LineStart;
+	switch (nextToken()) {
+	  case TOKEN_EOL:
+	    continue;
+	  case TOKEN_OPEN:
+	    inst = getInstanceSparse(structure);
+	    break;
+	  case TOKEN_WORD:
+	    inst = getInstanceFull(structure);
+	    break;
+	  default:
+	    inst = null;
+	}
+	if (inst != null) {
+	  inst.setDataset(structure);
+	  return inst;
+	}
+
+	// leave the line to a reader of its own
+	m_LineReader = new ArffReader(
+	    new StringReader(new String(m_Bytes, m_LineStart, m_LineEnd - m_LineStart) + "\n"),
+	    structure, m_LineNo, 1);
+      }
+    }
+
+    /**
+     * Parses a dense instance from the current line, whose first word has
+     * been read.
+     *
+     * @param structure		the structure
+     * @return			the instance, or null if the line is left to
+     * 				{@link ArffReader}
+     */
+    protected Instance getInstanceFull(Instances structure) {
+      double[]	instance;
+      int	i;
+
+      instance = new double[structure.numAttributes()];
+      for (i = 0; i < instance.length; i++) {
+	if ((i > 0) && (nextToken() != TOKEN_WORD))
+	  return null;
+	if (!parseValue(structure, i, instance, i))
+	  return null;
+      }
+      if (nextToken() != TOKEN_EOL)
+	return null;
+
+      return new Instance(1.0, instance);
+    }
+
+    /**
+     * Parses a sparse instance from the current line, whose opening brace
+     * has been read.
+     *
+     * @param structure		the structure
+     * @return			the instance, or null if the line is left to
+     * 				{@link ArffReader}
+     */
+    protected Instance getInstanceSparse(Instances structure) {
+      int	numValues;
+      int	maxIndex;
+      int	index;
+      int	token;
+      int	pos;
+      byte	c;
+
+      numValues = 0;
+      maxIndex  = -1;
+      while ((token = nextToken()) != TOKEN_CLOSE) {
+	if ((token != TOKEN_WORD) || m_TokenQuoted || (m_TokenEnd - m_TokenStart > 9))
+	  return null;
+	index = 0;
+	for (pos = m_TokenStart; pos < m_TokenEnd; pos++) {
+	  c = m_Bytes[pos];
+	  if ((c < '0') || (c > '9'))
+	    return null;
+	  index = 10 * index + (c - '0');
+	}
+	if ((index <= maxIndex) || (index >= structure.numAttributes()))
+	  return null;
+	maxIndex = index;
+
+	if (nextToken() != TOKEN_WORD)
+	  return null;
+	m_IndicesBuffer[numValues] = index;
+	if (!parseValue(structure, index, m_ValueBuffer, numValues))
+	  return null;
+	numValues++;
+      }
+      if (nextToken() != TOKEN_EOL)
+	return null;
+
+      double[] tempValues = new double[numValues];
+      int[] tempIndices = new int[numValues];
+      System.arraycopy(m_ValueBuffer, 0, tempValues, 0, numValues);
+      System.arraycopy(m_IndicesBuffer, 0, tempIndices, 0, numValues);
+      return new SparseInstance(1.0, tempValues, tempIndices, structure.numAttributes());
+    }
+
+    /**
+     * returns the current line number
+     *
+     * @return			the current line number
+     */
+    public int getLineNo() {
+      if (m_Delegate != null)
+	return m_Delegate.getLineNo();
+      return m_LineNo;
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision: 1 $");
+    }
+  }
+
   /**
    * Returns a string describing this Loader
    * @return a description of the Loader suitable for
@@ -962,9 +1613,40 @@ public class ArffLoader
     m_File = (new File(System.getProperty("user.dir"))).getAbsolutePath();
     m_URL = "http://";
 
+    m_sourceStream = in;
     m_sourceReader = new BufferedReader(new InputStreamReader(in));
   }
 
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String fastReadingTipText() {
+    return "Whether to parse the data directly from the bytes of the source, "
+      + "which is faster and gives the same instances.";
+  }
+
+  /**
+   * Sets whether to read the data with a {@link FastArffReader}. Takes
+   * effect when the structure is read.
+   *
+   * @param value whether to use the fast reader
+   */
+  public void setFastReading(boolean value) {
+    m_FastReading = value;
+  }
+
+  /**
+   * Returns whether the data is read with a {@link FastArffReader}.
+   *
+   * @return true if the fast reader is used
+   */
+  public boolean getFastReading() {
+    return m_FastReading;
+  }
+
   /**
    * Determines and returns (if possible) the structure (internally the
    * header) of the data set as an empty set of instances.
@@ -979,7 +1661,10 @@ public class ArffLoader
         throw new IOException("No source has been specified");
       }
       try {
-	m_ArffReader = new ArffReader(m_sourceReader, 1);
+	if (m_FastReading)
+	  m_ArffReader = new FastArffReader(m_sourceStream, 1);
+	else
+	  m_ArffReader = new ArffReader(m_sourceReader, 1);
 	m_structure  = m_ArffReader.getStructure();
       } catch (Exception ex) {
 	throw new IOException("Unable to determine structure as arff (Reason: " + ex.toString() + ").");
@@ -0,0 +1,216 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * ArffReaderBenchmark.java
+ * Copyright (C) 2006 University of Waikato, Hamilton, NZ
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.converters.ArffLoader.ArffReader;
+import weka.core.converters.ArffLoader.FastArffReader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compares {@link ArffReader} and {@link FastArffReader} on ARFF files, for
+ * example the partitions of the covertype or mnist data sets: each file is
+ * read a few times with both readers, the best times are printed and the
+ * instances are checked to be the same (values compared bit for bit,
+ * weights, string and relational values included). <p/>
+ *
+ * Usage:
+ * <pre>
+ * java weka.core.converters.ArffReaderBenchmark [-r runs] file.arff [...]
+ * </pre>
+ * Files ending with ".gz" are decompressed.
+ *
+ * @version $Revision: 1 $
+ */
+public class ArffReaderBenchmark
+  implements RevisionHandler {
+
+  /**
+   * Opens a file, decompressing it if its name ends with ".gz".
+   *
+   * @param file	the file
+   * @return		the stream
+   * @throws IOException	if opening fails
+   */
+  protected static InputStream open(File file) throws IOException {
+    InputStream	result;
+
+    result = new FileInputStream(file);
+    if (file.getName().endsWith(".gz"))
+      result = new GZIPInputStream(result);
+
+    return result;
+  }
+
+  /**
+   * Reads a file with the given reader.
+   *
+   * @param file	the file
+   * @param fast	whether to use the fast reader
+   * @return		the data
+   * @throws IOException	if reading fails
+   */
+  protected static Instances read(File file, boolean fast) throws IOException {
+    InputStream	in;
+
+    in = open(file);
+    try {
+      if (fast)
+	return new FastArffReader(in).getData();
+      else
+	return new ArffReader(new BufferedReader(new InputStreamReader(in))).getData();
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Checks that two data sets are the same.
+   *
+   * @param expected	the data read by ArffReader
+   * @param actual	the data read by FastArffReader
+   * @return		null if they are the same, otherwise the difference
+   */
+  protected static String compare(Instances expected, Instances actual) {
+    Instance	e;
+    Instance	a;
+    int		i;
+    int		j;
+
+    if (!expected.equalHeaders(actual)
+	|| !new Instances(expected, 0).toString().equals(new Instances(actual, 0).toString()))
+      return "different headers";
+    if (expected.numInstances() != actual.numInstances())
+      return "different number of instances: " + expected.numInstances()
+	+ " != " + actual.numInstances();
+
+    for (i = 0; i < expected.numInstances(); i++) {
+      e = expected.instance(i);
+      a = actual.instance(i);
+      if (e.getClass() != a.getClass())
+	return "instance " + (i+1) + ": " + e.getClass().getName()
+	  + " != " + a.getClass().getName();
+      if (Double.doubleToLongBits(e.weight()) != Double.doubleToLongBits(a.weight()))
+	return "instance " + (i+1) + ": weight " + e.weight() + " != " + a.weight();
+      if (e.numValues() != a.numValues())
+	return "instance " + (i+1) + ": " + e.numValues() + " != " + a.numValues()
+	  + " values";
+      for (j = 0; j < e.numValues(); j++) {
+	if ((e.index(j) != a.index(j))
+	    || (Double.doubleToLongBits(e.valueSparse(j))
+		!= Double.doubleToLongBits(a.valueSparse(j))))
+	  return "instance " + (i+1) + ": " + e + " != " + a;
+      }
+      if (!e.toString().equals(a.toString()))
+	return "instance " + (i+1) + ": " + e + " != " + a;
+    }
+
+    return null;
+  }
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args	the options and files, see the class description
+   * @throws Exception	if reading fails
+   */
+  public static void main(String[] args) throws Exception {
+    int		runs;
+    int		i;
+    int		n;
+    File	file;
+    Instances	old;
+    Instances	fast;
+    long	start;
+    long	oldTime;
+    long	fastTime;
+    String	msg;
+
+    if (args.length == 0) {
+      System.err.println(
+	  "Usage: java " + ArffReaderBenchmark.class.getName()
+	  + " [-r runs] file.arff [...]");
+      System.exit(1);
+    }
+
+    runs = 3;
+    i    = 0;
+    if (args[0].equals("-r")) {
+      runs = Integer.parseInt(args[1]);
+      i    = 2;
+    }
+
+    for (; i < args.length; i++) {
+      file     = new File(args[i]);
+      old      = null;
+      fast     = null;
+      oldTime  = Long.MAX_VALUE;
+      fastTime = Long.MAX_VALUE;
+      // alternate the readers, so that both see the same JIT and file cache
+      for (n = 0; n < runs; n++) {
+	old      = null;
+	start    = System.nanoTime();
+	old      = read(file, false);
+	oldTime  = Math.min(oldTime, System.nanoTime() - start);
+	fast     = null;
+	start    = System.nanoTime();
+	fast     = read(file, true);
+	fastTime = Math.min(fastTime, System.nanoTime() - start);
+      }
+
+      msg = compare(old, fast);
+      System.out.println(
+	  file + ": " + old.numInstances() + " instances, "
+	  + old.numAttributes() + " attributes");
+      System.out.println(
+	  "  ArffReader:     " + (oldTime / 1000000) + " ms");
+      System.out.println(
+	  "  FastArffReader: " + (fastTime / 1000000) + " ms ("
+	  + ((double) Math.round(10.0 * oldTime / fastTime) / 10) + "x)");
+      System.out.println(
+	  "  " + ((msg == null) ? "same instances" : "DIFFERENT: " + msg));
+      if (msg != null)
+	System.exit(2);
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1 $");
+  }
+}
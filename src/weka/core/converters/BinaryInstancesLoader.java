@@ -0,0 +1,568 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * BinaryInstancesLoader.java
+ * Copyright (C) 2006 University of Waikato, Hamilton, NZ
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Attribute;
+import weka.core.ColumnarInstances;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ <!-- globalinfo-start -->
+ * Reads a source that contains instances in the compact binary format written by BinaryInstancesSaver. Files are memory-mapped, and the instances are only created when they are read.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ * The format, in big-endian order, is:
+ * <ul>
+ *   <li>int magic, int version</li>
+ *   <li>int length and UTF-8 bytes of the ARFF header, which holds the
+ *   relation name, the attributes and the nominal values</li>
+ *   <li>int number of string attributes, then for each: int index, int
+ *   number of values, and every value as int length and UTF-8 bytes</li>
+ *   <li>int class index, int number of instances n, byte layout (0 dense,
+ *   1 sparse, 2 mixed), byte 1 if weighted, padding to a multiple of 8</li>
+ *   <li>if weighted, double[n] weights</li>
+ *   <li>if mixed, byte[n] with 1 for the sparse instances, padding</li>
+ *   <li>if dense, double[n] values for each attribute, one column after the
+ *   other</li>
+ *   <li>if sparse or mixed, long[n+1] row pointers, int[nnz] attribute
+ *   indices, padding, double[nnz] values (only the non-zero values of the
+ *   dense instances)</li>
+ * </ul>
+ * Missing values are stored as NaN. By default, getDataSet returns dense
+ * data as {@link ColumnarInstances} whose columns are the arrays of the
+ * source, so no value is copied; a column is only copied to the heap when
+ * one of its values is changed. Otherwise dense instances are loaded as
+ * {@link Instance}s, sparse ones as {@link SparseInstance}s. <p/>
+ *
+ * When the source is a file, each array is a view of the mapped file:
+ * getStructure only reads the header, and the pages of the data are read
+ * (from the operating system cache, when the file has been used recently)
+ * as the values are used.
+ *
+ * @version $Revision: 1 $
+ * @see Loader
+ * @see BinaryInstancesSaver
+ */
+public class BinaryInstancesLoader
+  extends AbstractFileLoader
+  implements BatchConverter, IncrementalConverter {
+
+  /** for serialization. */
+  static final long serialVersionUID = -5186813427406152763L;
+
+  /** the file extension. */
+  public static String FILE_EXTENSION = ".bci";
+
+  /** the first int of the format. */
+  public static final int MAGIC = 0x57424349;
+
+  /** the version of the format. */
+  public static final int VERSION = 1;
+
+  /** the layout of data without sparse instances. */
+  public static final int LAYOUT_DENSE = 0;
+
+  /** the layout of data with only sparse instances. */
+  public static final int LAYOUT_SPARSE = 1;
+
+  /** the layout of data with both dense and sparse instances. */
+  public static final int LAYOUT_MIXED = 2;
+
+  /** the channel of the source file, if it is too large to be mapped at once. */
+  protected transient FileChannel m_Channel = null;
+
+  /** the whole source, mapped if it is a file. */
+  protected transient ByteBuffer m_Bytes = null;
+
+  /** the current position in the source while reading the header. */
+  protected long m_Position;
+
+  /** the number of instances. */
+  protected int m_NumInstances;
+
+  /** the weights, null if all are 1. */
+  protected transient DoubleBuffer m_Weights;
+
+  /** the columns, if dense. */
+  protected transient DoubleBuffer[] m_Columns;
+
+  /** the row pointers, if sparse. */
+  protected transient LongBuffer m_RowPointers;
+
+  /** 1 for the sparse instances, if mixed. */
+  protected transient ByteBuffer m_Sparse;
+
+  /** the attribute indices, if sparse. */
+  protected transient IntBuffer m_Indices;
+
+  /** the values, if sparse. */
+  protected transient DoubleBuffer m_Values;
+
+  /** The current index position for incremental reading. */
+  protected int m_IncrementalIndex = 0;
+
+  /** whether getDataSet returns dense data as ColumnarInstances. */
+  protected boolean m_Columnar = true;
+
+  /**
+   * Returns a string describing this object.
+   *
+   * @return a description of the loader suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Reads a source that contains instances in the compact binary format "
+      + "written by BinaryInstancesSaver. Files are memory-mapped, and the "
+      + "instances are only created when they are read.";
+  }
+
+  /**
+   * Resets the Loader ready to read a new data set.
+   *
+   * @throws IOException if something goes wrong
+   */
+  public void reset() throws IOException {
+    m_IncrementalIndex = 0;
+    setRetrieval(NONE);
+  }
+
+  /**
+   * Get the file extension used for binary instances files.
+   *
+   * @return the file extension
+   */
+  public String getFileExtension() {
+    return FILE_EXTENSION;
+  }
+
+  /**
+   * Gets all the file extensions used for this type of file.
+   *
+   * @return the file extensions
+   */
+  public String[] getFileExtensions() {
+    return new String[]{getFileExtension()};
+  }
+
+  /**
+   * Returns a description of the file type.
+   *
+   * @return a short file description
+   */
+  public String getFileDescription() {
+    return "Binary columnar instances";
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String columnarTipText() {
+    return "Whether to return dense data as ColumnarInstances over the "
+      + "columns of the source, without copying them; sparse data is always "
+      + "returned as Instances.";
+  }
+
+  /**
+   * Sets whether getDataSet returns dense data as {@link ColumnarInstances}.
+   *
+   * @param value whether to return columnar instances
+   */
+  public void setColumnar(boolean value) {
+    m_Columnar = value;
+  }
+
+  /**
+   * Returns whether getDataSet returns dense data as
+   * {@link ColumnarInstances}.
+   *
+   * @return true if columnar instances are returned
+   */
+  public boolean getColumnar() {
+    return m_Columnar;
+  }
+
+  /**
+   * Resets the Loader object and sets the source of the data set to be
+   * the supplied InputStream. A file stream is memory-mapped and can be
+   * closed afterwards, any other stream is read completely.
+   *
+   * @param in the source InputStream.
+   * @throws IOException if there is a problem with IO
+   */
+  public void setSource(InputStream in) throws IOException {
+    ByteArrayOutputStream	out;
+    byte[]			buffer;
+    int				n;
+
+    m_structure        = null;
+    m_Channel          = null;
+    m_Bytes            = null;
+    m_IncrementalIndex = 0;
+    setRetrieval(NONE);
+
+    if (in instanceof FileInputStream) {
+      m_Channel = ((FileInputStream) in).getChannel();
+      // a single mapping, unless the file is too large for one
+      if (m_Channel.size() <= Integer.MAX_VALUE) {
+	m_Bytes   = m_Channel.map(FileChannel.MapMode.READ_ONLY, 0, m_Channel.size());
+	m_Channel = null;
+      }
+    }
+    else {
+      out    = new ByteArrayOutputStream();
+      buffer = new byte[1 << 16];
+      while ((n = in.read(buffer)) > 0)
+	out.write(buffer, 0, n);
+      m_Bytes = ByteBuffer.wrap(out.toByteArray());
+    }
+
+    try {
+      readHeader();
+    }
+    finally {
+      // the mappings stay valid once the file is closed
+      in.close();
+      m_Channel = null;
+    }
+  }
+
+  /**
+   * Returns a part of the source.
+   *
+   * @param length	the length of the part in bytes
+   * @return		the part, starting at the current position, which is
+   * 			moved after it
+   * @throws IOException	if the source is too short
+   */
+  protected ByteBuffer next(long length) throws IOException {
+    ByteBuffer	result;
+    long	size;
+
+    size = (m_Channel != null) ? m_Channel.size() : m_Bytes.capacity();
+    if ((length < 0) || (m_Position + length > size))
+      throw new IOException("Truncated binary instances source");
+    if (length > Integer.MAX_VALUE)
+      throw new IOException("Array of " + length + " bytes is too large to map");
+
+    if (m_Channel != null) {
+      result = m_Channel.map(FileChannel.MapMode.READ_ONLY, m_Position, length);
+    }
+    else {
+      result = m_Bytes.duplicate();
+      result.position((int) m_Position);
+      result.limit((int) (m_Position + length));
+      result = result.slice();
+    }
+    m_Position += length;
+
+    return result;
+  }
+
+  /**
+   * Skips the padding to the next multiple of 8 bytes.
+   */
+  protected void pad() {
+    m_Position = (m_Position + 7) / 8 * 8;
+  }
+
+  /**
+   * Reads a string stored as int length and UTF-8 bytes.
+   *
+   * @return		the string
+   * @throws IOException	if reading fails
+   */
+  protected String nextString() throws IOException {
+    ByteBuffer	buf;
+    byte[]	bytes;
+
+    buf   = next(next(4).getInt());
+    bytes = new byte[buf.remaining()];
+    buf.get(bytes);
+
+    return new String(bytes, "UTF-8");
+  }
+
+  /**
+   * Reads the header and creates the views of the arrays.
+   *
+   * @throws IOException	if the source is not valid
+   */
+  protected void readHeader() throws IOException {
+    ByteBuffer	buf;
+    Instances	header;
+    Attribute	att;
+    int		numStrings;
+    int		numValues;
+    int		classIndex;
+    int		layout;
+    boolean	weighted;
+    long	nnz;
+    int		i;
+    int		j;
+
+    m_Position = 0;
+    buf = next(8);
+    if (buf.getInt() != MAGIC)
+      throw new IOException("Not a binary instances source");
+    if (buf.getInt() != VERSION)
+      throw new IOException("Unsupported version of binary instances");
+
+    header = new Instances(new StringReader(nextString()));
+    numStrings = next(4).getInt();
+    for (i = 0; i < numStrings; i++) {
+      att       = header.attribute(next(4).getInt());
+      numValues = next(4).getInt();
+      for (j = 0; j < numValues; j++)
+	att.addStringValue(nextString());
+    }
+
+    buf            = next(10);
+    classIndex     = buf.getInt();
+    m_NumInstances = buf.getInt();
+    layout         = buf.get();
+    weighted       = (buf.get() != 0);
+    pad();
+    header.setClassIndex(classIndex);
+    if ((layout < LAYOUT_DENSE) || (layout > LAYOUT_MIXED))
+      throw new IOException("Unknown layout of binary instances: " + layout);
+
+    m_Weights = weighted ? next(8L * m_NumInstances).asDoubleBuffer() : null;
+    if (layout == LAYOUT_MIXED) {
+      m_Sparse = next(m_NumInstances);
+      pad();
+    }
+    else {
+      m_Sparse = null;
+    }
+    if (layout == LAYOUT_DENSE) {
+      m_Columns = new DoubleBuffer[header.numAttributes()];
+      for (i = 0; i < m_Columns.length; i++)
+	m_Columns[i] = next(8L * m_NumInstances).asDoubleBuffer();
+      m_RowPointers = null;
+      m_Indices     = null;
+      m_Values      = null;
+    }
+    else {
+      m_Columns     = null;
+      m_RowPointers = next(8L * (m_NumInstances + 1)).asLongBuffer();
+      nnz           = m_RowPointers.get(m_NumInstances);
+      m_Indices     = next(4L * nnz).asIntBuffer();
+      pad();
+      m_Values      = next(8L * nnz).asDoubleBuffer();
+    }
+
+    m_structure = header;
+  }
+
+  /**
+   * Determines and returns (if possible) the structure (internally the
+   * header) of the data set as an empty set of instances.
+   *
+   * @return the structure of the data set as an empty set of Instances
+   * @throws IOException if an error occurs
+   */
+  public Instances getStructure() throws IOException {
+
+    if (m_structure == null) {
+      throw new IOException("No source has been specified");
+    }
+
+    return new Instances(m_structure, 0);
+  }
+
+  /**
+   * Expands the stored values of a dense instance of mixed data.
+   *
+   * @param values	the non-zero values
+   * @param indices	their attribute indices
+   * @return		the values of all the attributes
+   */
+  protected double[] expand(double[] values, int[] indices) {
+    double[]	result;
+    int		i;
+
+    result = new double[m_structure.numAttributes()];
+    for (i = 0; i < values.length; i++)
+      result[indices[i]] = values[i];
+
+    return result;
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param index	the index of the instance
+   * @return		the instance, without dataset
+   */
+  protected Instance newInstance(int index) {
+    double	weight;
+    double[]	values;
+    int[]	indices;
+    int		start;
+    int		n;
+    int		i;
+
+    weight = (m_Weights == null) ? 1.0 : m_Weights.get(index);
+
+    if (m_Columns != null) {
+      values = new double[m_Columns.length];
+      for (i = 0; i < values.length; i++)
+	values[i] = m_Columns[i].get(index);
+      return new Instance(weight, values);
+    }
+
+    start   = (int) m_RowPointers.get(index);
+    n       = (int) (m_RowPointers.get(index + 1) - start);
+    values  = new double[n];
+    indices = new int[n];
+    for (i = 0; i < n; i++) {
+      values[i]  = m_Values.get(start + i);
+      indices[i] = m_Indices.get(start + i);
+    }
+    if ((m_Sparse != null) && (m_Sparse.get(index) == 0))
+      return new Instance(weight, expand(values, indices));
+    return new SparseInstance(weight, values, indices, m_structure.numAttributes());
+  }
+
+  /**
+   * Return the full data set. If the structure hasn't yet been determined
+   * by a call to getStructure then method should do so before processing
+   * the rest of the data set.
+   *
+   * @return the structure of the data set as an empty set of Instances
+   * @throws IOException if there is no source or parsing fails
+   */
+  public Instances getDataSet() throws IOException {
+    Instances		result;
+    double[][]		rows;
+    DoubleBuffer[]	columns;
+    int			i;
+    int			j;
+
+    if (m_structure == null)
+      throw new IOException("No source has been specified");
+
+    if (getRetrieval() == INCREMENTAL)
+      throw new IOException("Cannot mix getting Instances in both incremental and batch modes");
+
+    setRetrieval(BATCH);
+
+    if (m_Columnar && (m_Columns != null)) {
+      // read-only views, which the instances copy before changing them
+      columns = new DoubleBuffer[m_Columns.length];
+      for (j = 0; j < m_Columns.length; j++)
+	columns[j] = m_Columns[j].asReadOnlyBuffer();
+      return new ColumnarInstances(m_structure, columns,
+	  (m_Weights == null) ? null : m_Weights.asReadOnlyBuffer());
+    }
+
+    result = new Instances(m_structure, m_NumInstances);
+    if (m_Columns != null) {
+      // read the columns sequentially
+      rows = new double[m_NumInstances][m_Columns.length];
+      for (j = 0; j < m_Columns.length; j++) {
+	for (i = 0; i < m_NumInstances; i++)
+	  rows[i][j] = m_Columns[j].get(i);
+      }
+      for (i = 0; i < m_NumInstances; i++) {
+	result.add(new Instance((m_Weights == null) ? 1.0 : m_Weights.get(i), rows[i]));
+	rows[i] = null;
+      }
+    }
+    else {
+      for (i = 0; i < m_NumInstances; i++)
+	result.add(newInstance(i));
+    }
+
+    return result;
+  }
+
+  /**
+   * Read the data set incrementally---get the next instance in the data
+   * set or returns null if there are no
+   * more instances to get. If the structure hasn't yet been
+   * determined by a call to getStructure then method should do so before
+   * returning the next instance in the data set.
+   *
+   * @param structure the dataset header information
+   * @return the next instance in the data set as an Instance object or null
+   * if there are no more instances to be read
+   * @throws IOException if there is an error during parsing
+   */
+  public Instance getNextInstance(Instances structure) throws IOException {
+    Instance	result;
+
+    if (m_structure == null)
+      throw new IOException("No source has been specified");
+
+    if (getRetrieval() == BATCH)
+      throw new IOException("Cannot mix getting Instances in both incremental and batch modes");
+
+    setRetrieval(INCREMENTAL);
+
+    if (m_IncrementalIndex == m_NumInstances)
+      return null;
+
+    result = newInstance(m_IncrementalIndex++);
+    result.setDataset(structure);
+
+    return result;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1 $");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args should contain the name of an input file.
+   */
+  public static void main(String[] args) {
+    runFileLoader(new BinaryInstancesLoader(), args);
+  }
+}
@@ -0,0 +1,411 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * BinaryInstancesSaver.java
+ * Copyright (C) 2006 University of Waikato, Hamilton, NZ
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Attribute;
+import weka.core.Capabilities;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
+import weka.core.Capabilities.Capability;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ <!-- globalinfo-start -->
+ * Writes the instances to a compact binary file with extension bci, which BinaryInstancesLoader memory-maps. Dense data is stored column by column, sparse data in compressed sparse row form.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -i &lt;the input file&gt;
+ * The input file</pre>
+ *
+ * <pre> -o &lt;the output file&gt;
+ * The output file</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision: 1 $
+ * @see Saver
+ * @see BinaryInstancesLoader
+ */
+public class BinaryInstancesSaver
+  extends AbstractFileSaver
+  implements BatchConverter {
+
+  /** for serialization. */
+  static final long serialVersionUID = 3861508226470337615L;
+
+  /** the output stream. */
+  protected DataOutputStream m_stream;
+
+  /** the number of bytes written so far. */
+  protected long m_Written;
+
+  /** Constructor. */
+  public BinaryInstancesSaver(){
+      resetOptions();
+  }
+
+  /**
+   * Returns a string describing this Saver.
+   *
+   * @return a description of the Saver suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Writes the instances to a compact binary file with extension bci, "
+      + "which BinaryInstancesLoader memory-maps. Dense data is stored column "
+      + "by column, sparse data in compressed sparse row form.";
+  }
+
+  /**
+   * Returns a description of the file type.
+   *
+   * @return a short file description
+   */
+  public String getFileDescription() {
+    return "Binary columnar instances";
+  }
+
+  /**
+   * Resets the Saver.
+   */
+  public void resetOptions() {
+
+    super.resetOptions();
+    setFileExtension(BinaryInstancesLoader.FILE_EXTENSION);
+  }
+
+  /**
+   * Returns the Capabilities of this saver.
+   *
+   * @return            the capabilities of this object
+   * @see               Capabilities
+   */
+  public Capabilities getCapabilities() {
+    Capabilities result = super.getCapabilities();
+
+    // attributes
+    result.enable(Capability.NOMINAL_ATTRIBUTES);
+    result.enable(Capability.NUMERIC_ATTRIBUTES);
+    result.enable(Capability.DATE_ATTRIBUTES);
+    result.enable(Capability.STRING_ATTRIBUTES);
+    result.enable(Capability.MISSING_VALUES);
+
+    // class
+    result.enable(Capability.NOMINAL_CLASS);
+    result.enable(Capability.NUMERIC_CLASS);
+    result.enable(Capability.DATE_CLASS);
+    result.enable(Capability.STRING_CLASS);
+    result.enable(Capability.MISSING_CLASS_VALUES);
+    result.enable(Capability.NO_CLASS);
+
+    return result;
+  }
+
+  /**
+   * Resets the writer, setting writer and stream to null.
+   */
+  public void resetWriter() {
+    super.resetWriter();
+
+    m_stream = null;
+  }
+
+  /**
+   * Sets the destination output stream.
+   *
+   * @param output the output stream.
+   * @throws IOException throws an IOException if destination cannot be set
+   */
+  public void setDestination(OutputStream output) throws IOException {
+    super.setDestination(output);
+
+    m_stream = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+  }
+
+  /**
+   * Writes a Batch of instances.
+   *
+   * @throws IOException throws IOException if saving in batch mode is not possible
+   */
+  public void writeBatch() throws IOException {
+    if(getRetrieval() == INCREMENTAL)
+      throw new IOException("Batch and incremental saving cannot be mixed.");
+
+    if(getInstances() == null)
+      throw new IOException("No instances to save");
+
+    setRetrieval(BATCH);
+
+    if (m_stream == null)
+      throw new IOException("No output for the binary instances.");
+
+    setWriteMode(WRITE);
+    write(getInstances());
+    m_stream.flush();
+    m_stream.close();
+    setWriteMode(WAIT);
+    resetWriter();
+    setWriteMode(CANCEL);
+  }
+
+  /**
+   * Writes the data in the format described in {@link BinaryInstancesLoader}.
+   *
+   * @param data	the data to write
+   * @throws IOException	if writing fails or the data has relational
+   * 			attributes
+   */
+  protected void write(Instances data) throws IOException {
+    Attribute	att;
+    byte[]	bytes;
+    boolean	sparse;
+    boolean	mixed;
+    boolean	weighted;
+    int		numStrings;
+    long	nnz;
+    int		i;
+    int		j;
+
+    for (i = 0; i < data.numAttributes(); i++) {
+      if (data.attribute(i).isRelationValued())
+	throw new IOException("Relational attributes are not supported: "
+	    + data.attribute(i).name());
+    }
+
+    m_Written = 0;
+    writeInt(BinaryInstancesLoader.MAGIC);
+    writeInt(BinaryInstancesLoader.VERSION);
+
+    // header, with the nominal values
+    bytes = new Instances(data, 0).toString().getBytes("UTF-8");
+    writeInt(bytes.length);
+    writeBytes(bytes);
+
+    // values of the string attributes
+    numStrings = 0;
+    for (i = 0; i < data.numAttributes(); i++) {
+      if (data.attribute(i).isString())
+	numStrings++;
+    }
+    writeInt(numStrings);
+    for (i = 0; i < data.numAttributes(); i++) {
+      att = data.attribute(i);
+      if (!att.isString())
+	continue;
+      writeInt(i);
+      writeInt(att.numValues());
+      for (j = 0; j < att.numValues(); j++) {
+	bytes = att.value(j).getBytes("UTF-8");
+	writeInt(bytes.length);
+	writeBytes(bytes);
+      }
+    }
+
+    sparse   = false;
+    mixed    = false;
+    weighted = false;
+    for (i = 0; i < data.numInstances(); i++) {
+      if (data.instance(i) instanceof SparseInstance)
+	sparse = true;
+      else
+	mixed = true;
+      if (data.instance(i).weight() != 1.0)
+	weighted = true;
+    }
+    mixed = mixed && sparse;
+    writeInt(data.classIndex());
+    writeInt(data.numInstances());
+    m_stream.writeByte(mixed ? BinaryInstancesLoader.LAYOUT_MIXED
+	: (sparse ? BinaryInstancesLoader.LAYOUT_SPARSE : BinaryInstancesLoader.LAYOUT_DENSE));
+    m_stream.writeByte(weighted ? 1 : 0);
+    m_Written += 2;
+    pad();
+
+    if (weighted) {
+      for (i = 0; i < data.numInstances(); i++)
+	writeDouble(data.instance(i).weight());
+    }
+
+    if (mixed) {
+      // which rows are sparse
+      for (i = 0; i < data.numInstances(); i++) {
+	m_stream.writeByte((data.instance(i) instanceof SparseInstance) ? 1 : 0);
+	m_Written++;
+      }
+      pad();
+    }
+
+    if (!sparse) {
+      // one column after the other
+      for (j = 0; j < data.numAttributes(); j++) {
+	for (i = 0; i < data.numInstances(); i++)
+	  writeDouble(data.instance(i).value(j));
+      }
+    }
+    else {
+      // row pointers, then the indices and the values of all rows
+      nnz = 0;
+      writeLong(nnz);
+      for (i = 0; i < data.numInstances(); i++) {
+	nnz += numValues(data.instance(i));
+	writeLong(nnz);
+      }
+      for (i = 0; i < data.numInstances(); i++) {
+	Instance inst = data.instance(i);
+	if (inst instanceof SparseInstance) {
+	  for (j = 0; j < inst.numValues(); j++)
+	    writeInt(inst.index(j));
+	}
+	else {
+	  for (j = 0; j < inst.numAttributes(); j++) {
+	    if (inst.value(j) != 0)
+	      writeInt(j);
+	  }
+	}
+      }
+      pad();
+      for (i = 0; i < data.numInstances(); i++) {
+	Instance inst = data.instance(i);
+	if (inst instanceof SparseInstance) {
+	  for (j = 0; j < inst.numValues(); j++)
+	    writeDouble(inst.valueSparse(j));
+	}
+	else {
+	  for (j = 0; j < inst.numAttributes(); j++) {
+	    if (inst.value(j) != 0)
+	      writeDouble(inst.value(j));
+	  }
+	}
+      }
+    }
+  }
+
+  /**
+   * Returns the number of values stored for an instance in the sparse
+   * layout: all the stored values of a sparse instance, the non-zero ones
+   * of a dense one (which is dense again when it is loaded).
+   *
+   * @param inst	the instance
+   * @return		the number of values
+   */
+  protected int numValues(Instance inst) {
+    int	result;
+    int	i;
+
+    if (inst instanceof SparseInstance)
+      return inst.numValues();
+
+    result = 0;
+    for (i = 0; i < inst.numAttributes(); i++) {
+      if (inst.value(i) != 0)
+	result++;
+    }
+    return result;
+  }
+
+  /**
+   * Writes an int.
+   *
+   * @param value	the value
+   * @throws IOException	if writing fails
+   */
+  protected void writeInt(int value) throws IOException {
+    m_stream.writeInt(value);
+    m_Written += 4;
+  }
+
+  /**
+   * Writes a long.
+   *
+   * @param value	the value
+   * @throws IOException	if writing fails
+   */
+  protected void writeLong(long value) throws IOException {
+    m_stream.writeLong(value);
+    m_Written += 8;
+  }
+
+  /**
+   * Writes a double.
+   *
+   * @param value	the value
+   * @throws IOException	if writing fails
+   */
+  protected void writeDouble(double value) throws IOException {
+    m_stream.writeDouble(value);
+    m_Written += 8;
+  }
+
+  /**
+   * Writes bytes.
+   *
+   * @param bytes	the bytes
+   * @throws IOException	if writing fails
+   */
+  protected void writeBytes(byte[] bytes) throws IOException {
+    m_stream.write(bytes);
+    m_Written += bytes.length;
+  }
+
+  /**
+   * Writes zeros up to the next multiple of 8 bytes, so that the arrays
+   * that follow are aligned.
+   *
+   * @throws IOException	if writing fails
+   */
+  protected void pad() throws IOException {
+    while (m_Written % 8 != 0) {
+      m_stream.writeByte(0);
+      m_Written++;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1 $");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args should contain the options of a Saver.
+   */
+  public static void main(String[] args) {
+    runFileSaver(new BinaryInstancesSaver(), args);
+  }
+}
@@ -675,6 +675,7 @@ public class ConverterUtils
    * (comma-separated list). */
   public final static String CORE_FILE_LOADERS = 
       weka.core.converters.ArffLoader.class.getName() + ","
+    + weka.core.converters.BinaryInstancesLoader.class.getName() + ","
     + weka.core.converters.C45Loader.class.getName() + ","
     + weka.core.converters.CSVLoader.class.getName() + ","
     + weka.core.converters.DatabaseConverter.class.getName() + ","
@@ -687,6 +688,7 @@ public class ConverterUtils
    * (comma-separated list). */
   public final static String CORE_FILE_SAVERS =
       weka.core.converters.ArffSaver.class.getName() + ","
+    + weka.core.converters.BinaryInstancesSaver.class.getName() + ","
     + weka.core.converters.C45Saver.class.getName() + ","
     + weka.core.converters.CSVSaver.class.getName() + ","
     + weka.core.converters.DatabaseConverter.class.getName() + ","
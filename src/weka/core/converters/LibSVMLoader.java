@@ -27,17 +27,11 @@ import weka.core.FastVector;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.RevisionUtils;
-import weka.core.SparseInstance;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.net.URL;
-import java.util.StringTokenizer;
-import java.util.Vector;
 
 /**
  <!-- globalinfo-start -->
@@ -55,7 +49,7 @@ import java.util.Vector;
  */
 public class LibSVMLoader 
   extends AbstractFileLoader 
-  implements BatchConverter, URLSourcedLoader {
+  implements BatchConverter, IncrementalConverter, URLSourcedLoader {
 
   /** for serialization. */
   private static final long serialVersionUID = 4988360125354664417L;
@@ -66,11 +60,14 @@ public class LibSVMLoader
   /** the url. */
   protected String m_URL = "http://";
 
-  /** The reader for the source file. */
-  protected transient Reader m_sourceReader = null;
+  /** The parser for the source file. */
+  protected transient SparseRowParser m_Parser = null;
 
   /** the buffer of the rows read so far. */
-  protected Vector m_Buffer = null;
+  protected transient SparseRowParser.Rows m_Buffer = null;
+
+  /** the next row to return by getNextInstance. */
+  protected int m_NextRow = 0;
   
   /**
    * Returns a string describing this Loader.
@@ -120,6 +117,7 @@ public class LibSVMLoader
   public void reset() throws IOException {
     m_structure = null;
     m_Buffer    = null;
+    m_NextRow   = 0;
     
     setRetrieval(NONE);
     
@@ -141,6 +139,7 @@ public class LibSVMLoader
   public void setSource(URL url) throws IOException {
     m_structure = null;
     m_Buffer    = null;
+    m_NextRow   = 0;
     
     setRetrieval(NONE);
     
@@ -180,75 +179,9 @@ public class LibSVMLoader
     m_File = (new File(System.getProperty("user.dir"))).getAbsolutePath();
     m_URL  = "http://";
 
-    m_sourceReader = new BufferedReader(new InputStreamReader(in));
+    m_Parser = new SparseRowParser(in, false);
   }
 
-  /**
-   * turns a libsvm row into a double array with the class as the last
-   * entry.
-   * 
-   * @param row		the row to turn into a double array
-   * @return		the corresponding double array
-   */
-  protected double[] libsvmToArray(String row) {
-    double[]		result;
-    StringTokenizer	tok;
-    int			index;
-    int			max;
-    String		col;
-    double		value;
-
-    // determine max index
-    max = 0;
-    tok = new StringTokenizer(row, " \t");
-    tok.nextToken();  // skip class
-    while (tok.hasMoreTokens()) {
-      col   = tok.nextToken();
-      index = Integer.parseInt(col.substring(0, col.indexOf(":")));
-      if (index > max)
-	max = index;
-    }
-
-    // read values into array
-    tok    = new StringTokenizer(row, " \t");
-    result = new double[max + 1];
-    
-    // 1. class
-    result[result.length - 1] = Double.parseDouble(tok.nextToken());
-    
-    // 2. attributes
-    while (tok.hasMoreTokens()) {
-      col   = tok.nextToken();
-      index = Integer.parseInt(col.substring(0, col.indexOf(":")));
-      value = Double.parseDouble(col.substring(col.indexOf(":") + 1));
-      result[index - 1] = value;
-    }
-    
-    return result;
-  }
-  
-  /**
-   * determines the number of attributes, if the number of attributes in the
-   * given row is greater than the current amount then this number will be
-   * returned, otherwise the current number.
-   * 
-   * @param row		row to determine the number of attributes from
-   * @param num		the current number of attributes
-   * @return 		the new number of attributes
-   */
-  protected int determineNumAttributes(String row, int num) {
-    int		result;
-    int		count;
-    
-    result = num;
-    
-    count = libsvmToArray(row).length;
-    if (count > result)
-      result = count;
-    
-    return result;
-  }
-  
   /**
    * Determines and returns (if possible) the structure (internally the 
    * header) of the data set as an empty set of instances.
@@ -258,42 +191,22 @@ public class LibSVMLoader
    * @throws IOException 	if an error occurs
    */
   public Instances getStructure() throws IOException {
-    StringBuffer	line;
-    int			cInt;
-    char		c;
     int			numAtt;
     FastVector		atts;
     int			i;
     String		relName;
     
-    if (m_sourceReader == null)
+    if (m_Parser == null)
       throw new IOException("No source has been specified");
 
     if (m_structure == null) {
-      m_Buffer = new Vector();
+      m_Buffer  = new SparseRowParser.Rows();
+      m_NextRow = 0;
       try {
-	// determine number of attributes
-	numAtt = 0;
-	line   = new StringBuffer();
-	while ((cInt = m_sourceReader.read()) != -1) {
-	  c = (char) cInt;
-	  if ((c == '\n') || (c == '\r')) {
-	    if (line.length() > 0) {
-	      m_Buffer.add(libsvmToArray(line.toString()));
-	      numAtt = determineNumAttributes(line.toString(), numAtt);
-	    }
-	    line = new StringBuffer();
-	  }
-	  else {
-	    line.append(c);
-	  }
-	}
-	
-	// last line?
-	if (line.length() != 0) {
-	  m_Buffer.add(libsvmToArray(line.toString()));
-	  numAtt = determineNumAttributes(line.toString(), numAtt);
-	}
+	// the number of attributes is only known at the end of the source
+	while (m_Parser.next())
+	  m_Buffer.add(m_Parser);
+	numAtt = m_Parser.getMaxIndex() + 1;
 	
 	// generate header
 	atts = new FastVector(numAtt);
@@ -329,11 +242,9 @@ public class LibSVMLoader
    */
   public Instances getDataSet() throws IOException {
     Instances 	result;
-    double[]	sparse;
-    double[]	data;
     int		i;
 
-    if (m_sourceReader == null)
+    if (m_Parser == null)
       throw new IOException("No source has been specified");
     
     if (getRetrieval() == INCREMENTAL)
@@ -343,29 +254,15 @@ public class LibSVMLoader
     if (m_structure == null)
       getStructure();
 
-    result = new Instances(m_structure, 0);
-
-    // create instances from buffered arrays
-    for (i = 0; i < m_Buffer.size(); i++) {
-      sparse = (double[]) m_Buffer.get(i);
-      
-      if (sparse.length != m_structure.numAttributes()) {
-	data = new double[m_structure.numAttributes()];
-	// attributes
-	System.arraycopy(sparse, 0, data, 0, sparse.length - 1);
-	// class
-	data[data.length - 1] = sparse[sparse.length - 1];
-      }
-      else {
-	data = sparse;
-      }
-      
-      result.add(new SparseInstance(1, data));
-    }
+    result = new Instances(m_structure, m_Buffer.size());
+
+    // create instances from buffered rows
+    for (i = 0; i < m_Buffer.size(); i++)
+      result.add(newInstance(i));
 
     try {
       // close the stream
-      m_sourceReader.close();
+      m_Parser.close();
     } catch (Exception ex) {
 
     }
@@ -374,15 +271,64 @@ public class LibSVMLoader
   }
 
   /**
-   * LibSVmLoader is unable to process a data set incrementally.
+   * Creates the instance of a buffered row, with the class as the last
+   * attribute.
+   * 
+   * @param row		the index of the row in the buffer
+   * @return		the instance
+   */
+  protected Instance newInstance(int row) {
+    double	cls;
+    
+    cls = m_Buffer.getLabel(row);
+    
+    return m_Buffer.newInstance(row, cls, m_structure.numAttributes());
+  }
+
+  /**
+   * Read the data set incrementally---get the next instance in the data 
+   * set or returns null if there are no more instances to get. The whole
+   * source is already read by getStructure, since the number of attributes
+   * is only known at its end, but it is stored compactly and the instances
+   * are only created here, one at a time.
    *
-   * @param structure 		ignored
-   * @return 			never returns without throwing an exception
-   * @throws IOException 	always. LibSVMLoader is unable to process a 
-   * 				data set incrementally.
+   * @param structure 		the dataset header information, will get
+   * 				updated in case of string or relational
+   * 				attributes
+   * @return 			the next instance in the data set as an 
+   * 				Instance object or null if there are no more
+   * 				instances to be read
+   * @throws IOException 	if there is an error during parsing
    */
   public Instance getNextInstance(Instances structure) throws IOException {
-    throw new IOException("LibSVMLoader can't read data sets incrementally.");
+    Instance	result;
+    
+    if (m_Parser == null)
+      throw new IOException("No source has been specified");
+    
+    if (getRetrieval() == BATCH)
+      throw new IOException("Cannot mix getting Instances in both incremental and batch modes");
+
+    setRetrieval(INCREMENTAL);
+    if (m_structure == null)
+      getStructure();
+
+    if (m_NextRow < m_Buffer.size()) {
+      result = newInstance(m_NextRow);
+      result.setDataset(structure);
+      m_NextRow++;
+    }
+    else {
+      result = null;
+      try {
+	// close the stream
+	m_Parser.close();
+      } catch (Exception ex) {
+
+      }
+    }
+    
+    return result;
   }
   
   /**
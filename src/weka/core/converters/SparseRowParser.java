@@ -0,0 +1,640 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * SparseRowParser.java
+ * Copyright (C) 2006 University of Waikato, Hamilton, NZ
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Parses the rows of a libsvm or svm light file directly from the bytes of
+ * the source, without creating strings. Each row is a label followed by
+ * <code>index:value</code> pairs, with indices starting from 1. Blank lines
+ * are skipped. In svm light mode, lines starting with "#" are skipped, a
+ * "#" ends the row and "qid:" pairs are ignored.
+ * <p/>
+ * After a successful {@link #next()}, the row is available through
+ * {@link #getLabel()}, {@link #getIndices()} and {@link #getValues()}, with
+ * 0-based indices in ascending order. The arrays are reused for the next
+ * row. The parsed rows can be kept in a {@link Rows} buffer, which stores
+ * them in a few primitive arrays and turns them into sparse instances.
+ *
+ * @version $Revision: 1 $
+ * @see LibSVMLoader
+ * @see SVMLightLoader
+ */
+public class SparseRowParser
+  implements RevisionHandler {
+
+  /** the powers of ten that are exact doubles. */
+  protected static final double[] POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  /** the source. */
+  protected InputStream m_Source;
+
+  /** whether the svm light extensions are recognized. */
+  protected boolean m_SVMLight;
+
+  /** the read buffer. */
+  protected byte[] m_Buffer = new byte[1 << 16];
+
+  /** the position in the read buffer. */
+  protected int m_BufferPos = 0;
+
+  /** the number of bytes in the read buffer. */
+  protected int m_BufferLen = 0;
+
+  /** the current line. */
+  protected byte[] m_Line = new byte[256];
+
+  /** the length of the current line. */
+  protected int m_LineLen;
+
+  /** the number of the current line, starting from 1. */
+  protected int m_LineNo = 0;
+
+  /** the label of the current row. */
+  protected double m_Label;
+
+  /** the 0-based indices of the current row. */
+  protected int[] m_Indices = new int[16];
+
+  /** the values of the current row. */
+  protected double[] m_Values = new double[16];
+
+  /** the number of values in the current row. */
+  protected int m_Count;
+
+  /** the largest 1-based index read so far. */
+  protected int m_MaxIndex = 0;
+
+  /**
+   * Initializes the parser.
+   *
+   * @param source	the source, which is not buffered further
+   * @param svmlight	whether the svm light extensions are recognized
+   */
+  public SparseRowParser(InputStream source, boolean svmlight) {
+    m_Source   = source;
+    m_SVMLight = svmlight;
+  }
+
+  /**
+   * Reads the next row.
+   *
+   * @return		false if the end of the source is reached
+   * @throws IOException	if reading fails or the row is malformed
+   */
+  public boolean next() throws IOException {
+    while (readLine()) {
+      if (parseLine())
+	return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the label of the current row.
+   *
+   * @return		the label
+   */
+  public double getLabel() {
+    return m_Label;
+  }
+
+  /**
+   * Returns the 0-based indices of the current row, in ascending order.
+   *
+   * @return		the indices, only the first {@link #getCount()} are
+   * 			valid
+   */
+  public int[] getIndices() {
+    return m_Indices;
+  }
+
+  /**
+   * Returns the values of the current row.
+   *
+   * @return		the values, only the first {@link #getCount()} are
+   * 			valid
+   */
+  public double[] getValues() {
+    return m_Values;
+  }
+
+  /**
+   * Returns the number of values of the current row.
+   *
+   * @return		the number of values
+   */
+  public int getCount() {
+    return m_Count;
+  }
+
+  /**
+   * Returns the largest 1-based index of the rows read so far, that is,
+   * the number of attributes without the class.
+   *
+   * @return		the largest index, 0 if none
+   */
+  public int getMaxIndex() {
+    return m_MaxIndex;
+  }
+
+  /**
+   * Closes the source.
+   *
+   * @throws IOException	if closing fails
+   */
+  public void close() throws IOException {
+    m_Source.close();
+  }
+
+  /**
+   * Reads the next line into {@link #m_Line}. Both "\n" and "\r" end a
+   * line.
+   *
+   * @return		false if the end of the source is reached
+   * @throws IOException	if reading fails
+   */
+  protected boolean readLine() throws IOException {
+    m_LineLen = 0;
+    while (true) {
+      if (m_BufferPos == m_BufferLen) {
+	m_BufferLen = m_Source.read(m_Buffer);
+	m_BufferPos = 0;
+	if (m_BufferLen <= 0) {
+	  m_BufferLen = 0;
+	  if (m_LineLen == 0)
+	    return false;
+	  m_LineNo++;
+	  return true;
+	}
+      }
+      byte c = m_Buffer[m_BufferPos++];
+      if ((c == '\n') || (c == '\r')) {
+	m_LineNo++;
+	return true;
+      }
+      if (m_LineLen == m_Line.length) {
+	byte[] line = new byte[2 * m_Line.length];
+	System.arraycopy(m_Line, 0, line, 0, m_LineLen);
+	m_Line = line;
+      }
+      m_Line[m_LineLen++] = c;
+    }
+  }
+
+  /**
+   * Parses the current line.
+   *
+   * @return		false if the line contains no row
+   * @throws IOException	if the row is malformed
+   */
+  protected boolean parseLine() throws IOException {
+    int		pos;
+    int		end;
+    int		colon;
+    int		index;
+    boolean	sorted;
+
+    pos = skipSpace(0);
+    if (pos == m_LineLen)
+      return false;
+    if (m_SVMLight && (m_Line[pos] == '#'))
+      return false;
+
+    // 1. label
+    end     = tokenEnd(pos);
+    m_Label = parseDouble(pos, end);
+    m_Count = 0;
+    sorted  = true;
+
+    // 2. index:value pairs
+    while ((pos = skipSpace(end)) < m_LineLen) {
+      end = tokenEnd(pos);
+      if (m_SVMLight) {
+	// finished?
+	if (m_Line[pos] == '#')
+	  break;
+	// qid is not supported
+	if (startsWith(pos, end, "qid:"))
+	  continue;
+      }
+      colon = pos;
+      while ((colon < end) && (m_Line[colon] != ':'))
+	colon++;
+      if (colon == end)
+	throw error("missing ':' in '" + new String(m_Line, pos, end - pos) + "'");
+      index = parseInt(pos, colon);
+      if (index < 1)
+	throw error("invalid index " + index);
+      if (index > m_MaxIndex)
+	m_MaxIndex = index;
+      if (m_Count == m_Indices.length) {
+	int[] indices = new int[2 * m_Count];
+	System.arraycopy(m_Indices, 0, indices, 0, m_Count);
+	m_Indices = indices;
+	double[] values = new double[2 * m_Count];
+	System.arraycopy(m_Values, 0, values, 0, m_Count);
+	m_Values = values;
+      }
+      if ((m_Count > 0) && (index - 1 <= m_Indices[m_Count - 1]))
+	sorted = false;
+      m_Indices[m_Count] = index - 1;
+      m_Values[m_Count]  = parseDouble(colon + 1, end);
+      m_Count++;
+    }
+
+    if (!sorted)
+      sort();
+
+    return true;
+  }
+
+  /**
+   * Sorts the pairs of the current row by index. Of the pairs with the same
+   * index, the last one is kept.
+   */
+  protected void sort() {
+    int		i;
+    int		j;
+    int		index;
+    double	value;
+    int		n;
+
+    // stable insertion sort, rows are normally sorted already
+    for (i = 1; i < m_Count; i++) {
+      index = m_Indices[i];
+      value = m_Values[i];
+      for (j = i - 1; (j >= 0) && (m_Indices[j] > index); j--) {
+	m_Indices[j + 1] = m_Indices[j];
+	m_Values[j + 1]  = m_Values[j];
+      }
+      m_Indices[j + 1] = index;
+      m_Values[j + 1]  = value;
+    }
+
+    n = 0;
+    for (i = 0; i < m_Count; i++) {
+      if ((n > 0) && (m_Indices[n - 1] == m_Indices[i]))
+	n--;
+      m_Indices[n] = m_Indices[i];
+      m_Values[n]  = m_Values[i];
+      n++;
+    }
+    m_Count = n;
+  }
+
+  /**
+   * Returns the first position from the given one that is not a space or
+   * a tab.
+   *
+   * @param pos		the position to start from
+   * @return		the position
+   */
+  protected int skipSpace(int pos) {
+    while ((pos < m_LineLen) && ((m_Line[pos] == ' ') || (m_Line[pos] == '\t')))
+      pos++;
+    return pos;
+  }
+
+  /**
+   * Returns the end of the token starting at the given position.
+   *
+   * @param pos		the start of the token
+   * @return		the first position after the token
+   */
+  protected int tokenEnd(int pos) {
+    while ((pos < m_LineLen) && (m_Line[pos] != ' ') && (m_Line[pos] != '\t'))
+      pos++;
+    return pos;
+  }
+
+  /**
+   * Checks whether the given part of the line starts with the given prefix.
+   *
+   * @param start	the start of the part
+   * @param end		the end of the part
+   * @param prefix	the prefix, in ASCII
+   * @return		true if the part starts with the prefix
+   */
+  protected boolean startsWith(int start, int end, String prefix) {
+    if (end - start < prefix.length())
+      return false;
+    for (int i = 0; i < prefix.length(); i++) {
+      if (m_Line[start + i] != prefix.charAt(i))
+	return false;
+    }
+    return true;
+  }
+
+  /**
+   * Parses an int.
+   *
+   * @param start	the start of the number
+   * @param end		the end of the number
+   * @return		the number
+   * @throws IOException	if it is not an int
+   */
+  protected int parseInt(int start, int end) throws IOException {
+    long	result;
+    boolean	negative;
+    int		pos;
+
+    pos      = start;
+    negative = (pos < end) && (m_Line[pos] == '-');
+    if ((pos < end) && ((m_Line[pos] == '-') || (m_Line[pos] == '+')))
+      pos++;
+    if (pos == end)
+      throw error("invalid index '" + new String(m_Line, start, end - start) + "'");
+    result = 0;
+    for (; pos < end; pos++) {
+      int d = m_Line[pos] - '0';
+      if ((d < 0) || (d > 9) || (result > Integer.MAX_VALUE))
+	throw error("invalid index '" + new String(m_Line, start, end - start) + "'");
+      result = 10 * result + d;
+    }
+    if (negative)
+      result = -result;
+    if ((result > Integer.MAX_VALUE) || (result < Integer.MIN_VALUE))
+      throw error("invalid index '" + new String(m_Line, start, end - start) + "'");
+    return (int) result;
+  }
+
+  /**
+   * Parses a double.
+   *
+   * @param start	the start of the number
+   * @param end		the end of the number
+   * @return		the number
+   * @throws IOException	if it is not a number
+   */
+  protected double parseDouble(int start, int end) throws IOException {
+    try {
+      return parseDouble(m_Line, start, end);
+    }
+    catch (NumberFormatException e) {
+      throw error("invalid number '" + new String(m_Line, start, end - start) + "'");
+    }
+  }
+
+  /**
+   * Parses a double from ASCII bytes, with the same result as
+   * {@link Double#parseDouble(String)}. Decimals with at most 15
+   * significant digits whose power of ten is at most 22 (like "-0.125" or
+   * "3.5e-4") are computed directly: the digits and the power of ten are
+   * both exact doubles, so a single division or multiplication gives the
+   * correctly rounded result. The other numbers are passed to
+   * {@link Double#parseDouble(String)}.
+   *
+   * @param buf		the bytes
+   * @param start	the start of the number
+   * @param end		the end of the number
+   * @return		the number
+   * @throws NumberFormatException	if it is not a number
+   */
+  public static double parseDouble(byte[] buf, int start, int end) {
+    long	mantissa;
+    int		digits;
+    int		scale;
+    int		exp;
+    int		expStart;
+    boolean	negative;
+    boolean	negativeExp;
+    boolean	point;
+    boolean	any;
+    int		pos;
+    byte	c;
+
+    pos      = start;
+    negative = (pos < end) && (buf[pos] == '-');
+    if ((pos < end) && ((buf[pos] == '-') || (buf[pos] == '+')))
+      pos++;
+    mantissa = 0;
+    digits   = 0;
+    scale    = 0;
+    point    = false;
+    any      = false;
+    for (; pos < end; pos++) {
+      c = buf[pos];
+      if ((c >= '0') && (c <= '9')) {
+	any = true;
+	if ((mantissa == 0) && (c == '0')) {
+	  // leading zeros do not count as significant digits
+	  if (point)
+	    scale++;
+	  continue;
+	}
+	if (++digits > 15)
+	  break;
+	mantissa = 10 * mantissa + (c - '0');
+	if (point)
+	  scale++;
+      }
+      else if ((c == '.') && !point) {
+	point = true;
+      }
+      else {
+	break;
+      }
+    }
+
+    // exponent
+    if (any && (pos < end) && ((buf[pos] == 'e') || (buf[pos] == 'E'))) {
+      expStart    = pos + 1;
+      negativeExp = (expStart < end) && (buf[expStart] == '-');
+      if ((expStart < end) && ((buf[expStart] == '-') || (buf[expStart] == '+')))
+	expStart++;
+      exp = 0;
+      for (pos = expStart; (pos < end) && (exp < 1000); pos++) {
+	c = buf[pos];
+	if ((c < '0') || (c > '9'))
+	  break;
+	exp = 10 * exp + (c - '0');
+      }
+      if (pos == expStart)
+	pos = -1;
+      scale -= negativeExp ? -exp : exp;
+    }
+
+    if (any && (pos == end) && (scale >= -22) && (scale <= 22)) {
+      double result;
+      if (scale >= 0)
+	result = (double) mantissa / POW10[scale];
+      else
+	result = (double) mantissa * POW10[-scale];
+      return negative ? -result : result;
+    }
+
+    try {
+      return Double.parseDouble(new String(buf, start, end - start, "ISO-8859-1"));
+    }
+    catch (UnsupportedEncodingException e) {
+      // cannot happen, ISO-8859-1 is always supported
+      throw new IllegalStateException(e.toString());
+    }
+  }
+
+  /**
+   * Creates an exception for the current line.
+   *
+   * @param msg		the problem
+   * @return		the exception
+   */
+  protected IOException error(String msg) {
+    return new IOException("line " + m_LineNo + ": " + msg);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 1 $");
+  }
+
+  /**
+   * Stores sparse rows in primitive arrays, without an object per row.
+   */
+  public static class Rows
+    implements RevisionHandler {
+
+    /** the labels. */
+    protected double[] m_Labels = new double[1024];
+
+    /** the start of each row in the pools, plus the end of the last. */
+    protected int[] m_Starts = new int[1025];
+
+    /** the indices of all rows. */
+    protected int[] m_Indices = new int[4096];
+
+    /** the values of all rows. */
+    protected double[] m_Values = new double[4096];
+
+    /** the number of rows. */
+    protected int m_Size = 0;
+
+    /**
+     * Appends the current row of the given parser.
+     *
+     * @param parser	the parser
+     */
+    public void add(SparseRowParser parser) {
+      int	n;
+      int	start;
+
+      n     = parser.getCount();
+      start = m_Starts[m_Size];
+      if (m_Size == m_Labels.length) {
+	double[] labels = new double[2 * m_Labels.length];
+	System.arraycopy(m_Labels, 0, labels, 0, m_Size);
+	m_Labels = labels;
+	int[] starts = new int[m_Labels.length + 1];
+	System.arraycopy(m_Starts, 0, starts, 0, m_Size + 1);
+	m_Starts = starts;
+      }
+      if ((long) start + n > Integer.MAX_VALUE - 8)
+	throw new IllegalStateException("Too many values: " + ((long) start + n));
+      if (start + n > m_Indices.length) {
+	int cap = (int) Math.min(Integer.MAX_VALUE - 8,
+	    Math.max(2L * m_Indices.length, (long) start + n));
+	int[] indices = new int[cap];
+	System.arraycopy(m_Indices, 0, indices, 0, start);
+	m_Indices = indices;
+	double[] values = new double[cap];
+	System.arraycopy(m_Values, 0, values, 0, start);
+	m_Values = values;
+      }
+      System.arraycopy(parser.getIndices(), 0, m_Indices, start, n);
+      System.arraycopy(parser.getValues(), 0, m_Values, start, n);
+      m_Labels[m_Size] = parser.getLabel();
+      m_Size++;
+      m_Starts[m_Size] = start + n;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return		the number of rows
+     */
+    public int size() {
+      return m_Size;
+    }
+
+    /**
+     * Returns the label of a row.
+     *
+     * @param row	the row
+     * @return		the label
+     */
+    public double getLabel(int row) {
+      return m_Labels[row];
+    }
+
+    /**
+     * Creates a sparse instance from a row, with the given class value as
+     * the last attribute. Values that are zero are not stored.
+     *
+     * @param row	the row
+     * @param classValue	the class value
+     * @param numAttributes	the number of attributes, class included;
+     * 			must be larger than all the indices of the row
+     * @return		the instance
+     */
+    public SparseInstance newInstance(int row, double classValue,
+	int numAttributes) {
+      int	start;
+      int	n;
+      int[]	indices;
+      double[]	values;
+
+      start   = m_Starts[row];
+      n       = m_Starts[row + 1] - start;
+      indices = new int[n + 1];
+      values  = new double[n + 1];
+      System.arraycopy(m_Indices, start, indices, 0, n);
+      System.arraycopy(m_Values, start, values, 0, n);
+      indices[n] = numAttributes - 1;
+      values[n]  = classValue;
+
+      return new SparseInstance(1, values, indices, numAttributes);
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision: 1 $");
+    }
+  }
+}